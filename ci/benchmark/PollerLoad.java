@@ -0,0 +1,125 @@
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps a number of clients polling GET /services?since=... as fast as they can, each following the
+ * nextSince of its previous response, and reports throughput and latency percentiles. Requests made
+ * during the warm-up period are not counted.
+ * <p>
+ * Run it as a single-file program: java PollerLoad.java baseUrl [pollers] [seconds] [warmupSeconds] [realm]
+ * </p>
+ */
+public class PollerLoad {
+
+    private static final Pattern NEXT_SINCE = Pattern.compile("\"nextSince\"\\s*:\\s*\"([^\"]+)\"");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java PollerLoad.java baseUrl [pollers] [seconds] [warmupSeconds] [realm]");
+            System.exit(2);
+        }
+        String baseUrl = args[0];
+        int pollers = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        int warmupSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        String realm = args.length > 4 ? args[4] : "benchmark";
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        // one full sync up front, so that the pollers only fetch what changed
+        String initialToken = nextSince(send(client, baseUrl, realm, "").body());
+
+        long start = System.nanoTime();
+        long measureFrom = start + Duration.ofSeconds(warmupSeconds).toNanos();
+        long deadline = measureFrom + Duration.ofSeconds(seconds).toNanos();
+        AtomicLong errors = new AtomicLong();
+        AtomicLong unavailable = new AtomicLong();
+        long[][] latencies = new long[pollers][];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < pollers; i++) {
+            int poller = i;
+            Thread thread = new Thread(() -> {
+                long[] own = new long[1024];
+                int count = 0;
+                String token = initialToken;
+                while (System.nanoTime() < deadline) {
+                    long sent = System.nanoTime();
+                    int status;
+                    try {
+                        HttpResponse<String> response = send(client, baseUrl, realm, token);
+                        status = response.statusCode();
+                        if (status == 200) {
+                            token = nextSince(response.body());
+                        }
+                    } catch (Exception e) {
+                        status = -1;
+                    }
+                    long received = System.nanoTime();
+                    if (sent < measureFrom || received > deadline) {
+                        continue;
+                    }
+                    if (status != 200) {
+                        errors.incrementAndGet();
+                        if (status == 503) {
+                            unavailable.incrementAndGet();
+                        }
+                        continue;
+                    }
+                    if (count == own.length) {
+                        own = Arrays.copyOf(own, count * 2);
+                    }
+                    own[count++] = received - sent;
+                }
+                latencies[poller] = Arrays.copyOf(own, count);
+            }, "poller-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%d pollers, %ds: %d requests (%.1f/s), p50 %.1f ms, p99 %.1f ms, max %.1f ms, %d errors (%d with 503)%n",
+                pollers, seconds, all.length, all.length / (double) seconds,
+                percentile(all, 0.50), percentile(all, 0.99), all.length == 0 ? 0 : all[all.length - 1] / 1e6,
+                errors.get(), unavailable.get());
+    }
+
+    private static HttpResponse<String> send(HttpClient client, String baseUrl, String realm, String since) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/services?since=" + URLEncoder.encode(since, StandardCharsets.UTF_8)))
+                .header("Service-Registry-Realm", realm)
+                .timeout(Duration.ofSeconds(60))
+                .GET()
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String nextSince(String body) {
+        Matcher matcher = NEXT_SINCE.matcher(body);
+        if (!matcher.find()) {
+            throw new IllegalStateException("No nextSince in response: " + body);
+        }
+        return matcher.group(1);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * quantile))] / 1e6;
+    }
+}
@@ -0,0 +1,28 @@
+-- Fills the 'benchmark' realm with :rows service instances spread over 1000 organizations.
+-- Usage: psql -v rows=100000 -f seed.sql
+
+DELETE FROM service_instance WHERE realm = 'benchmark';
+DELETE FROM organization WHERE realm = 'benchmark';
+
+INSERT INTO organization (realm, id, name, url)
+SELECT 'benchmark', 'org-' || n, 'Organization ' || n, 'https://org-' || n || '.example.com'
+FROM generate_series(1, 1000) n;
+
+INSERT INTO service_instance (realm, id, name, type, url, description, version, environment, organization_id,
+                              created_at, updated_at, additional_properties_json)
+SELECT 'benchmark',
+       'si-' || n,
+       'beacon-' || n,
+       'org.ga4gh:' || (ARRAY ['beacon', 'beacon-aggregator', 'htsget', 'drs'])[1 + n % 4] || ':1.0.0',
+       'https://beacon-' || n || '.example.com',
+       'Variants from the ' || (ARRAY ['cancer', 'rare disease', 'population', 'cohort'])[1 + n % 4] || ' study ' || n,
+       '1.0.0',
+       'TEST',
+       'org-' || (1 + n % 1000),
+       now() - n * interval '1 second',
+       now() - n * interval '1 second',
+       '{}'
+FROM generate_series(1, :rows) n;
+
+ANALYZE organization;
+ANALYZE service_instance;
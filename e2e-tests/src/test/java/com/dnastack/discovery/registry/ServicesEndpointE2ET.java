@@ -6,6 +6,8 @@ import com.dnastack.discovery.registry.client.TestingServiceType;
 import io.restassured.RestAssured;
 import io.restassured.common.mapper.TypeRef;
 import io.restassured.http.ContentType;
+import io.restassured.response.ExtractableResponse;
+import io.restassured.response.Response;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Before;
 import org.junit.Test;
@@ -19,6 +21,7 @@ import java.util.stream.Stream;
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assume.assumeThat;
 
 @Slf4j
 public class ServicesEndpointE2ET extends BaseE2ET {
@@ -137,6 +140,18 @@ public class ServicesEndpointE2ET extends BaseE2ET {
         // @formatter:on
     }
 
+    private Object getServiceInstanceHealth(String id) {
+        // @formatter:off
+        return given()
+            .accept(ContentType.JSON)
+            .header("Service-Registry-Realm", TEST_REALM)
+            .get("/services/" + id)
+            .then()
+            .statusCode(200)
+            .extract().path("health");
+        // @formatter:on
+    }
+
     @Before
     public void clearTestRealm() {
         // make sure we don't destroy the default realm!
@@ -227,6 +242,69 @@ public class ServicesEndpointE2ET extends BaseE2ET {
         assertThat(updatedFromServer, equalTo(origFromServer));
     }
 
+    @Test
+    public void putServiceInstance_should_replaceCustomAttributes() {
+        TestingServiceInstance service = makeServiceInstance("test-beacon", "http://beacon-test-random-url.someorg.com", new TestingServiceType("org.ga4gh", "beacon", "1.0.1"));
+        service.setAdditionalProperty("beaconVersion", "1.0");
+        service.setAdditionalProperty("tier", "gold");
+        String serviceId = registerServiceInstance(TEST_REALM, service, 201);
+
+        service.getAdditionalProperties().remove("tier");
+        service.setAdditionalProperty("beaconVersion", "2.0");
+        updateServiceInstance(TEST_REALM, serviceId, service, 200);
+
+        Map<String, Object> attributes = getServiceInstance(serviceId).getAdditionalProperties();
+        assertThat(attributes, hasEntry("beaconVersion", "2.0"));
+        assertThat(attributes, not(hasKey("tier")));
+    }
+
+    @Test
+    public void putServiceInstance_should_return412_when_ifMatchIsStale() {
+        TestingServiceInstance service = makeServiceInstance("test-beacon", "http://beacon-test-random-url.someorg.com", new TestingServiceType("org.ga4gh", "beacon", "1.0.1"));
+        String serviceId = registerServiceInstance(TEST_REALM, service, 201);
+
+        // @formatter:off
+        String originalETag = given()
+            .accept(ContentType.JSON)
+            .header("Service-Registry-Realm", TEST_REALM)
+            .get("/services/" + serviceId)
+            .then()
+            .statusCode(200)
+            .header("ETag", notNullValue())
+            .extract().header("ETag");
+
+        given()
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Authorization", "Basic " + getBase64Auth())
+            .header("Service-Registry-Realm", TEST_REALM)
+            .header("If-Match", originalETag)
+            .contentType("application/json")
+            .body(service)
+            .put("/services/" + serviceId)
+            .then()
+            .log().ifValidationFails()
+            .statusCode(200)
+            .header("ETag", not(equalTo(originalETag)));
+
+        given()
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Authorization", "Basic " + getBase64Auth())
+            .header("Service-Registry-Realm", TEST_REALM)
+            .header("If-Match", originalETag)
+            .contentType("application/json")
+            .body(service)
+            .put("/services/" + serviceId)
+            .then()
+            .log().ifValidationFails()
+            .statusCode(412)
+            .body("serviceInstanceId", equalTo(serviceId));
+        // @formatter:on
+    }
+
     @Test
     public void getServiceInstances_noInstanceExists() {
         // @formatter:off
@@ -278,6 +356,397 @@ public class ServicesEndpointE2ET extends BaseE2ET {
         // @formatter:on
     }
 
+    @Test
+    public void getServiceInstances_should_pageThroughFilteredInstances_when_limitIsGiven() {
+        for (int n = 0; n < 3; n++) {
+            registerServiceInstance(TEST_REALM, makeServiceInstance("test-paged-beacon-" + n, "http://beacon-test-url.someorg.com/" + n, new TestingServiceType("org.ga4gh", "beacon", "1.0.1")), 201);
+        }
+        registerServiceInstance(TEST_REALM, makeServiceInstance("test-portal", "http://user-portal-test-url.someorg.com", new TestingServiceType("org.ga4gh", "user-portal", "1")), 201);
+
+        // @formatter:off
+        String nextPageLink = given()
+            .filter(validationFilter)
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Service-Registry-Realm", TEST_REALM)
+            .queryParam("type.artifact", "beacon")
+            .queryParam("limit", 2)
+        .when()
+            .get("/services")
+        .then()
+            .log().ifValidationFails()
+            .statusCode(200)
+            .body("", hasSize(2))
+            .body("name", contains("test-paged-beacon-0", "test-paged-beacon-1"))
+            .header("Link", containsString("rel=\"next\""))
+            .extract().header("Link");
+
+        String nextPageUri = nextPageLink.substring(nextPageLink.indexOf('<') + 1, nextPageLink.indexOf('>'));
+        given()
+            .filter(validationFilter)
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Service-Registry-Realm", TEST_REALM)
+            .urlEncodingEnabled(false)
+        .when()
+            .get(nextPageUri)
+        .then()
+            .log().ifValidationFails()
+            .statusCode(200)
+            .body("name", contains("test-paged-beacon-2"))
+            .header("Link", nullValue());
+        // @formatter:on
+    }
+
+    @Test
+    public void getServiceInstances_should_returnMatchingInstances_when_filteringOnCustomAttributes() {
+        for (String beaconVersion : List.of("1.0", "2.0")) {
+            TestingServiceInstance beacon = makeServiceInstance("test-beacon-" + beaconVersion, "http://beacon-test-url.someorg.com/" + beaconVersion, new TestingServiceType("org.ga4gh", "beacon", "1.0.1"));
+            beacon.setAdditionalProperty("beaconVersion", beaconVersion);
+            registerServiceInstance(TEST_REALM, beacon, 201);
+        }
+        registerServiceInstance(TEST_REALM, makeServiceInstance("test-portal", "http://user-portal-test-url.someorg.com", new TestingServiceType("org.ga4gh", "user-portal", "1")), 201);
+
+        // @formatter:off
+        given()
+            .filter(validationFilter)
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Service-Registry-Realm", TEST_REALM)
+            .queryParam("attr.beaconVersion", "2.0")
+        .when()
+            .get("/services")
+        .then()
+            .log().ifValidationFails()
+            .statusCode(200)
+            .body("name", contains("test-beacon-2.0"))
+            .body("[0].beaconVersion", equalTo("2.0"));
+        // @formatter:on
+    }
+
+    @Test
+    public void getServiceInstances_should_excludeUnreachableInstances_when_filteringOnHealthUp() {
+        // nothing answers at this URL, so the instance is never up, whether it was checked yet or not
+        registerServiceInstance(TEST_REALM, makeServiceInstance("test-unreachable-beacon", "http://beacon-test-url.invalid", new TestingServiceType("org.ga4gh", "beacon", "1.0.1")), 201);
+
+        // @formatter:off
+        given()
+            .filter(validationFilter)
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Service-Registry-Realm", TEST_REALM)
+            .queryParam("health", "up")
+        .when()
+            .get("/services")
+        .then()
+            .log().ifValidationFails()
+            .statusCode(200)
+            .body("name", not(hasItem("test-unreachable-beacon")));
+        // @formatter:on
+    }
+
+    @Test
+    public void searchServiceInstances_should_rankNameMatchesFirst_when_searchingByPrefix() {
+        TestingServiceInstance byName = makeServiceInstance("test-genomics-beacon", "http://beacon-test-url.someorg.com/name", new TestingServiceType("org.ga4gh", "beacon", "1.0.1"));
+        TestingServiceInstance byDescription = makeServiceInstance("test-beacon", "http://beacon-test-url.someorg.com/description", new TestingServiceType("org.ga4gh", "beacon", "1.0.1"));
+        byDescription.setDescription("Variants from a genomics study");
+        registerServiceInstance(TEST_REALM, byDescription, 201);
+        registerServiceInstance(TEST_REALM, byName, 201);
+        registerServiceInstance(TEST_REALM, makeServiceInstance("test-portal", "http://user-portal-test-url.someorg.com", new TestingServiceType("org.ga4gh", "user-portal", "1")), 201);
+
+        // not validated against the specification, which doesn't define search
+        // @formatter:off
+        given()
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Service-Registry-Realm", TEST_REALM)
+            .queryParam("q", "Genom")
+        .when()
+            .get("/services/search")
+        .then()
+            .log().ifValidationFails()
+            .statusCode(200)
+            .body("name", contains("test-genomics-beacon", "test-beacon"));
+        // @formatter:on
+    }
+
+    @Test
+    public void getServiceInstances_should_returnOnlyChanges_when_sinceTokenIsGiven() {
+        String unchangedId = registerServiceInstance(TEST_REALM, makeServiceInstance("test-beacon", "http://beacon-test-url.someorg.com", new TestingServiceType("org.ga4gh", "beacon", "1.0.1")), 201);
+        String deletedId = registerServiceInstance(TEST_REALM, makeServiceInstance("test-portal", "http://user-portal-test-url.someorg.com", new TestingServiceType("org.ga4gh", "user-portal", "1")), 201);
+
+        String since = getChangesSince("");
+        String createdId = registerServiceInstance(TEST_REALM, makeServiceInstance("test-new-beacon", "http://beacon-test-url.someorg.com/new", new TestingServiceType("org.ga4gh", "beacon", "1.0.1")), 201);
+        deleteServiceInstance(deletedId);
+
+        // not validated against the specification, which doesn't define incremental sync
+        // @formatter:off
+        given()
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Service-Registry-Realm", TEST_REALM)
+            .queryParam("since", since)
+        .when()
+            .get("/services")
+        .then()
+            .log().ifValidationFails()
+            .statusCode(200)
+            .body("services.id", hasItem(createdId))
+            .body("services.id", not(hasItem(unchangedId)))
+            .body("deleted.id", contains(deletedId))
+            .body("nextSince", not(isEmptyOrNullString()));
+        // @formatter:on
+    }
+
+    private String getChangesSince(String since) {
+        // @formatter:off
+        return given()
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Service-Registry-Realm", TEST_REALM)
+            .queryParam("since", since)
+        .when()
+            .get("/services")
+        .then()
+            .log().ifValidationFails()
+            .statusCode(200)
+            .extract().path("nextSince");
+        // @formatter:on
+    }
+
+    @Test
+    public void getServiceInstances_should_streamOneInstancePerLine_when_ndjsonIsAccepted() {
+        registerServiceInstance(TEST_REALM, makeServiceInstance("test-beacon", "http://beacon-test-url.someorg.com", new TestingServiceType("org.ga4gh", "beacon", "1.0.1")), 201);
+        registerServiceInstance(TEST_REALM, makeServiceInstance("test-portal", "http://user-portal-test-url.someorg.com", new TestingServiceType("org.ga4gh", "user-portal", "1")), 201);
+
+        // @formatter:off
+        String body = given()
+            .accept("application/x-ndjson")
+            .log().method()
+            .log().uri()
+            .header("Service-Registry-Realm", TEST_REALM)
+        .when()
+            .get("/services")
+        .then()
+            .log().ifValidationFails()
+            .statusCode(200)
+            .contentType(startsWith("application/x-ndjson"))
+            .extract().body().asString();
+        // @formatter:on
+
+        List<String> lines = List.of(body.split("\n"));
+        assertThat(lines, hasSize(2));
+        assertThat(lines, everyItem(startsWith("{")));
+    }
+
+    @Test
+    public void postServiceInstancesBatch_should_reportResultPerEntry_when_someEntriesFail() {
+        TestingOrganizationModel sharedOrg = new TestingOrganizationModel("Batch Org", "https://batch.example.com");
+        TestingServiceInstance existing = makeServiceInstance("test-existing-beacon", "http://beacon-test-url.someorg.com/existing", new TestingServiceType("org.ga4gh", "beacon", "1.0.1"), sharedOrg);
+        String existingId = registerServiceInstance(TEST_REALM, existing, 201);
+
+        List<TestingServiceInstance> batch = List.of(
+                makeServiceInstance("test-batch-beacon-0", "http://beacon-test-url.someorg.com/0", new TestingServiceType("org.ga4gh", "beacon", "1.0.1"), sharedOrg),
+                existing,
+                makeServiceInstance("test-batch-no-org", "http://beacon-test-url.someorg.com/no-org", new TestingServiceType("org.ga4gh", "beacon", "1.0.1"), null),
+                makeServiceInstance("test-batch-beacon-1", "http://beacon-test-url.someorg.com/1", new TestingServiceType("org.ga4gh", "beacon", "1.0.1"), sharedOrg));
+
+        // @formatter:off
+        given()
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Authorization", "Basic " + getBase64Auth())
+            .header("Service-Registry-Realm", TEST_REALM)
+            .contentType("application/json")
+            .body(batch)
+        .when()
+            .post("/services:batch")
+        .then()
+            .log().ifValidationFails()
+            .statusCode(200)
+            .body("status", contains(201, 409, 400, 201))
+            .body("[0].serviceInstanceId", notNullValue())
+            .body("[1].serviceInstanceId", equalTo(existingId));
+        // @formatter:on
+
+        assertThat(getServiceInstances(), hasSize(3));
+    }
+
+    @Test
+    public void postServiceInstancesBatch_should_reject_only_entriesWhoseOrganizationHasNoName() {
+        TestingOrganizationModel sharedOrg = new TestingOrganizationModel("Batch Org", "https://batch.example.com");
+        List<TestingServiceInstance> batch = List.of(
+                makeServiceInstance("test-batch-beacon-0", "http://beacon-test-url.someorg.com/0", new TestingServiceType("org.ga4gh", "beacon", "1.0.1"), sharedOrg),
+                makeServiceInstance("test-batch-unnamed-org", "http://beacon-test-url.someorg.com/unnamed-org", new TestingServiceType("org.ga4gh", "beacon", "1.0.1"), new TestingOrganizationModel()),
+                makeServiceInstance("test-batch-beacon-1", "http://beacon-test-url.someorg.com/1", new TestingServiceType("org.ga4gh", "beacon", "1.0.1"), sharedOrg));
+
+        // @formatter:off
+        given()
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Authorization", "Basic " + getBase64Auth())
+            .header("Service-Registry-Realm", TEST_REALM)
+            .contentType("application/json")
+            .body(batch)
+        .when()
+            .post("/services:batch")
+        .then()
+            .log().ifValidationFails()
+            .statusCode(200)
+            .body("status", contains(201, 400, 201))
+            .body("[1].detail", containsString("organization.name"));
+        // @formatter:on
+
+        assertThat(getServiceInstances(), hasSize(2));
+    }
+
+    @Test
+    public void putServiceInstanceHeartbeat_should_beAccepted_when_instanceIsRegisteredWithLease() {
+        TestingServiceInstance leased = makeServiceInstance("test-leased-beacon", "http://beacon-test-url.someorg.com/leased", new TestingServiceType("org.ga4gh", "beacon", "1.0.1"));
+
+        // not validated against the specification, which defines neither leases nor heartbeats
+        // @formatter:off
+        String location = given()
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Authorization", "Basic " + getBase64Auth())
+            .header("Service-Registry-Realm", TEST_REALM)
+            .header("Service-Registry-Lease-TTL", 60)
+            .contentType("application/json")
+            .body(leased)
+        .when()
+            .post("/services")
+        .then()
+            .log().ifValidationFails()
+            .statusCode(201)
+            .extract().header("Location");
+
+        given()
+            .log().method()
+            .log().uri()
+            .header("Authorization", "Basic " + getBase64Auth())
+            .header("Service-Registry-Realm", TEST_REALM)
+        .when()
+            .put(location + "/heartbeat")
+        .then()
+            .log().ifValidationFails()
+            .statusCode(202);
+        // @formatter:on
+    }
+
+    @Test
+    public void getServiceInstances_should_return304_when_ifNoneMatchIsCurrent() {
+        registerServiceInstance(TEST_REALM, makeServiceInstance("test-beacon", "http://beacon-test-url.someorg.com", new TestingServiceType("org.ga4gh", "beacon", "1.0.1")), 201);
+
+        // @formatter:off
+        String eTag = given()
+            .accept(ContentType.JSON)
+            .header("Service-Registry-Realm", TEST_REALM)
+            .get("/services")
+            .then()
+            .statusCode(200)
+            .header("ETag", notNullValue())
+            .header("Last-Modified", notNullValue())
+            .extract().header("ETag");
+
+        given()
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Service-Registry-Realm", TEST_REALM)
+            .header("If-None-Match", eTag)
+            .get("/services")
+            .then()
+            .log().ifValidationFails()
+            .statusCode(304);
+        // @formatter:on
+
+        registerServiceInstance(TEST_REALM, makeServiceInstance("test-portal", "http://user-portal-test-url.someorg.com", new TestingServiceType("org.ga4gh", "user-portal", "1")), 201);
+
+        // @formatter:off
+        given()
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Service-Registry-Realm", TEST_REALM)
+            .header("If-None-Match", eTag)
+            .get("/services")
+            .then()
+            .log().ifValidationFails()
+            .statusCode(200)
+            .body("", hasSize(2));
+        // @formatter:on
+    }
+
+    @Test
+    public void getServiceInstanceById_should_notReturn304_when_healthWasCheckedSince() throws InterruptedException {
+        // nothing answers at this URL, so the first health check finds the instance down
+        TestingServiceInstance service = makeServiceInstance("test-unreachable-beacon", "http://beacon-test-url.invalid", new TestingServiceType("org.ga4gh", "beacon", "1.0.1"));
+        String serviceId = registerServiceInstance(TEST_REALM, service, 201);
+
+        // @formatter:off
+        ExtractableResponse<Response> unchecked = given()
+            .accept(ContentType.JSON)
+            .header("Service-Registry-Realm", TEST_REALM)
+            .get("/services/" + serviceId)
+            .then()
+            .statusCode(200)
+            .header("ETag", notNullValue())
+            .extract();
+        // @formatter:on
+        assumeThat("the instance was checked before it could be read", unchecked.path("health"), nullValue());
+        String eTag = unchecked.header("ETag");
+        String updatedAt = unchecked.path("updatedAt");
+
+        // new instances are due for a check right away, and due checks are looked for every few seconds
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (getServiceInstanceHealth(serviceId) == null) {
+            assertThat("checked within 30 seconds", System.currentTimeMillis(), lessThan(deadline));
+            Thread.sleep(500);
+        }
+
+        // @formatter:off
+        given()
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Service-Registry-Realm", TEST_REALM)
+            .header("If-None-Match", eTag)
+            .get("/services/" + serviceId)
+            .then()
+            .log().ifValidationFails()
+            .statusCode(200)
+            .header("ETag", not(equalTo(eTag)))
+            .body("health.status", notNullValue())
+            .body("updatedAt", equalTo(updatedAt));
+
+        // a health check is no reason to reject what the client writes
+        given()
+            .accept(ContentType.JSON)
+            .log().method()
+            .log().uri()
+            .header("Authorization", "Basic " + getBase64Auth())
+            .header("Service-Registry-Realm", TEST_REALM)
+            .header("If-Match", eTag)
+            .contentType("application/json")
+            .body(service)
+            .put("/services/" + serviceId)
+            .then()
+            .log().ifValidationFails()
+            .statusCode(200);
+        // @formatter:on
+    }
+
     @Test
     public void getServiceInstanceTypes() {
         registerServiceInstance(TEST_REALM, makeServiceInstance("test-beacon-aggregator", "http://beacon-aggregator-test-url.someorg.com", new TestingServiceType("org.ga4gh", "beacon-aggregator", "1.0.0")), 201);
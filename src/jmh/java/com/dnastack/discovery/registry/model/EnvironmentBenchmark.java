@@ -0,0 +1,29 @@
+package com.dnastack.discovery.registry.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of environment names, as done for the {@code environment} filter of the listing endpoint. The
+ * parameter covers the first and the last constant, and a value that matches none.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EnvironmentBenchmark {
+
+    @Param({"prod", "TEST", "staging"})
+    public String text;
+
+    @Benchmark
+    public Environment fromString() {
+        return Environment.fromString(text);
+    }
+}
@@ -0,0 +1,79 @@
+package com.dnastack.discovery.registry.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson (de)serialization of a single service instance, configured the way Spring Boot configures the
+ * application's {@link ObjectMapper}. The number of additional properties is a parameter because they
+ * go through the {@code @JsonAnyGetter}/{@code @JsonAnySetter} path rather than the bean properties.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ServiceInstanceModelJsonBenchmark {
+
+    @Param({"0", "10"})
+    public int additionalProperties;
+
+    private ObjectMapper objectMapper;
+    private ServiceInstanceModel model;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .serializationInclusion(JsonInclude.Include.NON_NULL)
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        model = ServiceInstanceModel.builder()
+                .id("8c5d7a4e-0b1f-4a6e-9d43-2f1c0e3b7a51")
+                .name("Benchmark Beacon")
+                .type(new ServiceType("org.ga4gh", "beacon", "1.0.0"))
+                .url("https://beacon.example.org/api")
+                .description("A beacon used to benchmark serialization")
+                .organization(OrganizationModel.builder()
+                        .id("6f0c2b9d-3e58-4c1a-8b27-91d4e5a0c3f6")
+                        .name("Example Organization")
+                        .url("https://example.org")
+                        .build())
+                .contactUrl("mailto:support@example.org")
+                .documentationUrl("https://docs.example.org")
+                .createdAt(now)
+                .updatedAt(now)
+                .environment(Environment.PROD)
+                .version("1.2.3")
+                .build();
+        for (int i = 0; i < additionalProperties; i++) {
+            model.setAdditionalProperty("attribute" + i, "value" + i);
+        }
+        json = objectMapper.writeValueAsBytes(model);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return objectMapper.writeValueAsBytes(model);
+    }
+
+    @Benchmark
+    public ServiceInstanceModel deserialize() throws IOException {
+        return objectMapper.readValue(json, ServiceInstanceModel.class);
+    }
+}
@@ -0,0 +1,33 @@
+package com.dnastack.discovery.registry.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversions between {@link ServiceType} and its {@code group:artifact:version} form, which run for
+ * every row read from and every instance written to the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ServiceTypeBenchmark {
+
+    public String text = "org.ga4gh:beacon:1.0.0";
+    public ServiceType type = new ServiceType("org.ga4gh", "beacon", "1.0.0");
+
+    @Benchmark
+    public ServiceType fromString() {
+        return ServiceType.fromString(text);
+    }
+
+    @Benchmark
+    public String toText() {
+        return type.toString();
+    }
+}
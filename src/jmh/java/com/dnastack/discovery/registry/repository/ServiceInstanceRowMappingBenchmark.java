@@ -0,0 +1,102 @@
+package com.dnastack.discovery.registry.repository;
+
+import com.dnastack.discovery.registry.config.DatabaseConfiguration;
+import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import org.h2.jdbcx.JdbcDataSource;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.PreparedBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads service instances through {@link ServiceInstanceRepository} from an embedded H2 database, using
+ * the same Jdbi configuration as the application. H2 keeps the query itself cheap, so the results are
+ * dominated by the row mapping, which the real database can't make any faster.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ServiceInstanceRowMappingBenchmark {
+
+    private static final String REALM = "benchmark";
+
+    @Param({"1", "1000"})
+    public int rows;
+
+    private Handle handle;
+    private ServiceInstanceRepository repository;
+    private String firstId;
+
+    @Setup
+    public void setUp() throws IOException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL");
+        Jdbi jdbi = DatabaseConfiguration.createJdbi(dataSource);
+
+        // the in-memory database lives as long as this handle stays open
+        handle = jdbi.open();
+        try (InputStream schema = getClass().getResourceAsStream("/h2-schema.sql")) {
+            handle.createScript(new String(schema.readAllBytes(), StandardCharsets.UTF_8)).execute();
+        }
+        seed();
+        repository = handle.attach(ServiceInstanceRepository.class);
+    }
+
+    private void seed() {
+        handle.createUpdate("INSERT INTO organization (realm, id, name, url) VALUES (:realm, 'org', 'Example Organization', 'https://example.org')")
+                .bind("realm", REALM)
+                .execute();
+
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        PreparedBatch batch = handle.prepareBatch("INSERT INTO service_instance" +
+                " (realm, id, name, type, url, description, organization_id, contact_url, documentation_url," +
+                " created_at, updated_at, environment, version, additional_properties_json)" +
+                " VALUES (:realm, :id, :name, 'org.ga4gh:beacon:1.0.0', 'https://beacon.example.org', 'A beacon', 'org'," +
+                " 'mailto:support@example.org', 'https://docs.example.org', :now, :now, 'PROD', '1.0.0', '{\"attribute\":\"value\"}')");
+        for (int i = 0; i < rows; i++) {
+            String id = UUID.randomUUID().toString();
+            if (i == 0) {
+                firstId = id;
+            }
+            batch.bind("realm", REALM)
+                    .bind("id", id)
+                    .bind("name", "Beacon " + i)
+                    .bind("now", now)
+                    .add();
+        }
+        batch.execute();
+    }
+
+    @TearDown
+    public void tearDown() {
+        handle.close();
+    }
+
+    @Benchmark
+    public List<ServiceInstanceModel> findAll() {
+        return repository.findAll(REALM);
+    }
+
+    @Benchmark
+    public Optional<ServiceInstanceModel> findById() {
+        return repository.findById(REALM, firstId);
+    }
+}
@@ -0,0 +1,103 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import com.dnastack.discovery.registry.model.Environment;
+import com.dnastack.discovery.registry.model.OrganizationModel;
+import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import com.dnastack.discovery.registry.model.ServiceType;
+import com.dnastack.discovery.registry.repository.ServiceInstanceRowMappingBenchmark;
+import com.dnastack.discovery.registry.repository.Storage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the same service instances as {@link ServiceInstanceRowMappingBenchmark}, but from an
+ * {@link InMemoryStore}, each in a read-only transaction of its own like a request would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InMemoryServiceInstanceStoreBenchmark {
+
+    private static final String REALM = "benchmark";
+
+    @Param({"1", "1000"})
+    public int rows;
+
+    private InMemoryStore store;
+    private String firstId;
+
+    @Setup
+    public void setUp() {
+        store = new InMemoryStore();
+        Storage storage = new InMemoryStorage(store);
+        OrganizationModel organization = OrganizationModel.builder()
+                .name("Example Organization")
+                .url("https://example.org")
+                .build();
+        organization.setId(storage.withSession(session -> session.organizations().upsert(REALM, organization)));
+
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        List<ServiceInstanceModel> instances = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            instances.add(ServiceInstanceModel.builder()
+                    .id(UUID.randomUUID().toString())
+                    .name("Beacon " + i)
+                    .type(ServiceType.fromString("org.ga4gh:beacon:1.0.0"))
+                    .url("https://beacon.example.org")
+                    .description("A beacon")
+                    .organization(organization)
+                    .contactUrl("mailto:support@example.org")
+                    .documentationUrl("https://docs.example.org")
+                    .createdAt(now)
+                    .updatedAt(now)
+                    .environment(Environment.PROD)
+                    .version("1.0.0")
+                    .additionalProperties(Map.of("attribute", "value"))
+                    .build());
+        }
+        firstId = instances.get(0).getId();
+        storage.useSession(session -> session.serviceInstances().saveAllIfAbsent(REALM, instances));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Benchmark
+    public List<ServiceInstanceModel> findAll() {
+        InMemoryTransaction transaction = store.begin(true);
+        try {
+            return new InMemoryServiceInstanceStore(transaction).findAll(REALM);
+        } finally {
+            transaction.commit();
+        }
+    }
+
+    @Benchmark
+    public Optional<ServiceInstanceModel> findById() {
+        InMemoryTransaction transaction = store.begin(true);
+        try {
+            return new InMemoryServiceInstanceStore(transaction).findById(REALM, firstId);
+        } finally {
+            transaction.commit();
+        }
+    }
+}
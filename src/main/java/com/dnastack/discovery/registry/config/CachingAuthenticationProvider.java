@@ -0,0 +1,102 @@
+package com.dnastack.discovery.registry.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Remembers successful username and password verifications for a short while, so that a client sending
+ * the same HTTP Basic credentials with every request pays for a slow password hash like bcrypt only once
+ * per TTL rather than on every write.
+ * <p>
+ * Credentials are never kept. Entries are keyed by an HMAC of the username and password under a random
+ * key generated at startup, so the cache can't be used to recover or check passwords. Failed verifications
+ * aren't cached, and a changed password takes effect at the latest once the TTL has passed. Each request
+ * gets a token of its own, since the authentication manager erases credentials from and attaches request
+ * details to the token it is given.
+ * </p>
+ */
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final AuthenticationProvider delegate;
+    private final SecretKeySpec hashKey;
+    private final Cache<String, Authentication> verified;
+    private final Counter hits;
+    private final Counter misses;
+
+    public CachingAuthenticationProvider(AuthenticationProvider delegate, Duration ttl, long maxSize, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.hashKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+        this.verified = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .build();
+
+        this.hits = Counter.builder("auth.credentials.cache")
+                .description("Password verifications skipped because the same credentials were verified recently")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("auth.credentials.cache")
+                .description("Password verifications run because the credentials were not verified recently")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) {
+        Object credentials = authentication.getCredentials();
+        if (!(credentials instanceof String)) {
+            return delegate.authenticate(authentication);
+        }
+
+        String key = hash(authentication.getName(), (String) credentials);
+        Authentication cached = verified.getIfPresent(key);
+        if (cached != null) {
+            hits.increment();
+            return copyOf(cached);
+        }
+        misses.increment();
+        Authentication result = delegate.authenticate(authentication);
+        if (result != null && result.isAuthenticated()) {
+            verified.put(key, copyOf(result));
+        }
+        return result;
+    }
+
+    private static Authentication copyOf(Authentication authentication) {
+        return new UsernamePasswordAuthenticationToken(authentication.getPrincipal(), null, authentication.getAuthorities());
+    }
+
+    private String hash(String username, String password) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(hashKey);
+            // the length prefix keeps "a:b" + "c" apart from "a" + "b:c"
+            mac.update((username.length() + ":" + username + ":" + password).getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC_ALGORITHM + " is not available", e);
+        }
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return UsernamePasswordAuthenticationToken.class.isAssignableFrom(authentication) && delegate.supports(authentication);
+    }
+}
@@ -0,0 +1,14 @@
+package com.dnastack.discovery.registry.config;
+
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Thrown by {@link ConnectionLimitingDataSource} when a caller can't be given a connection because too many
+ * are waiting already or it waited too long. Answered with 503 Service Unavailable.
+ */
+public class ConnectionLimitExceededException extends SQLTransientConnectionException {
+
+    public ConnectionLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -1,8 +1,9 @@
 package com.dnastack.discovery.registry.config;
 
 import com.dnastack.discovery.registry.model.OrganizationModel;
-import com.dnastack.discovery.registry.model.ServiceInstanceModel;
 import com.dnastack.discovery.registry.model.ServiceType;
+import com.dnastack.discovery.registry.repository.ServiceInstanceRowMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.jdbi.v3.core.Jdbi;
 import org.jdbi.v3.core.argument.Argument;
 import org.jdbi.v3.core.argument.ArgumentFactory;
@@ -13,8 +14,8 @@ import org.jdbi.v3.core.mapper.ColumnMapper;
 import org.jdbi.v3.core.mapper.RowMapper;
 import org.jdbi.v3.core.mapper.reflect.BeanMapper;
 import org.jdbi.v3.core.mapper.reflect.ConstructorMapper;
+import org.jdbi.v3.core.statement.SqlStatements;
 import org.jdbi.v3.core.statement.StatementContext;
-import org.jdbi.v3.core.transaction.SerializableTransactionRunner;
 import org.jdbi.v3.jackson2.Jackson2Plugin;
 import org.jdbi.v3.sqlobject.SqlObjectPlugin;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -36,12 +37,21 @@ public class DatabaseConfiguration {
     private DataSource dataSource;
 
     @Bean
-    public Jdbi jdbi() {
-        return Jdbi.create(new TransactionAwareDataSourceProxy(dataSource))
-                .setTransactionHandler(new SerializableTransactionRunner())
-                .registerRowMapper(BeanMapper.factory(ServiceInstanceModel.class))
+    public Jdbi jdbi(MeterRegistry meterRegistry) {
+        Jdbi jdbi = createJdbi(new TransactionAwareDataSourceProxy(dataSource));
+        jdbi.getConfig(SqlStatements.class).setSqlLogger(new TimingSqlLogger(meterRegistry));
+        return jdbi;
+    }
+
+    /**
+     * Creates a Jdbi instance with the mappers, arguments and plugins the repositories rely on.
+     */
+    public static Jdbi createJdbi(DataSource dataSource) {
+        return Jdbi.create(dataSource)
+                .registerRowMapper(new ServiceInstanceRowMapper())
                 .registerColumnMapper(new ServiceTypeColumnMapper())
                 .registerArgument(new ServiceTypeArgumentFactory())
+                .registerArrayType(String.class, "varchar")
                 .registerRowMapper(BeanMapper.factory(OrganizationModel.class))
                 .installPlugin(new SqlObjectPlugin())
                 .installPlugin(new Jackson2Plugin());
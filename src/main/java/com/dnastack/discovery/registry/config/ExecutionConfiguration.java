@@ -0,0 +1,106 @@
+package com.dnastack.discovery.registry.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Chooses what requests are handled on, as set by {@code app.execution.mode}:
+ * <dl>
+ *     <dt>{@code platform}</dt>
+ *     <dd>Tomcat's own thread pool, so no more requests are handled at a time than it has threads.</dd>
+ *     <dt>{@code virtual}</dt>
+ *     <dd>A new virtual thread for each request, which needs Java 21 or newer at runtime. Requests blocked
+ *     on the database no longer hold up the others, and the database connections are shared out by
+ *     {@link ConnectionLimitingDataSource} instead.</dd>
+ * </dl>
+ */
+@Slf4j
+@Configuration
+public class ExecutionConfiguration {
+
+    static final String PLATFORM = "platform";
+    static final String VIRTUAL = "virtual";
+
+    private final String mode;
+    private ExecutorService requestExecutor;
+
+    public ExecutionConfiguration(@Value("${app.execution.mode:platform}") String mode) {
+        this.mode = validateMode(mode);
+    }
+
+    private static String validateMode(String mode) {
+        if (!PLATFORM.equals(mode) && !VIRTUAL.equals(mode)) {
+            throw new IllegalArgumentException("Unknown app.execution.mode '" + mode + "'; expected '" + PLATFORM + "' or '" + VIRTUAL + "'");
+        }
+        return mode;
+    }
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> requestExecutionCustomizer() {
+        return factory -> {
+            if (!VIRTUAL.equals(mode)) {
+                return;
+            }
+            requestExecutor = VirtualThreads.newThreadPerTaskExecutor("http-vt-");
+            factory.addConnectorCustomizers(connector -> connector.getProtocolHandler().setExecutor(requestExecutor));
+            log.info("Handling requests on virtual threads");
+        };
+    }
+
+    /**
+     * In virtual mode, wraps the data source in a {@link ConnectionLimitingDataSource} that hands out at most
+     * {@code app.execution.connection-limit.max-connections} connections at a time, or as many as the
+     * Hikari pool holds if that is 0.
+     */
+    @Bean
+    public static BeanPostProcessor connectionLimitingPostProcessor(@Value("${app.execution.mode:platform}") String mode,
+                                                                    @Value("${app.execution.connection-limit.max-connections:0}") int maxConnections,
+                                                                    @Value("${app.execution.connection-limit.max-waiting:1000}") int maxWaiting,
+                                                                    @Value("${app.execution.connection-limit.max-wait-millis:5000}") long maxWaitMillis,
+                                                                    ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!VIRTUAL.equals(mode) || !(bean instanceof DataSource) || bean instanceof ConnectionLimitingDataSource) {
+                    return bean;
+                }
+                int limit = maxConnections > 0 ? maxConnections : poolSize((DataSource) bean);
+                if (limit <= 0) {
+                    log.warn("Not limiting connections from data source '{}': set app.execution.connection-limit.max-connections", beanName);
+                    return bean;
+                }
+                log.info("Limiting data source '{}' to {} connections at a time, with up to {} callers waiting for up to {}ms",
+                        beanName, limit, maxWaiting, maxWaitMillis);
+                return new ConnectionLimitingDataSource((DataSource) bean, limit, maxWaiting, maxWaitMillis, meterRegistry.getObject());
+            }
+        };
+    }
+
+    private static int poolSize(DataSource dataSource) {
+        try {
+            return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize() : 0;
+        } catch (SQLException e) {
+            return 0;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+        }
+    }
+}
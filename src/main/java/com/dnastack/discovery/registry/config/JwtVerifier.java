@@ -0,0 +1,122 @@
+package com.dnastack.discovery.registry.config;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import com.nimbusds.jose.jwk.source.ImmutableSecret;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.BadJOSEException;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.proc.DefaultJWTClaimsVerifier;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.text.ParseException;
+import java.util.Base64;
+
+/**
+ * Verifies JWT bearer tokens locally, against a key from the configuration, so that authenticating a
+ * request takes neither a password hash nor a call to the token issuer.
+ * <p>
+ * Tokens are accepted if they are signed with HS256 under {@code app.auth.jwt.secret} or with RS256 under
+ * {@code app.auth.jwt.public-key}, whichever is configured, haven't expired, and match
+ * {@code app.auth.jwt.issuer} and {@code app.auth.jwt.audience} if those are set. Without a key, every
+ * bearer token is rejected.
+ * </p>
+ */
+@Slf4j
+@Component
+public class JwtVerifier {
+
+    private final DefaultJWTProcessor<SecurityContext> processor;
+    private final String issuer;
+    private final String audience;
+
+    @Inject
+    public JwtVerifier(@Value("${app.auth.jwt.secret:}") String secret,
+                       @Value("${app.auth.jwt.public-key:}") String publicKey,
+                       @Value("${app.auth.jwt.issuer:}") String issuer,
+                       @Value("${app.auth.jwt.audience:}") String audience) {
+        this.issuer = issuer;
+        this.audience = audience;
+
+        if (!secret.isEmpty() && !publicKey.isEmpty()) {
+            throw new IllegalArgumentException("Configure either app.auth.jwt.secret or app.auth.jwt.public-key, not both");
+        }
+        if (secret.isEmpty() && publicKey.isEmpty()) {
+            log.info("No JWT verification key configured; bearer tokens will be rejected");
+            processor = null;
+            return;
+        }
+
+        processor = new DefaultJWTProcessor<>();
+        if (!secret.isEmpty()) {
+            byte[] secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+            if (secretBytes.length < 32) {
+                throw new IllegalArgumentException("app.auth.jwt.secret must be at least 256 bits long");
+            }
+            JWKSource<SecurityContext> keySource = new ImmutableSecret<>(secretBytes);
+            processor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.HS256, keySource));
+        } else {
+            JWKSource<SecurityContext> keySource = new ImmutableJWKSet<>(new JWKSet(new RSAKey.Builder(parseRsaPublicKey(publicKey)).build()));
+            processor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, keySource));
+        }
+        // checks exp and nbf, allowing for some clock skew
+        processor.setJWTClaimsSetVerifier(new DefaultJWTClaimsVerifier<>());
+    }
+
+    private static RSAPublicKey parseRsaPublicKey(String pem) {
+        String base64 = pem
+                .replace("-----BEGIN PUBLIC KEY-----", "")
+                .replace("-----END PUBLIC KEY-----", "")
+                .replaceAll("\\s", "");
+        try {
+            return (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(base64)));
+        } catch (GeneralSecurityException | IllegalArgumentException | ClassCastException e) {
+            throw new IllegalArgumentException("app.auth.jwt.public-key is not a PEM-encoded RSA public key", e);
+        }
+    }
+
+    /**
+     * Returns the claims of the given token if it's valid.
+     *
+     * @throws BadCredentialsException if it isn't
+     */
+    public JWTClaimsSet verify(String token) {
+        if (processor == null) {
+            throw new BadCredentialsException("Bearer tokens are not accepted");
+        }
+        JWTClaimsSet claims;
+        try {
+            claims = processor.process(token, null);
+        } catch (ParseException | BadJOSEException | JOSEException e) {
+            throw new BadCredentialsException("Invalid bearer token: " + e.getMessage(), e);
+        }
+        if (claims.getExpirationTime() == null) {
+            throw new BadCredentialsException("Invalid bearer token: no expiration time");
+        }
+        if (!issuer.isEmpty() && !issuer.equals(claims.getIssuer())) {
+            throw new BadCredentialsException("Invalid bearer token: unexpected issuer");
+        }
+        if (!audience.isEmpty() && (claims.getAudience() == null || !claims.getAudience().contains(audience))) {
+            throw new BadCredentialsException("Invalid bearer token: unexpected audience");
+        }
+        if (claims.getSubject() == null) {
+            throw new BadCredentialsException("Invalid bearer token: no subject");
+        }
+        return claims;
+    }
+}
@@ -0,0 +1,55 @@
+package com.dnastack.discovery.registry.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Service;
+
+@Configuration
+public class MetricsConfiguration {
+
+    /**
+     * Times every call into a {@link Service @Service} bean from outside it in the {@code service.methods}
+     * timer, tagged with the class, the method and the exception thrown, if any. The timing includes the
+     * transaction the method runs in, commit included.
+     * <p>
+     * This is applied by the same infrastructure that applies {@code @Transactional}, which is why it is
+     * registered as an infrastructure bean. The meter registry is looked up on first use rather than
+     * injected, so that it isn't created before it can be fully configured.
+     * </p>
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor serviceMethodTimingAdvisor(ObjectProvider<MeterRegistry> meterRegistry) {
+        MethodInterceptor timing = invocation -> {
+            Timer.Sample sample = Timer.start(meterRegistry.getObject());
+            String exception = "none";
+            try {
+                return invocation.proceed();
+            } catch (Throwable t) {
+                exception = t.getClass().getSimpleName();
+                throw t;
+            } finally {
+                sample.stop(Timer.builder("service.methods")
+                        .description("Time taken by service methods, including their transaction")
+                        .tag("class", invocation.getMethod().getDeclaringClass().getSimpleName())
+                        .tag("method", invocation.getMethod().getName())
+                        .tag("exception", exception)
+                        .register(meterRegistry.getObject()));
+            }
+        };
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(AnnotationMatchingPointcut.forClassAnnotation(Service.class), timing);
+        // outside the transaction, so that commits are timed too
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return advisor;
+    }
+}
@@ -0,0 +1,162 @@
+package com.dnastack.discovery.registry.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Hands out connections to one of a number of read replicas for read-only transactions, taking turns, and
+ * connections to the primary for everything else.
+ * <p>
+ * The transaction has to be known to be read-only by the time a connection is asked for, which is why this
+ * sits behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}. A replica that
+ * fails to hand out a connection is skipped for a while, and reads go to the primary while no replica is
+ * available. Code that has to see its own or the latest writes can read from the primary with
+ * {@link #primaryOnly()}.
+ * </p>
+ */
+@Slf4j
+public class ReadReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+
+    /**
+     * Ends the period during which reads on the current thread go to the primary.
+     */
+    public interface PrimaryOnly extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static class Replica {
+        final DataSource dataSource;
+        volatile boolean down;
+        volatile long retryAt;
+
+        Replica(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long retryAfterNanos;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter fallbacks;
+
+    public ReadReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, long retryAfterMillis,
+                                        MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).collect(toList());
+        this.retryAfterNanos = TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+
+        Gauge.builder("datasource.replicas.available", this, ReadReplicaRoutingDataSource::countAvailable)
+                .description("Read replicas that aren't being skipped after failing to hand out a connection")
+                .register(meterRegistry);
+        this.fallbacks = Counter.builder("datasource.replicas.fallbacks")
+                .description("Read-only transactions sent to the primary because no replica was available")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Sends the reads made on the current thread to the primary until the returned value is closed.
+     */
+    public static PrimaryOnly primaryOnly() {
+        if (Boolean.TRUE.equals(PRIMARY_ONLY.get())) {
+            return () -> { };
+        }
+        PRIMARY_ONLY.set(true);
+        return PRIMARY_ONLY::remove;
+    }
+
+    private boolean routesToReplica() {
+        return !replicas.isEmpty()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && !Boolean.TRUE.equals(PRIMARY_ONLY.get());
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!routesToReplica()) {
+            return primary.getConnection();
+        }
+        int first = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((first + i) % replicas.size());
+            if (replica.down && System.nanoTime() - replica.retryAt < 0) {
+                continue;
+            }
+            try {
+                Connection connection = replica.dataSource.getConnection();
+                if (replica.down) {
+                    replica.down = false;
+                    log.info("Read replica {} is available again", replica.dataSource);
+                }
+                return connection;
+            } catch (SQLException | RuntimeException e) {
+                replica.retryAt = System.nanoTime() + retryAfterNanos;
+                replica.down = true;
+                log.warn("Skipping read replica {} for {}ms: {}", replica.dataSource,
+                        TimeUnit.NANOSECONDS.toMillis(retryAfterNanos), e.getMessage());
+            }
+        }
+        fallbacks.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    private int countAvailable() {
+        return (int) replicas.stream().filter(replica -> !replica.down).count();
+    }
+
+    // lets connection pool metrics and settings be found through this, as they would be without replicas
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? (T) this : primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+
+    /**
+     * Closes the primary and the replicas, if they can be closed.
+     */
+    @Override
+    public void close() {
+        for (Replica replica : replicas) {
+            closeQuietly(replica.dataSource);
+        }
+        closeQuietly(primary);
+    }
+
+    private static void closeQuietly(DataSource dataSource) {
+        if (!(dataSource instanceof AutoCloseable)) {
+            return;
+        }
+        try {
+            ((AutoCloseable) dataSource).close();
+        } catch (Exception e) {
+            log.warn("Failed to close data source {}", dataSource, e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.dnastack.discovery.registry.config;
+
+import com.dnastack.discovery.registry.config.ReadReplicaRoutingDataSource.PrimaryOnly;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Lets clients read their own writes while read replicas catch up. The response to every request that may
+ * write carries a {@code Service-Registry-Consistency-Token}, the time the request arrived. Requests that
+ * send it back within the configured window read from the primary, as do the writing requests themselves.
+ * <p>
+ * The token is compared against this node's clock, so the window should leave room for the clocks of the
+ * nodes to differ. A token from too far in the future is ignored rather than honoured for longer.
+ * </p>
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    public static final String CONSISTENCY_TOKEN_HEADER = "Service-Registry-Consistency-Token";
+
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final long windowMillis;
+
+    public ReadYourWritesFilter(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long now = System.currentTimeMillis();
+        if (SAFE_METHODS.contains(request.getMethod())) {
+            if (!isRecent(request.getHeader(CONSISTENCY_TOKEN_HEADER), now)) {
+                chain.doFilter(request, response);
+                return;
+            }
+        } else {
+            response.setHeader(CONSISTENCY_TOKEN_HEADER, Long.toString(now));
+        }
+        PrimaryOnly primaryOnly = ReadReplicaRoutingDataSource.primaryOnly();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            primaryOnly.close();
+        }
+    }
+
+    private boolean isRecent(String token, long now) {
+        if (token == null) {
+            return false;
+        }
+        try {
+            return Math.abs(now - Long.parseLong(token.trim())) < windowMillis;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
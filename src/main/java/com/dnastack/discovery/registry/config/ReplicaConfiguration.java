@@ -0,0 +1,145 @@
+package com.dnastack.discovery.registry.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.DestructionAwareBeanPostProcessor;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Sends read-only transactions to the read replicas listed in {@code app.replicas.urls}, and everything
+ * else to the primary configured as {@code spring.datasource}. Without replicas, nothing changes.
+ *
+ * @see ReadReplicaRoutingDataSource
+ * @see ReadYourWritesFilter
+ */
+@Slf4j
+@Configuration
+public class ReplicaConfiguration {
+
+    private static List<String> parseUrls(String[] urls) {
+        return Arrays.stream(urls).map(String::trim).filter(url -> !url.isEmpty()).collect(toList());
+    }
+
+    @Bean
+    public FilterRegistrationBean<ReadYourWritesFilter> readYourWritesFilter(@Value("${app.replicas.urls:}") String[] urls,
+                                                                             @Value("${app.replicas.read-your-writes-seconds:5}") long windowSeconds) {
+        FilterRegistrationBean<ReadYourWritesFilter> registration = new FilterRegistrationBean<>(new ReadYourWritesFilter(windowSeconds * 1000));
+        registration.setEnabled(!parseUrls(urls).isEmpty());
+        return registration;
+    }
+
+    /**
+     * Puts the data source behind a {@link ReadReplicaRoutingDataSource}. This runs before the connection
+     * limit of {@link ExecutionConfiguration} is applied, so that the limit covers the replicas as well.
+     */
+    @Bean
+    public static BeanPostProcessor replicaRoutingPostProcessor(@Value("${app.replicas.urls:}") String[] urls,
+                                                                @Value("${app.replicas.pool-size:10}") int poolSize,
+                                                                @Value("${app.replicas.connection-timeout-millis:1000}") long connectionTimeoutMillis,
+                                                                @Value("${app.replicas.retry-after-millis:10000}") long retryAfterMillis,
+                                                                ObjectProvider<DataSourceProperties> dataSourceProperties,
+                                                                ObjectProvider<MeterRegistry> meterRegistry) {
+        return new ReplicaRoutingPostProcessor(parseUrls(urls), poolSize, connectionTimeoutMillis, retryAfterMillis, dataSourceProperties, meterRegistry);
+    }
+
+    private static class ReplicaRoutingPostProcessor implements DestructionAwareBeanPostProcessor, Ordered {
+
+        private final List<String> urls;
+        private final int poolSize;
+        private final long connectionTimeoutMillis;
+        private final long retryAfterMillis;
+        private final ObjectProvider<DataSourceProperties> dataSourceProperties;
+        private final ObjectProvider<MeterRegistry> meterRegistry;
+        private ReadReplicaRoutingDataSource routingDataSource;
+
+        ReplicaRoutingPostProcessor(List<String> urls, int poolSize, long connectionTimeoutMillis, long retryAfterMillis,
+                                    ObjectProvider<DataSourceProperties> dataSourceProperties,
+                                    ObjectProvider<MeterRegistry> meterRegistry) {
+            this.urls = urls;
+            this.poolSize = poolSize;
+            this.connectionTimeoutMillis = connectionTimeoutMillis;
+            this.retryAfterMillis = retryAfterMillis;
+            this.dataSourceProperties = dataSourceProperties;
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (urls.isEmpty() || !(bean instanceof DataSource) || routingDataSource != null) {
+                return bean;
+            }
+            DataSource primary = (DataSource) bean;
+            List<DataSource> replicas = new ArrayList<>();
+            for (String url : urls) {
+                replicas.add(createReplica(primary, url, replicas.size() + 1));
+            }
+            routingDataSource = new ReadReplicaRoutingDataSource(primary, replicas, retryAfterMillis, meterRegistry.getObject());
+            log.info("Sending read-only transactions from data source '{}' to {} read replicas", beanName, replicas.size());
+
+            LazyConnectionDataSourceProxy lazyDataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+            // reads the primary's default auto-commit and isolation, which the replicas are set up to share
+            lazyDataSource.afterPropertiesSet();
+            return lazyDataSource;
+        }
+
+        private DataSource createReplica(DataSource primary, String url, int number) {
+            HikariDataSource replica = dataSourceProperties.getObject().initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(url)
+                    .build();
+            replica.setPoolName("replica-" + number);
+            replica.setMaximumPoolSize(poolSize);
+            replica.setConnectionTimeout(connectionTimeoutMillis);
+            replica.setReadOnly(true);
+            // start even if the replica is down, to be retried later
+            replica.setInitializationFailTimeout(-1);
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry.getObject()));
+            try {
+                if (primary.isWrapperFor(HikariDataSource.class)) {
+                    HikariDataSource primaryPool = primary.unwrap(HikariDataSource.class);
+                    replica.setAutoCommit(primaryPool.isAutoCommit());
+                    replica.setTransactionIsolation(primaryPool.getTransactionIsolation());
+                }
+            } catch (SQLException e) {
+                log.warn("Could not copy connection settings of the primary to replica {}", url, e);
+            }
+            return replica;
+        }
+
+        @Override
+        public void postProcessBeforeDestruction(Object bean, String beanName) {
+            if (bean instanceof DataSource && routingDataSource != null) {
+                routingDataSource.close();
+                routingDataSource = null;
+            }
+        }
+
+        @Override
+        public boolean requiresDestruction(Object bean) {
+            return !urls.isEmpty() && bean instanceof DataSource;
+        }
+    }
+}
@@ -1,11 +1,21 @@
 package com.dnastack.discovery.registry.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+
+import javax.inject.Inject;
+import java.time.Duration;
 
 import static org.springframework.security.config.http.SessionCreationPolicy.STATELESS;
 
@@ -14,6 +24,34 @@ import static org.springframework.security.config.http.SessionCreationPolicy.STA
 @Configuration
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
+    private final UserDetailsService userDetailsService;
+    private final JwtVerifier jwtVerifier;
+    private final MeterRegistry meterRegistry;
+    private final Duration credentialCacheTtl;
+    private final long credentialCacheMaxSize;
+
+    @Inject
+    public SecurityConfig(UserDetailsService userDetailsService,
+                          JwtVerifier jwtVerifier,
+                          MeterRegistry meterRegistry,
+                          @Value("${app.auth.credential-cache.ttl-seconds:60}") long credentialCacheTtlSeconds,
+                          @Value("${app.auth.credential-cache.max-size:10000}") long credentialCacheMaxSize) {
+        this.userDetailsService = userDetailsService;
+        this.jwtVerifier = jwtVerifier;
+        this.meterRegistry = meterRegistry;
+        this.credentialCacheTtl = Duration.ofSeconds(credentialCacheTtlSeconds);
+        this.credentialCacheMaxSize = credentialCacheMaxSize;
+    }
+
+    @Override
+    protected void configure(AuthenticationManagerBuilder auth) {
+        DaoAuthenticationProvider passwords = new DaoAuthenticationProvider();
+        passwords.setUserDetailsService(userDetailsService);
+        // understands the {noop} and {bcrypt} etc. prefixes spring.security.user passwords are stored with
+        passwords.setPasswordEncoder(PasswordEncoderFactories.createDelegatingPasswordEncoder());
+        auth.authenticationProvider(new CachingAuthenticationProvider(passwords, credentialCacheTtl, credentialCacheMaxSize, meterRegistry));
+    }
+
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         // @formatter:off
@@ -21,8 +59,12 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .csrf().disable()
                 .sessionManagement().sessionCreationPolicy(STATELESS)
                 .and()
+                // registry reads are public and support conditional requests, so let clients cache them
+                .headers().cacheControl().disable()
+                .and()
                 .httpBasic()
                 .and()
+                .addFilterBefore(new BearerTokenAuthenticationFilter(jwtVerifier), BasicAuthenticationFilter.class)
                 .authorizeRequests()
                 .antMatchers("/actuator/health").permitAll()
                 .antMatchers("/service-info").permitAll()
@@ -0,0 +1,89 @@
+package com.dnastack.discovery.registry.config;
+
+import com.dnastack.discovery.registry.repository.JdbiStorage;
+import com.dnastack.discovery.registry.repository.Storage;
+import com.dnastack.discovery.registry.repository.memory.InMemoryStorage;
+import com.dnastack.discovery.registry.repository.memory.InMemoryStore;
+import com.dnastack.discovery.registry.repository.memory.InMemoryTransactionManager;
+import lombok.extern.slf4j.Slf4j;
+import org.jdbi.v3.core.Jdbi;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Chooses where service instances are kept, as set by {@code app.storage.engine}:
+ * <dl>
+ *     <dt>{@code postgres}</dt>
+ *     <dd>The database configured as {@code spring.datasource}, which any number of registry nodes can
+ *     share.</dd>
+ *     <dt>{@code memory}</dt>
+ *     <dd>An {@link InMemoryStore} in this process, optionally persisted to a write-ahead log in
+ *     {@code app.storage.memory.wal-directory}. Only a single node can use it, so the change relay has to be
+ *     turned off; the {@code memory} profile does that. The data source is still configured, but never
+ *     connected to.</dd>
+ * </dl>
+ */
+@Slf4j
+@Configuration
+public class StorageConfiguration {
+
+    static final String POSTGRES = "postgres";
+    static final String MEMORY = "memory";
+
+    public StorageConfiguration(@Value("${app.storage.engine:postgres}") String engine) {
+        if (!POSTGRES.equals(engine) && !MEMORY.equals(engine)) {
+            throw new IllegalArgumentException("Unknown app.storage.engine '" + engine + "'; expected '" + POSTGRES + "' or '" + MEMORY + "'");
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(name = "app.storage.engine", havingValue = POSTGRES, matchIfMissing = true)
+    static class PostgresStorageConfiguration {
+
+        @Bean
+        public Storage storage(Jdbi jdbi) {
+            return new JdbiStorage(jdbi);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(name = "app.storage.engine", havingValue = MEMORY)
+    static class MemoryStorageConfiguration {
+
+        MemoryStorageConfiguration(@Value("${app.changes.relay.enabled:true}") boolean relayEnabled) {
+            if (relayEnabled) {
+                throw new IllegalArgumentException("app.changes.relay.enabled must be false with app.storage.engine '" + MEMORY +
+                        "', since no other registry node can share this one's storage");
+            }
+        }
+
+        @Bean
+        public InMemoryStore inMemoryStore(@Value("${app.storage.memory.wal-directory:}") String walDirectory,
+                                           @Value("${app.storage.memory.fsync:true}") boolean fsync,
+                                           @Value("${app.storage.memory.compact-interval-minutes:60}") long compactIntervalMinutes) throws IOException {
+            if (walDirectory.isEmpty()) {
+                log.warn("Keeping service instances in memory only; they are lost when the registry stops");
+                return new InMemoryStore();
+            }
+            log.info("Keeping service instances in memory, logged to {}", walDirectory);
+            return new InMemoryStore(Paths.get(walDirectory), fsync, compactIntervalMinutes);
+        }
+
+        @Bean
+        public Storage storage(InMemoryStore store) {
+            return new InMemoryStorage(store);
+        }
+
+        // replaces the DataSourceTransactionManager Spring Boot would configure
+        @Bean
+        public PlatformTransactionManager transactionManager(InMemoryStore store) {
+            return new InMemoryTransactionManager(store);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.dnastack.discovery.registry.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.jdbi.v3.core.extension.ExtensionMethod;
+import org.jdbi.v3.core.statement.SqlLogger;
+import org.jdbi.v3.core.statement.StatementContext;
+
+import java.sql.SQLException;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long each SQL statement takes to execute in the {@code jdbi.statements} timer, tagged with
+ * the repository method that ran it, such as {@code ServiceInstanceRepository.findPage}, and whether it
+ * succeeded. Statements that weren't run through a repository are tagged {@code statement=other}.
+ * <p>
+ * Only the execution itself is timed: iterating and mapping the results of a query comes on top.
+ * </p>
+ */
+public class TimingSqlLogger implements SqlLogger {
+
+    private static final String OTHER = "other";
+
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public TimingSqlLogger(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void logAfterExecution(StatementContext context) {
+        record(context, "success");
+    }
+
+    @Override
+    public void logException(StatementContext context, SQLException ex) {
+        record(context, "error");
+    }
+
+    private void record(StatementContext context, String outcome) {
+        ExtensionMethod method = context.getExtensionMethod();
+        String statement = method == null ? OTHER : method.getType().getSimpleName() + "." + method.getMethod().getName();
+        timers.computeIfAbsent(statement + " " + outcome, key -> Timer.builder("jdbi.statements")
+                .description("Time taken to execute SQL statements")
+                .tag("statement", statement)
+                .tag("outcome", outcome)
+                .register(meterRegistry))
+                .record(context.getElapsedTime(ChronoUnit.NANOS), TimeUnit.NANOSECONDS);
+    }
+}
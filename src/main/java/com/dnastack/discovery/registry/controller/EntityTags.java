@@ -0,0 +1,91 @@
+package com.dnastack.discovery.registry.controller;
+
+import com.dnastack.discovery.registry.model.ServiceInstanceHealth;
+import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Conversion between service instance versions (their {@code updatedAt} timestamps) and HTTP entity tags,
+ * and entity tags for the responses that depend on a whole realm.
+ * <p>
+ * Health checks change what a service instance looks like without changing its version, so an instance's
+ * entity tag is its version followed by the time of its latest health check. Only the version is compared
+ * against {@code If-Match}, since a new health check doesn't conflict with what a client writes.
+ * </p>
+ */
+final class EntityTags {
+
+    private EntityTags() {
+    }
+
+    static String of(ServiceInstanceModel serviceInstance) {
+        String tag = Long.toString(micros(serviceInstance.getUpdatedAt()));
+        ServiceInstanceHealth health = serviceInstance.getHealth();
+        if (health != null) {
+            tag += "-" + micros(health.getCheckedAt());
+        }
+        return "\"" + tag + "\"";
+    }
+
+    /**
+     * Returns when the given service instance last changed: when it was last updated, or last health checked
+     * if that was later.
+     */
+    static ZonedDateTime lastModified(ServiceInstanceModel serviceInstance) {
+        ServiceInstanceHealth health = serviceInstance.getHealth();
+        if (health != null && health.getCheckedAt().isAfter(serviceInstance.getUpdatedAt())) {
+            return health.getCheckedAt();
+        }
+        return serviceInstance.getUpdatedAt();
+    }
+
+    private static long micros(ZonedDateTime time) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, time.toInstant());
+    }
+
+    /**
+     * Returns the entity tag for a realm-wide response at the given version.
+     *
+     * @param epoch distinguishes the versions of this process from those of other processes
+     * @param sequence the realm's version within this process
+     */
+    static String ofRealm(String epoch, long sequence) {
+        return "\"" + epoch + "-" + sequence + "\"";
+    }
+
+    /**
+     * Parses an {@code If-Match} header into the set of versions it accepts.
+     *
+     * @return null if any version is acceptable (the header is absent or {@code *}); otherwise the
+     * versions named by the header's strong entity tags, which may be empty if none of them are ours
+     */
+    static Set<Instant> parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        Set<Instant> versions = new HashSet<>();
+        for (String tag : ifMatch.split(",")) {
+            tag = tag.trim();
+            // If-Match uses the strong comparison, so weak tags never match
+            if (tag.length() < 2 || !tag.startsWith("\"") || !tag.endsWith("\"")) {
+                continue;
+            }
+            String version = tag.substring(1, tag.length() - 1);
+            int healthCheck = version.indexOf('-');
+            if (healthCheck >= 0) {
+                version = version.substring(0, healthCheck);
+            }
+            try {
+                versions.add(Instant.EPOCH.plus(Long.parseLong(version), ChronoUnit.MICROS));
+            } catch (NumberFormatException e) {
+                // not one of ours, so it can't match
+            }
+        }
+        return versions;
+    }
+}
@@ -1,29 +1,35 @@
 package com.dnastack.discovery.registry.controller;
 
 import com.dnastack.discovery.registry.model.ServiceInfoModel;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 /**
- * Implementation of service-info from GA4GH specification
+ * Implementation of service-info from GA4GH specification. The service info doesn't change while the
+ * service runs, so it is rendered as JSON once.
  *
  * @see <a href="https://github.com/ga4gh-discovery/service-info">GA4GH service-info specification</a>
  */
 @RestController
 public class ServiceInfoController {
 
-    private final ServiceInfoModel serviceInfoModel;
+    private final byte[] serviceInfoJson;
 
     @Autowired
-    public ServiceInfoController(ServiceInfoModel serviceInfoModel) {
-        this.serviceInfoModel = serviceInfoModel;
+    public ServiceInfoController(ServiceInfoModel serviceInfoModel, ObjectMapper objectMapper) throws JsonProcessingException {
+        this.serviceInfoJson = objectMapper.writeValueAsBytes(serviceInfoModel);
     }
 
     @GetMapping(value = "/service-info", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public ServiceInfoModel getServiceInfoModel() {
-        return serviceInfoModel;
+    public ResponseEntity<byte[]> getServiceInfoModel() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(serviceInfoJson);
     }
 
 }
@@ -0,0 +1,59 @@
+package com.dnastack.discovery.registry.controller;
+
+import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import com.dnastack.discovery.registry.service.ServiceInstanceLeaseManager;
+import com.dnastack.discovery.registry.service.ServiceInstanceService;
+import com.dnastack.discovery.registry.service.TransactionRetryExecutor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.inject.Inject;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bulk operations on service instances. These live outside {@link ServiceInstanceController} because a
+ * custom method suffix such as {@code :batch} can't be appended to a class-level request mapping.
+ */
+@RestController
+public class ServiceInstanceBatchController {
+
+    private final ServiceInstanceService service;
+    private final ServiceInstanceLeaseManager leases;
+    private final TransactionRetryExecutor retryExecutor;
+    private final int maxBatchSize;
+
+    @Inject
+    public ServiceInstanceBatchController(ServiceInstanceService service,
+                                          ServiceInstanceLeaseManager leases,
+                                          TransactionRetryExecutor retryExecutor,
+                                          @Value("${app.batch.max-size:10000}") int maxBatchSize) {
+        this.service = service;
+        this.leases = leases;
+        this.retryExecutor = retryExecutor;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Registers all given service instances. The response lists one result per entry, in request order;
+     * a failed entry does not prevent the others from being registered. A {@code Service-Registry-Lease-TTL}
+     * header puts every registered instance on a lease, as for single registrations.
+     */
+    @PostMapping(value = "/services:batch", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public CompletableFuture<ResponseEntity> registerServiceInstances(
+            @RequestHeader(name = "Service-Registry-Realm", defaultValue = "default") String realm,
+            @RequestHeader(name = ServiceInstanceController.LEASE_TTL_HEADER, required = false) Integer leaseTtlSeconds,
+            @RequestBody List<ServiceInstanceModel> registrationRequests) {
+        if (registrationRequests.isEmpty() || registrationRequests.size() > maxBatchSize) {
+            throw new IllegalArgumentException("A batch must contain between 1 and " + maxBatchSize + " service instances");
+        }
+        leases.validateTtl(leaseTtlSeconds);
+        return retryExecutor.execute(() -> ResponseEntity.status(HttpStatus.OK).body(service.registerInstances(realm, registrationRequests, leaseTtlSeconds)));
+    }
+}
@@ -0,0 +1,90 @@
+package com.dnastack.discovery.registry.controller;
+
+import com.dnastack.discovery.registry.model.ServiceInstanceChange;
+import com.dnastack.discovery.registry.service.ServiceInstanceChangeFeed;
+import com.dnastack.discovery.registry.service.ServiceInstanceChangeFeed.Subscription;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.inject.Inject;
+import java.util.Map;
+
+/**
+ * Streams a realm's committed changes as server-sent events, so that clients can keep a copy of the
+ * realm up to date without polling.
+ * <p>
+ * Each change is sent as a {@code created}, {@code updated} or {@code deleted} event whose data is a
+ * {@link ServiceInstanceChange}. A client that reconnects with a {@code Last-Event-ID} header receives
+ * the changes it missed, as long as they are still buffered. Otherwise, including on the first connection,
+ * the stream starts with a {@code reset} event, after which the client should (re)load the realm with
+ * GET /services; changes committed after the reset follow.
+ * </p>
+ */
+@Slf4j
+@RestController
+@RequestMapping(value = "/services")
+public class ServiceInstanceChangeController {
+
+    private final ServiceInstanceChangeFeed feed;
+    private final long streamTimeoutMillis;
+
+    @Inject
+    public ServiceInstanceChangeController(ServiceInstanceChangeFeed feed,
+                                           @Value("${app.changes.stream-timeout-millis:1800000}") long streamTimeoutMillis) {
+        this.feed = feed;
+        this.streamTimeoutMillis = streamTimeoutMillis;
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamChanges(
+            @RequestHeader(name = "Service-Registry-Realm", defaultValue = "default") String realm,
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
+        // the stream ends after the timeout; clients reconnect and resume where they left off
+        SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+        Subscription subscription = feed.subscribe(realm, lastEventId, new ServiceInstanceChangeFeed.Subscriber() {
+
+            @Override
+            public void onChange(String eventId, ServiceInstanceChange change) throws Exception {
+                emitter.send(SseEmitter.event()
+                        .id(eventId)
+                        .name(change.getType())
+                        .data(change, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void onReset(String eventId, long sequence) throws Exception {
+                emitter.send(SseEmitter.event()
+                        .id(eventId)
+                        .name("reset")
+                        .data(Map.of("sequence", sequence), MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void onHeartbeat() throws Exception {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            }
+
+            @Override
+            public void onClose() {
+                emitter.complete();
+            }
+        });
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(e -> subscription.cancel());
+
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                // keeps reverse proxies such as nginx from holding events back
+                .header("X-Accel-Buffering", "no")
+                .body(emitter);
+    }
+}
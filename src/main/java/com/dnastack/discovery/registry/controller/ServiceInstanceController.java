@@ -1,54 +1,144 @@
 package com.dnastack.discovery.registry.controller;
 
+import com.dnastack.discovery.registry.model.Environment;
+import com.dnastack.discovery.registry.model.HealthStatus;
+import com.dnastack.discovery.registry.model.ServiceInstanceDelta;
+import com.dnastack.discovery.registry.model.ServiceInstanceFilter;
 import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import com.dnastack.discovery.registry.model.ServiceInstancePage;
+import com.dnastack.discovery.registry.service.ServiceInstanceCache;
+import com.dnastack.discovery.registry.service.ServiceInstanceCache.Listing;
+import com.dnastack.discovery.registry.service.ServiceInstanceCache.RealmVersion;
+import com.dnastack.discovery.registry.service.ServiceInstanceCache.RenderedInstance;
+import com.dnastack.discovery.registry.service.ServiceInstanceLeaseManager;
+import com.dnastack.discovery.registry.service.ServiceInstanceNotFoundException;
 import com.dnastack.discovery.registry.service.ServiceInstanceService;
+import com.dnastack.discovery.registry.service.TransactionRetryExecutor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.extern.slf4j.Slf4j;
-import org.jdbi.v3.core.statement.UnableToExecuteStatementException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.transaction.TransactionSystemException;
-import org.springframework.validation.BindException;
+import org.springframework.lang.Nullable;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.inject.Inject;
-import java.util.concurrent.Callable;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Slf4j
 @RestController
 @RequestMapping(value = "/services")
 public class ServiceInstanceController {
 
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final String LEASE_TTL_HEADER = "Service-Registry-Lease-TTL";
+    private static final String ATTRIBUTE_PARAMETER_PREFIX = "attr.";
+
     private final ServiceInstanceService service;
+    private final ServiceInstanceCache cache;
+    private final ServiceInstanceLeaseManager leases;
+    private final TransactionRetryExecutor retryExecutor;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final ObjectWriter ndjsonWriter;
 
     @Inject
-    public ServiceInstanceController(ServiceInstanceService service) {
+    public ServiceInstanceController(ServiceInstanceService service,
+                                     ServiceInstanceCache cache,
+                                     ServiceInstanceLeaseManager leases,
+                                     TransactionRetryExecutor retryExecutor,
+                                     ObjectMapper objectMapper,
+                                     @Value("${app.pagination.default-page-size:100}") int defaultPageSize,
+                                     @Value("${app.pagination.max-page-size:1000}") int maxPageSize) {
         this.service = service;
+        this.cache = cache;
+        this.leases = leases;
+        this.retryExecutor = retryExecutor;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        // let the servlet container's buffer decide when to send a chunk instead of flushing every line
+        this.ndjsonWriter = objectMapper.writer()
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
     }
 
+    /**
+     * Registers a service instance. With a {@code Service-Registry-Lease-TTL} header, the instance is put on
+     * a lease of that many seconds, which it has to renew through {@code PUT /services/{id}/heartbeat};
+     * otherwise it stays registered until it is deleted.
+     */
     @PostMapping(consumes = MediaType.APPLICATION_JSON_UTF8_VALUE, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public ResponseEntity registerServiceInstance(
+    public CompletableFuture<ResponseEntity> registerServiceInstance(
             @RequestHeader(name = "Service-Registry-Realm", defaultValue = "default") String realm,
-            @RequestBody ServiceInstanceModel registrationRequest) throws Exception {
-        return withRetry(() -> {
-            ServiceInstanceModel newInstance = service.registerInstance(realm, registrationRequest);
-            ServletUriComponentsBuilder selfUri = ServletUriComponentsBuilder.fromCurrentRequestUri();
-            selfUri.pathSegment("{serviceId}");
-            return ResponseEntity.created(selfUri.build(newInstance.getId())).body(newInstance);
+            @RequestHeader(name = LEASE_TTL_HEADER, required = false) Integer leaseTtlSeconds,
+            @RequestBody ServiceInstanceModel registrationRequest) {
+        leases.validateTtl(leaseTtlSeconds);
+        // resolved up front because retries don't run on the request thread
+        ServletUriComponentsBuilder selfUri = ServletUriComponentsBuilder.fromCurrentRequestUri();
+        selfUri.pathSegment("{serviceId}");
+        return retryExecutor.execute(() -> {
+            ServiceInstanceModel newInstance = service.registerInstance(realm, registrationRequest, leaseTtlSeconds);
+            return ResponseEntity.created(selfUri.build(newInstance.getId()))
+                    .eTag(EntityTags.of(newInstance))
+                    .body(newInstance);
         });
     }
 
+    /**
+     * Replaces a service instance, including its custom attributes: attributes missing from the request
+     * body are removed. If an {@code If-Match} header is given, the replacement only happens if the
+     * instance is still at one of the listed versions (as returned in the {@code ETag} header of earlier
+     * responses), and fails with 412 Precondition Failed otherwise.
+     */
     @PutMapping(value = "/{serviceId}", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public ResponseEntity replaceServiceInstance(
+    public CompletableFuture<ResponseEntity> replaceServiceInstance(
             @RequestHeader(name = "Service-Registry-Realm", defaultValue = "default") String realm,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @PathVariable("serviceId") String serviceId,
-            @RequestBody ServiceInstanceModel patch) throws Exception {
-        return withRetry(() -> {
-            return ResponseEntity.status(HttpStatus.OK).body(service.replaceInstance(realm, serviceId, patch));
+            @RequestBody ServiceInstanceModel patch) {
+        Set<Instant> expectedVersions = EntityTags.parseIfMatch(ifMatch);
+        return retryExecutor.execute(() -> {
+            ServiceInstanceModel replaced = service.replaceInstance(realm, serviceId, patch, expectedVersions);
+            return ResponseEntity.status(HttpStatus.OK).eTag(EntityTags.of(replaced)).body(replaced);
         });
     }
 
+    /**
+     * Renews the lease of a service instance registered with a TTL. Renewals are written in batches, so
+     * the response only says that the heartbeat was accepted. Once it turns out that the instance has no
+     * lease, for example because it expired, further heartbeats are answered with 404 Not Found and the
+     * instance has to register again.
+     */
+    @PutMapping(value = "/{serviceId}/heartbeat")
+    public ResponseEntity renewServiceInstanceLease(
+            @RequestHeader(name = "Service-Registry-Realm", defaultValue = "default") String realm,
+            @PathVariable("serviceId") String serviceId) {
+        if (!leases.heartbeat(realm, serviceId)) {
+            throw new ServiceInstanceNotFoundException(serviceId);
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).build();
+    }
+
     @DeleteMapping(value = "/{serviceId}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     public ResponseEntity deregisterServiceInstanceById(
             @RequestHeader(name = "Service-Registry-Realm", defaultValue = "default") String realm,
@@ -57,41 +147,292 @@ public class ServiceInstanceController {
         return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
     }
 
+    /**
+     * Returns a single service instance, already rendered if the realm's listing is cached. Spring answers
+     * conditional requests against the {@code ETag} and {@code Last-Modified} headers of the response with
+     * 304 Not Modified and no body.
+     */
     @GetMapping(value = "/{serviceId}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     public ResponseEntity getServiceInstanceById(
             @RequestHeader(name = "Service-Registry-Realm", defaultValue = "default") String realm,
             @PathVariable("serviceId") String serviceId) {
-        return ResponseEntity.status(HttpStatus.OK).body(service.getInstanceById(realm, serviceId));
+        RenderedInstance rendered = cache.getInstance(realm, serviceId, reloader(realm));
+        if (rendered != null) {
+            return ResponseEntity.status(HttpStatus.OK)
+                    .eTag(EntityTags.of(rendered.getInstance()))
+                    .lastModified(EntityTags.lastModified(rendered.getInstance()))
+                    .contentType(MediaType.APPLICATION_JSON_UTF8)
+                    .body(rendered.getJson());
+        }
+        ServiceInstanceModel instance = service.getInstanceById(realm, serviceId);
+        return ResponseEntity.status(HttpStatus.OK)
+                .eTag(EntityTags.of(instance))
+                .lastModified(EntityTags.lastModified(instance))
+                .body(instance);
     }
 
+    /**
+     * Lists the service instances in the realm. Without any query parameters the whole realm is returned,
+     * as the specification requires. When a page size, cursor or filter is given, a single page ordered by
+     * creation time is returned instead, and a {@code Link} header with {@code rel="next"} points to the
+     * following page if there is one.
+     * <p>
+     * Custom attributes are filtered on with {@code attr.<name>=<value>} parameters, which match instances
+     * whose additional property {@code <name>} is the string {@code <value>}. {@code health=up} or
+     * {@code health=down} selects instances by the outcome of their latest health check; instances that
+     * haven't been checked yet match neither.
+     * </p>
+     * <p>
+     * Responses are tagged with the realm's version, so a conditional request is answered with 304 Not
+     * Modified without reading from the database if nothing in the realm has changed. The whole realm is
+     * served from its cached, already rendered listing, gzip-compressed for clients that accept it.
+     * </p>
+     */
     @GetMapping(produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     public ResponseEntity getServiceInstances(
-            @RequestHeader(name = "Service-Registry-Realm", defaultValue = "default") String realm) {
-        return ResponseEntity.status(HttpStatus.OK).body(service.getInstances(realm));
+            @RequestHeader(name = "Service-Registry-Realm", defaultValue = "default") String realm,
+            @RequestParam(name = "limit", required = false) Integer limit,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "type.group", required = false) String typeGroup,
+            @RequestParam(name = "type.artifact", required = false) String typeArtifact,
+            @RequestParam(name = "type.version", required = false) String typeVersion,
+            @RequestParam(name = "environment", required = false) String environment,
+            @RequestParam(name = "organization.name", required = false) String organizationName,
+            @RequestParam(name = "health", required = false) String health,
+            @RequestParam Map<String, String> queryParameters,
+            WebRequest request) {
+        ServiceInstanceFilter filter = ServiceInstanceFilter.builder()
+                .typeGroup(typeGroup)
+                .typeArtifact(typeArtifact)
+                .typeVersion(typeVersion)
+                .environment(parseEnvironment(environment))
+                .organizationName(organizationName)
+                .healthStatus(parseHealthStatus(health))
+                .attributes(parseAttributes(queryParameters))
+                .build();
+
+        validateLimit(limit);
+
+        // taken before reading so that the response is never older than the version it's tagged with
+        RealmVersion version = cache.getVersion(realm);
+        if (checkNotModified(request, version)) {
+            return null;
+        }
+
+        if (limit == null && cursor == null && filter.isEmpty()) {
+            // consulted outside the service so that cache hits don't open a database transaction
+            Listing listing = cache.getInstances(realm, loader(realm), reloader(realm));
+            return withEncodedBody(withRealmVersion(ResponseEntity.status(HttpStatus.OK), listing.getVersion()),
+                    listing.getBody(), listing.getGzippedBody(), request);
+        }
+
+        ServiceInstancePage page = service.getInstancePage(realm, filter, cursor, limit == null ? defaultPageSize : limit);
+
+        return withNextPageLink(withRealmVersion(ResponseEntity.status(HttpStatus.OK), version), page)
+                .body(page.getInstances());
+    }
+
+    /**
+     * Returns only what changed in the realm since an earlier sync, as described in
+     * {@link ServiceInstanceService#getChangesSince}, so that mirrors don't have to download the whole realm
+     * to stay up to date. An empty {@code since} starts from scratch; the response's {@code nextSince} is
+     * passed as {@code since} next time. Other query parameters are ignored. A token older than the
+     * tombstone retention period is answered with 410 Gone, after which the client should sync from scratch.
+     */
+    @GetMapping(params = "since", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<ServiceInstanceDelta> getServiceInstanceChanges(
+            @RequestHeader(name = "Service-Registry-Realm", defaultValue = "default") String realm,
+            @RequestParam(name = "since") String since) {
+        ServiceInstanceDelta delta = service.getChangesSince(realm, since.isEmpty() ? null : since);
+        return ResponseEntity.ok(delta);
+    }
+
+    /**
+     * Searches the realm's service instances by name, description and organization name, as described in
+     * {@link ServiceInstanceService#searchInstances}. Results are paged like filtered listings.
+     */
+    @GetMapping(value = "/search", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity searchServiceInstances(
+            @RequestHeader(name = "Service-Registry-Realm", defaultValue = "default") String realm,
+            @RequestParam(name = "q", required = false) String query,
+            @RequestParam(name = "limit", required = false) Integer limit,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            WebRequest request) {
+        if (query == null) {
+            throw new IllegalArgumentException("Missing search text in query parameter q");
+        }
+        validateLimit(limit);
+
+        RealmVersion version = cache.getVersion(realm);
+        if (checkNotModified(request, version)) {
+            return null;
+        }
+
+        ServiceInstancePage page = service.searchInstances(realm, query, cursor, limit == null ? defaultPageSize : limit);
+        return withNextPageLink(withRealmVersion(ResponseEntity.status(HttpStatus.OK), version), page)
+                .body(page.getInstances());
+    }
+
+    /**
+     * Streams every service instance in the realm as newline-delimited JSON. Instances are written to the
+     * response as they are read from the database, so memory use does not grow with the size of the realm.
+     */
+    @GetMapping(produces = APPLICATION_NDJSON_VALUE)
+    public void streamServiceInstances(
+            @RequestHeader(name = "Service-Registry-Realm", defaultValue = "default") String realm,
+            HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+
+        OutputStream out = response.getOutputStream();
+        AtomicBoolean wroteAny = new AtomicBoolean();
+        try (SequenceWriter sequence = ndjsonWriter.writeValues(out)) {
+            service.streamInstances(realm, instance -> {
+                try {
+                    sequence.write(instance);
+                    wroteAny.set(true);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            sequence.flush();
+            if (wroteAny.get()) {
+                // the separator only goes between values, but every NDJSON line ends with a newline
+                out.write('\n');
+            }
+        }
+    }
+
+    private void validateLimit(Integer limit) {
+        if (limit != null && (limit < 1 || limit > maxPageSize)) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxPageSize);
+        }
+    }
+
+    private static ResponseEntity.BodyBuilder withNextPageLink(ResponseEntity.BodyBuilder response, ServiceInstancePage page) {
+        if (page.getNextCursor() != null) {
+            String nextUri = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("cursor", page.getNextCursor())
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + nextUri + ">; rel=\"next\"");
+        }
+        return response;
+    }
+
+    private static Map<String, String> parseAttributes(Map<String, String> queryParameters) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        queryParameters.forEach((name, value) -> {
+            if (name.startsWith(ATTRIBUTE_PARAMETER_PREFIX)) {
+                String attribute = name.substring(ATTRIBUTE_PARAMETER_PREFIX.length());
+                if (attribute.isEmpty()) {
+                    throw new IllegalArgumentException("Missing attribute name in query parameter " + name);
+                }
+                attributes.put(attribute, value);
+            }
+        });
+        return attributes;
+    }
+
+    private static Environment parseEnvironment(String environment) {
+        if (environment == null) {
+            return null;
+        }
+        Environment parsed = Environment.fromString(environment);
+        if (parsed == null) {
+            throw new IllegalArgumentException("Unknown environment: " + environment);
+        }
+        return parsed;
+    }
+
+    private static HealthStatus parseHealthStatus(String health) {
+        if (health == null) {
+            return null;
+        }
+        HealthStatus parsed = HealthStatus.fromString(health);
+        if (parsed == null) {
+            throw new IllegalArgumentException("Unknown health status: " + health);
+        }
+        return parsed;
     }
 
     @GetMapping(value = "/types", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     public ResponseEntity getServiceInstanceTypes(
-            @RequestHeader(name = "Service-Registry-Realm", defaultValue = "default") String realm) {
-        return ResponseEntity.status(HttpStatus.OK).body(service.getTypes(realm));
-    }
-
-    public <R> R withRetry(Callable<R> callback) throws Exception {
-        int remainingAttempts = 5;
-        long nextBackoff = (long) (Math.random() * 1000.0) + 200;
-        for (;;) {
-            try {
-                return callback.call();
-            } catch (final TransactionSystemException | UnableToExecuteStatementException e) {
-                remainingAttempts--;
-                if (remainingAttempts == 0) {
-                    throw e;
-                }
-                log.info("Retrying potential transaction serialization failure (backoff={}; remainingAttempts={})", nextBackoff, remainingAttempts);
-                Thread.sleep(nextBackoff);
-                nextBackoff *= 2;
+            @RequestHeader(name = "Service-Registry-Realm", defaultValue = "default") String realm,
+            WebRequest request) {
+        RealmVersion version = cache.getVersion(realm);
+        if (checkNotModified(request, version)) {
+            return null;
+        }
+        Listing listing = cache.getCachedListing(realm, reloader(realm));
+        if (listing != null) {
+            return withRealmVersion(ResponseEntity.status(HttpStatus.OK), listing.getVersion())
+                    .contentType(MediaType.APPLICATION_JSON_UTF8)
+                    .body(listing.getTypesBody());
+        }
+        // a distinct query is much cheaper than loading the whole realm into the cache
+        return withRealmVersion(ResponseEntity.status(HttpStatus.OK), version).body(service.getTypes(realm));
+    }
+
+    private Supplier<List<ServiceInstanceModel>> loader(String realm) {
+        return () -> service.getInstances(realm);
+    }
+
+    private Function<Collection<String>, List<ServiceInstanceModel>> reloader(String realm) {
+        return ids -> service.getInstancesById(realm, ids);
+    }
+
+    /**
+     * Sets the given pre-rendered JSON as the response body, or its gzip-compressed variant if there is one
+     * and the client accepts it.
+     */
+    private static ResponseEntity<byte[]> withEncodedBody(ResponseEntity.BodyBuilder response, byte[] body,
+                                                          @Nullable byte[] gzippedBody, WebRequest request) {
+        response.contentType(MediaType.APPLICATION_JSON_UTF8);
+        if (gzippedBody == null) {
+            return response.body(body);
+        }
+        response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(gzippedBody);
+        }
+        return response.body(body);
+    }
+
+    private static boolean acceptsGzip(@Nullable String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean anyAccepted = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim();
+            boolean accepted = parameters.length < 2 || !parameters[1].trim().matches("(?i)q\\s*=\\s*0(\\.0*)?");
+            if (name.equalsIgnoreCase("gzip")) {
+                // naming gzip overrides the wildcard
+                return accepted;
+            }
+            if (name.equals("*")) {
+                anyAccepted = accepted;
             }
         }
+        return anyAccepted;
+    }
+
+    /**
+     * Evaluates the request's conditional headers against the given realm version.
+     *
+     * @return true if the response has been set up as 304 Not Modified and nothing more should be written
+     */
+    private boolean checkNotModified(WebRequest request, RealmVersion version) {
+        return request.checkNotModified(
+                EntityTags.ofRealm(cache.getEpoch(), version.getSequence()),
+                version.getLastModified().toEpochMilli());
+    }
 
+    private ResponseEntity.BodyBuilder withRealmVersion(ResponseEntity.BodyBuilder response, RealmVersion version) {
+        return response
+                .eTag(EntityTags.ofRealm(cache.getEpoch(), version.getSequence()))
+                .lastModified(version.getLastModified().toEpochMilli());
     }
-}
+}
\ No newline at end of file
@@ -1,7 +1,11 @@
 package com.dnastack.discovery.registry.controller.exception;
 
+import com.dnastack.discovery.registry.config.ConnectionLimitExceededException;
+import com.dnastack.discovery.registry.service.RetryBudgetExhaustedException;
 import com.dnastack.discovery.registry.service.ServiceInstanceExistsException;
+import com.dnastack.discovery.registry.service.ServiceInstanceModifiedException;
 import com.dnastack.discovery.registry.service.ServiceInstanceNotFoundException;
+import com.dnastack.discovery.registry.service.SyncTokenExpiredException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -51,6 +55,17 @@ public class RestControllerExceptionHandler {
             responseStatus = HttpStatus.NOT_FOUND;
         } else if (ex instanceof ServiceInstanceExistsException) {
             responseStatus = HttpStatus.CONFLICT;
+        } else if (ex instanceof ServiceInstanceModifiedException) {
+            responseStatus = HttpStatus.PRECONDITION_FAILED;
+        } else if (ex instanceof SyncTokenExpiredException) {
+            responseStatus = HttpStatus.GONE;
+        } else if (ex instanceof RetryBudgetExhaustedException) {
+            log.warn("Rejecting write: {}", ex.getMessage());
+            responseStatus = HttpStatus.SERVICE_UNAVAILABLE;
+        } else if (hasCause(ex, ConnectionLimitExceededException.class)) {
+            // wrapped by whichever of Spring and JDBI asked for the connection
+            log.warn("Rejecting request: {}", ex.getMessage());
+            responseStatus = HttpStatus.SERVICE_UNAVAILABLE;
         } else {
             log.error("Unmapped exception", ex);
             responseStatus = HttpStatus.INTERNAL_SERVER_ERROR;
@@ -68,6 +83,15 @@ public class RestControllerExceptionHandler {
         return ResponseEntity.status(responseStatus).body(errorBuilder.build());
     }
 
+    private static boolean hasCause(Throwable ex, Class<? extends Throwable> type) {
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (type.isInstance(t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @ExceptionHandler(value = {MethodArgumentNotValidException.class})
     public ResponseEntity<Object> handleMethodArgumentNotValidException(MethodArgumentNotValidException ex) {
         return handleValidationException(ex.getBindingResult());
@@ -0,0 +1,31 @@
+package com.dnastack.discovery.registry.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.lang.Nullable;
+
+/**
+ * Outcome of registering one service instance as part of a batch. The fields mirror the error
+ * responses of the single-instance endpoints, so {@code status} is the HTTP status the entry would
+ * have received had it been registered on its own.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchRegistrationResult {
+
+    private int status;
+    private String title;
+    private @Nullable String detail;
+
+    /**
+     * ID of the created instance, or of the existing instance the entry conflicted with.
+     */
+    private @Nullable String serviceInstanceId;
+
+}
@@ -0,0 +1,25 @@
+package com.dnastack.discovery.registry.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.lang.Nullable;
+
+import java.time.ZonedDateTime;
+
+/**
+ * A service instance whose health check is due, as claimed by one registry node.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HealthCheck {
+
+    private String realm;
+    private String id;
+    private String url;
+    // as of the previous check; null if it was never checked
+    private @Nullable HealthStatus healthStatus;
+    private @Nullable ZonedDateTime nextCheckAt;
+
+}
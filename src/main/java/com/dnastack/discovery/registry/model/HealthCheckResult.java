@@ -0,0 +1,22 @@
+package com.dnastack.discovery.registry.model;
+
+import lombok.Value;
+import org.springframework.lang.Nullable;
+
+import java.time.ZonedDateTime;
+
+/**
+ * The outcome of probing one service instance, to be stored with it.
+ */
+@Value
+public class HealthCheckResult {
+
+    String realm;
+    String id;
+    HealthStatus status;
+    @Nullable Integer latencyMillis;
+    ZonedDateTime checkedAt;
+    // whether the status differs from the previous check's
+    boolean statusChanged;
+
+}
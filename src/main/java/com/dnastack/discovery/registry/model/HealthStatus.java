@@ -0,0 +1,31 @@
+package com.dnastack.discovery.registry.model;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+public enum HealthStatus {
+    UP("up"), DOWN("down");
+
+    private final String status;
+
+    public static HealthStatus fromString(String text) {
+        if (text != null) {
+            for (HealthStatus s : HealthStatus.values()) {
+                if (text.equalsIgnoreCase(s.toString())) {
+                    return s;
+                }
+            }
+        }
+        return null;
+    }
+
+    HealthStatus(String status) {
+        this.status = status;
+    }
+
+    @Override
+    @JsonValue
+    public String toString() {
+        return status;
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.dnastack.discovery.registry.model;
+
+import lombok.Value;
+
+import java.time.ZonedDateTime;
+
+/**
+ * The latest heartbeat received for a leased service instance.
+ */
+@Value
+public class LeaseRenewal {
+
+    String realm;
+    String id;
+    ZonedDateTime renewedAt;
+
+}
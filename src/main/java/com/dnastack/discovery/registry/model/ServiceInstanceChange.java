@@ -0,0 +1,33 @@
+package com.dnastack.discovery.registry.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.lang.Nullable;
+
+/**
+ * A committed change to a service instance, as sent on the change feed.
+ */
+@Data
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ServiceInstanceChange {
+
+    /**
+     * Position of the change in the realm's feed. Later changes have higher sequence numbers.
+     */
+    private long sequence;
+
+    /**
+     * One of {@code created}, {@code updated} or {@code deleted}.
+     */
+    private String type;
+
+    private String serviceInstanceId;
+
+    /**
+     * The service instance as of this change, or {@code null} if it was deleted.
+     */
+    private @Nullable ServiceInstanceModel serviceInstance;
+
+}
@@ -0,0 +1,28 @@
+package com.dnastack.discovery.registry.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * What changed in a realm since a client's last sync.
+ */
+@Data
+@AllArgsConstructor
+public class ServiceInstanceDelta {
+
+    /**
+     * The current state of every instance created or updated since the last sync. May include instances
+     * that were already returned by the last sync.
+     */
+    private List<ServiceInstanceModel> services;
+
+    private List<ServiceInstanceTombstone> deleted;
+
+    /**
+     * Opaque token to pass as {@code since} on the next sync.
+     */
+    private String nextSince;
+
+}
@@ -0,0 +1,67 @@
+package com.dnastack.discovery.registry.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.jdbi.v3.json.Json;
+import org.springframework.lang.Nullable;
+
+import java.util.Map;
+
+/**
+ * Optional criteria for narrowing down a service instance listing. Every criterion that is {@code null}
+ * matches all service instances.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ServiceInstanceFilter {
+
+    private @Nullable String typeGroup;
+    private @Nullable String typeArtifact;
+    private @Nullable String typeVersion;
+    private @Nullable Environment environment;
+    private @Nullable String organizationName;
+    private @Nullable HealthStatus healthStatus;
+    // custom attributes (additional properties) that must have the given string values
+    private @Nullable Map<String, String> attributes;
+
+    public boolean isEmpty() {
+        return typeGroup == null
+                && typeArtifact == null
+                && typeVersion == null
+                && environment == null
+                && organizationName == null
+                && healthStatus == null
+                && getAttributeContainment() == null;
+    }
+
+    /**
+     * Returns the attribute criteria as a JSON object that matching additional properties must contain, or
+     * {@code null} if no attributes are constrained.
+     */
+    @Json
+    public @Nullable Map<String, String> getAttributeContainment() {
+        return attributes == null || attributes.isEmpty() ? null : attributes;
+    }
+
+    /**
+     * Returns a SQL {@code LIKE} pattern matching the {@code group:artifact:version} form the service type
+     * is stored in, or {@code null} if no part of the type is constrained.
+     */
+    public @Nullable String getTypePattern() {
+        if (typeGroup == null && typeArtifact == null && typeVersion == null) {
+            return null;
+        }
+        return likeLiteralOrWildcard(typeGroup) + ":" + likeLiteralOrWildcard(typeArtifact) + ":" + likeLiteralOrWildcard(typeVersion);
+    }
+
+    private static String likeLiteralOrWildcard(String value) {
+        if (value == null) {
+            return "%";
+        }
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
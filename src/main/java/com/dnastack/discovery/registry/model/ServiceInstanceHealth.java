@@ -0,0 +1,23 @@
+package com.dnastack.discovery.registry.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.lang.Nullable;
+
+import java.time.ZonedDateTime;
+
+/**
+ * The outcome of the latest probe of a service instance's {@code /service-info} endpoint.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ServiceInstanceHealth {
+
+    private HealthStatus status;
+    // null if the probe got no response at all
+    private @Nullable Integer latencyMillis;
+    private ZonedDateTime checkedAt;
+
+}
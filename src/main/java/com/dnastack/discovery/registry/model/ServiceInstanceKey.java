@@ -0,0 +1,18 @@
+package com.dnastack.discovery.registry.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Identifies a service instance across realms.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ServiceInstanceKey {
+
+    private String realm;
+    private String id;
+
+}
@@ -3,6 +3,7 @@ package com.dnastack.discovery.registry.model;
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import lombok.*;
 import org.jdbi.v3.core.annotation.Unmappable;
 import org.jdbi.v3.core.mapper.Nested;
@@ -20,6 +21,7 @@ import java.util.Map;
 @EqualsAndHashCode
 @NoArgsConstructor
 @AllArgsConstructor
+@JsonIgnoreProperties(value = "health", allowGetters = true)
 public class ServiceInstanceModel {
 
     private String id;
@@ -35,6 +37,8 @@ public class ServiceInstanceModel {
     private ZonedDateTime updatedAt;
     private @Nullable Environment environment;
     private String version;
+    // maintained by the registry's health checks, never taken from clients
+    private @Nullable ServiceInstanceHealth health;
 
     // catch-all for additional attributes (in service registry spec and custom)
     @JsonIgnore
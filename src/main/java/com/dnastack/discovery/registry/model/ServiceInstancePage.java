@@ -0,0 +1,20 @@
+package com.dnastack.discovery.registry.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class ServiceInstancePage {
+
+    private List<ServiceInstanceModel> instances;
+
+    /**
+     * Opaque token for fetching the page after this one, or {@code null} if this is the last page.
+     */
+    private @Nullable String nextCursor;
+
+}
@@ -0,0 +1,20 @@
+package com.dnastack.discovery.registry.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Marks a deleted service instance, so that clients syncing incrementally learn about the deletion.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ServiceInstanceTombstone {
+
+    private String id;
+    private ZonedDateTime deletedAt;
+
+}
@@ -18,8 +18,16 @@ public class ServiceType {
         if (oldStyle == null) {
             return null;
         }
-        String[] gav = oldStyle.split(":");
-        return new ServiceType(gav[0], gav[1], gav[2]);
+        int artifactStart = oldStyle.indexOf(':') + 1;
+        int versionStart = artifactStart == 0 ? 0 : oldStyle.indexOf(':', artifactStart) + 1;
+        if (versionStart == 0 || versionStart == oldStyle.length() || oldStyle.charAt(versionStart) == ':') {
+            throw new IllegalArgumentException("Expected group:artifact:version, but got " + oldStyle);
+        }
+        int versionEnd = oldStyle.indexOf(':', versionStart);
+        return new ServiceType(
+                oldStyle.substring(0, artifactStart - 1),
+                oldStyle.substring(artifactStart, versionStart - 1),
+                oldStyle.substring(versionStart, versionEnd == -1 ? oldStyle.length() : versionEnd));
     }
 
     public String toString() {
@@ -0,0 +1,17 @@
+package com.dnastack.discovery.registry.repository;
+
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ChangeNotificationRepository extends ChangeNotificationStore {
+
+    /**
+     * Queues one Postgres notification per payload on the given channel. Listeners receive them once the
+     * current transaction commits, and never if it rolls back.
+     */
+    @Override
+    @SqlUpdate("SELECT pg_notify(:channel, payload) FROM unnest(:payloads) AS p(payload)")
+    void notifyAll(@Bind("channel") String channel, @Bind("payloads") String[] payloads);
+}
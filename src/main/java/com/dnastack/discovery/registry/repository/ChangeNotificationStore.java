@@ -0,0 +1,13 @@
+package com.dnastack.discovery.registry.repository;
+
+/**
+ * Sends notifications to the other registry nodes sharing the same storage.
+ */
+public interface ChangeNotificationStore {
+
+    /**
+     * Queues one notification per payload on the given channel. Listeners receive them once the current
+     * transaction commits, and never if it rolls back.
+     */
+    void notifyAll(String channel, String[] payloads);
+}
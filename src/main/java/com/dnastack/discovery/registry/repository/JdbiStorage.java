@@ -0,0 +1,53 @@
+package com.dnastack.discovery.registry.repository;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+
+import java.util.function.Function;
+
+/**
+ * Keeps service instances in Postgres, with a session for each Jdbi handle. Handles take part in the
+ * Spring-managed transaction, since the Jdbi instance goes through a transaction-aware data source.
+ */
+public class JdbiStorage implements Storage {
+
+    private final Jdbi jdbi;
+
+    public JdbiStorage(Jdbi jdbi) {
+        this.jdbi = jdbi;
+    }
+
+    @Override
+    public <R> R withSession(Function<StorageSession, R> callback) {
+        return jdbi.withHandle(handle -> callback.apply(new HandleSession(handle)));
+    }
+
+    private static class HandleSession implements StorageSession {
+
+        private final Handle handle;
+
+        HandleSession(Handle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public ServiceInstanceStore serviceInstances() {
+            return handle.attach(ServiceInstanceRepository.class);
+        }
+
+        @Override
+        public OrganizationStore organizations() {
+            return handle.attach(OrganizationRepository.class);
+        }
+
+        @Override
+        public ServiceInstanceTombstoneStore tombstones() {
+            return handle.attach(ServiceInstanceTombstoneRepository.class);
+        }
+
+        @Override
+        public ChangeNotificationStore changeNotifications() {
+            return handle.attach(ChangeNotificationRepository.class);
+        }
+    }
+}
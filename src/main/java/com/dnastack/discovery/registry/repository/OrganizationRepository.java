@@ -3,18 +3,41 @@ package com.dnastack.discovery.registry.repository;
 import com.dnastack.discovery.registry.model.OrganizationModel;
 import org.jdbi.v3.sqlobject.customizer.Bind;
 import org.jdbi.v3.sqlobject.customizer.BindBean;
+import org.jdbi.v3.sqlobject.statement.GetGeneratedKeys;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
 import org.jdbi.v3.sqlobject.statement.SqlQuery;
-import org.jdbi.v3.sqlobject.statement.SqlUpdate;
 import org.springframework.stereotype.Repository;
 
-import java.util.Optional;
+import java.util.Collection;
+import java.util.List;
 
 @Repository
-public interface OrganizationRepository {
+public interface OrganizationRepository extends OrganizationStore {
 
-    @SqlQuery("SELECT id FROM organization o WHERE o.realm = :realm AND o.name = :name")
-    Optional<String> findIdForName(String realm, String name);
+    /**
+     * Returns the ID of the organization with the given organization's name in the realm, inserting the given
+     * organization with its ID if there is none. If another transaction is inserting the same organization,
+     * this waits for it to commit or roll back.
+     * <p>
+     * The no-op update is what makes an existing row's ID come back. It also locks the row until the end of
+     * the transaction, which holds up registrations naming the same organization for that long.
+     * </p>
+     */
+    @Override
+    @SqlQuery("INSERT INTO organization (realm, id, name, url) VALUES (:realm, :org.id, :org.name, :org.url)" +
+            " ON CONFLICT (realm, name) DO UPDATE SET name = EXCLUDED.name" +
+            " RETURNING id")
+    String upsert(@Bind("realm") String realm, @BindBean("org") OrganizationModel organization);
 
-    @SqlUpdate("INSERT INTO organization (realm, id, name, url) VALUES (:realm, :org.id, :org.name, :org.url)")
-    void save(@Bind("realm") String realm, @BindBean("org") OrganizationModel organization);
+    /**
+     * Batch counterpart of {@link #upsert(String, OrganizationModel)}. To avoid deadlocks with concurrent
+     * batches, the organizations should be sorted by name.
+     *
+     * @return the ID of each organization, in the same order
+     */
+    @Override
+    @SqlBatch("INSERT INTO organization (realm, id, name, url) VALUES (:realm, :org.id, :org.name, :org.url)" +
+            " ON CONFLICT (realm, name) DO UPDATE SET name = EXCLUDED.name")
+    @GetGeneratedKeys("id")
+    List<String> upsertAll(@Bind("realm") String realm, @BindBean("org") Collection<OrganizationModel> organizations);
 }
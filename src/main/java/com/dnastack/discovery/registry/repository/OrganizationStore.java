@@ -0,0 +1,27 @@
+package com.dnastack.discovery.registry.repository;
+
+import com.dnastack.discovery.registry.model.OrganizationModel;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Stores the organizations service instances belong to, unique by name within a realm.
+ */
+public interface OrganizationStore {
+
+    /**
+     * Returns the ID of the organization with the given organization's name in the realm, inserting the given
+     * organization with its ID if there is none. If another transaction is inserting the same organization,
+     * this waits for it to commit or roll back.
+     */
+    String upsert(String realm, OrganizationModel organization);
+
+    /**
+     * Batch counterpart of {@link #upsert(String, OrganizationModel)}. To avoid deadlocks with concurrent
+     * batches, the organizations should be sorted by name.
+     *
+     * @return the ID of each organization, in the same order
+     */
+    List<String> upsertAll(String realm, Collection<OrganizationModel> organizations);
+}
@@ -1,43 +1,160 @@
 package com.dnastack.discovery.registry.repository;
 
+import com.dnastack.discovery.registry.model.HealthCheck;
+import com.dnastack.discovery.registry.model.HealthCheckResult;
+import com.dnastack.discovery.registry.model.LeaseRenewal;
+import com.dnastack.discovery.registry.model.ServiceInstanceFilter;
+import com.dnastack.discovery.registry.model.ServiceInstanceKey;
 import com.dnastack.discovery.registry.model.ServiceInstanceModel;
 import com.dnastack.discovery.registry.model.ServiceType;
+import org.jdbi.v3.sqlobject.config.RegisterBeanMapper;
 import org.jdbi.v3.sqlobject.config.RegisterRowMapper;
 import org.jdbi.v3.sqlobject.config.RegisterRowMapperFactory;
 import org.jdbi.v3.sqlobject.config.RegisterRowMappers;
 import org.jdbi.v3.sqlobject.customizer.Bind;
 import org.jdbi.v3.sqlobject.customizer.BindBean;
+import org.jdbi.v3.sqlobject.customizer.BindList;
+import org.jdbi.v3.sqlobject.customizer.FetchSize;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
 import org.jdbi.v3.sqlobject.statement.SqlQuery;
 import org.jdbi.v3.sqlobject.statement.SqlUpdate;
 import org.springframework.stereotype.Repository;
 
+import java.time.ZonedDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface ServiceInstanceRepository {
+public interface ServiceInstanceRepository extends ServiceInstanceStore {
 
-    @SqlQuery("SELECT si.*, o.id AS org_id, o.name AS org_name, o.url AS org_url" +
+    /**
+     * Selects the columns {@link ServiceInstanceRowMapper} maps, joined with the instance's organization.
+     * Columns only used for querying, such as the search vector, are left out.
+     */
+    String SELECT_SERVICE_INSTANCES = "SELECT si.id, si.name, si.type, si.url, si.description, si.contact_url," +
+            " si.documentation_url, si.created_at, si.updated_at, si.environment, si.version, si.additional_properties_json," +
+            " si.health_status, si.health_latency_millis, si.health_checked_at," +
+            " o.id AS org_id, o.name AS org_name, o.url AS org_url" +
             " FROM service_instance si" +
-            " LEFT OUTER JOIN organization o ON si.realm = o.realm AND si.organization_id = o.id" +
+            " LEFT OUTER JOIN organization o ON si.realm = o.realm AND si.organization_id = o.id";
+
+    @Override
+    @SqlQuery(SELECT_SERVICE_INSTANCES +
             " WHERE si.realm = :realm AND si.id = :id")
     Optional<ServiceInstanceModel> findById(String realm, String id);
 
-    @SqlQuery("SELECT si.*, o.id AS org_id, o.name AS org_name, o.url AS org_url" +
-            " FROM service_instance si" +
-            " LEFT OUTER JOIN organization o ON si.realm = o.realm AND si.organization_id = o.id" +
+    /**
+     * Like {@link #findById(String, String)}, but also locks the instance until the end of the transaction,
+     * so that it can be read and then written without anybody else writing it in between.
+     */
+    @Override
+    @SqlQuery(SELECT_SERVICE_INSTANCES +
+            " WHERE si.realm = :realm AND si.id = :id" +
+            " FOR UPDATE OF si")
+    Optional<ServiceInstanceModel> findByIdForUpdate(String realm, String id);
+
+    @Override
+    @SqlQuery(SELECT_SERVICE_INSTANCES +
             " WHERE si.realm = :realm AND si.name = :name AND si.type = :type")
     Optional<ServiceInstanceModel> findByNameAndType(String realm, String name, String type);
 
+    /**
+     * Returns the ID, name and type of every service instance in the realm with one of the given names.
+     */
+    @Override
+    @SqlQuery("SELECT si.id, si.name, si.type FROM service_instance si WHERE si.realm = :realm AND si.name IN (<names>)")
+    List<ServiceInstanceModel> findAllByName(@Bind("realm") String realm, @BindList("names") Collection<String> names);
+
+    @Override
+    @SqlQuery(SELECT_SERVICE_INSTANCES +
+            " WHERE si.realm = :realm AND si.id IN (<ids>)")
+    List<ServiceInstanceModel> findAllById(@Bind("realm") String realm, @BindList("ids") Collection<String> ids);
+
+    /**
+     * Returns the service instances in the realm that were created or last updated by the given transaction
+     * or any later one.
+     */
+    @Override
+    @SqlQuery(SELECT_SERVICE_INSTANCES +
+            " WHERE si.realm = :realm AND si.change_txid >= :sinceTxid")
+    List<ServiceInstanceModel> findAllChangedSince(@Bind("realm") String realm, @Bind("sinceTxid") long sinceTxid);
+
+    /**
+     * Returns the lowest ID of any transaction that was still running when the current transaction's
+     * snapshot was taken. Everything written by earlier transactions is visible to the current one.
+     */
+    @Override
+    @SqlQuery("SELECT txid_snapshot_xmin(txid_current_snapshot())")
+    long findSnapshotXmin();
+
+    @Override
     @SqlQuery("SELECT DISTINCT si.type FROM service_instance si WHERE si.realm = :realm")
     List<ServiceType> findAllDistinctTypes(String realm);
 
-    @SqlQuery("SELECT si.*, o.id AS org_id, o.name AS org_name, o.url AS org_url" +
-            " FROM service_instance si" +
-            " LEFT OUTER JOIN organization o ON si.realm = o.realm AND si.organization_id = o.id" +
+    @Override
+    @SqlQuery(SELECT_SERVICE_INSTANCES +
             " WHERE si.realm = :realm")
     List<ServiceInstanceModel> findAll(String realm);
 
+    /**
+     * Like {@link #findAll(String)}, but rows are fetched from the database in batches as the stream is
+     * consumed rather than all at once. The stream must be consumed and closed while the handle is still open.
+     */
+    @Override
+    @SqlQuery(SELECT_SERVICE_INSTANCES +
+            " WHERE si.realm = :realm")
+    @FetchSize(500)
+    Stream<ServiceInstanceModel> streamAll(String realm);
+
+    /**
+     * Returns at most {@code limit} service instances matching the given filter, ordered by creation time
+     * and ID. Passing {@code null} for {@code afterCreatedAt} and {@code afterId} starts from the beginning;
+     * otherwise only instances positioned after that key are returned.
+     */
+    @Override
+    @SqlQuery(SELECT_SERVICE_INSTANCES +
+            " WHERE si.realm = :realm" +
+            " AND (CAST(:filter.typePattern AS VARCHAR) IS NULL OR si.type LIKE :filter.typePattern)" +
+            " AND (CAST(:filter.environment AS VARCHAR) IS NULL OR si.environment = :filter.environment)" +
+            " AND (CAST(:filter.organizationName AS VARCHAR) IS NULL OR o.name = :filter.organizationName)" +
+            " AND (CAST(:filter.healthStatus AS VARCHAR) IS NULL OR si.health_status = :filter.healthStatus)" +
+            " AND (CAST(:filter.attributeContainment AS VARCHAR) IS NULL" +
+            "      OR si.additional_properties_json @> CAST(:filter.attributeContainment AS JSONB))" +
+            " AND (CAST(:afterId AS VARCHAR) IS NULL OR (si.created_at, si.id) > (:afterCreatedAt, :afterId))" +
+            " ORDER BY si.created_at, si.id" +
+            " LIMIT :limit")
+    List<ServiceInstanceModel> findPage(@Bind("realm") String realm,
+                                        @BindBean("filter") ServiceInstanceFilter filter,
+                                        @Bind("afterCreatedAt") ZonedDateTime afterCreatedAt,
+                                        @Bind("afterId") String afterId,
+                                        @Bind("limit") int limit);
+
+    /**
+     * Returns at most {@code limit} service instances in the realm that match the given
+     * {@code to_tsquery} expression on their name, description or organization name, best matches first,
+     * after skipping the first {@code offset}.
+     */
+    @Override
+    @SqlQuery(SELECT_SERVICE_INSTANCES +
+            " WHERE si.realm = :realm AND si.search_vector @@ to_tsquery('simple', :query)" +
+            " ORDER BY ts_rank(si.search_vector, to_tsquery('simple', :query)) DESC, si.id" +
+            " LIMIT :limit OFFSET :offset")
+    List<ServiceInstanceModel> search(@Bind("realm") String realm,
+                                      @Bind("query") String query,
+                                      @Bind("offset") int offset,
+                                      @Bind("limit") int limit);
+
+    /**
+     * Inserts the given instance unless the realm already has one with the same name and type, as enforced by
+     * the {@code service_instance_unique_name_type} constraint. If that one is still being inserted by another
+     * transaction, this waits for it to commit or roll back.
+     *
+     * @return true if the instance was inserted; false if it already exists
+     */
+    // change_txid is left to its default, the ID of the writing transaction, here and in saveAllIfAbsent
+    @Override
     @SqlUpdate("INSERT INTO service_instance (" +
             " realm," +
             " id," +
@@ -67,10 +184,50 @@ public interface ServiceInstanceRepository {
             " :si.url," +
             " :si.version," +
             " :organizationId," +
-            " :si.additionalProperties" +
-            ")")
-    void save(@Bind String realm, @Bind String organizationId, @BindBean("si") ServiceInstanceModel si);
+            " CAST(:si.additionalProperties AS JSONB)" +
+            ") ON CONFLICT (realm, name, type) DO NOTHING")
+    boolean saveIfAbsent(@Bind String realm, @Bind String organizationId, @BindBean("si") ServiceInstanceModel si);
 
+    /**
+     * Batch counterpart of {@link #saveIfAbsent(String, String, ServiceInstanceModel)}.
+     *
+     * @return for each instance, 1 if it was inserted or 0 if it already exists
+     */
+    @Override
+    @SqlBatch("INSERT INTO service_instance (" +
+            " realm," +
+            " id," +
+            " contact_url," +
+            " created_at," +
+            " description," +
+            " documentation_url," +
+            " environment," +
+            " name," +
+            " type," +
+            " updated_at," +
+            " url," +
+            " version," +
+            " organization_id," +
+            " additional_properties_json" +
+            ") VALUES (" +
+            " :realm," +
+            " :si.id," +
+            " :si.contactUrl," +
+            " :si.createdAt," +
+            " :si.description," +
+            " :si.documentationUrl," +
+            " :si.environment," +
+            " :si.name," +
+            " :si.type," +
+            " :si.updatedAt," +
+            " :si.url," +
+            " :si.version," +
+            " :si.organization.id," +
+            " CAST(:si.additionalProperties AS JSONB)" +
+            ") ON CONFLICT (realm, name, type) DO NOTHING")
+    int[] saveAllIfAbsent(@Bind("realm") String realm, @BindBean("si") Collection<ServiceInstanceModel> instances);
+
+    @Override
     @SqlUpdate("UPDATE service_instance SET" +
             " contact_url = :si.contactUrl," +
             " created_at = :si.createdAt," +
@@ -83,10 +240,83 @@ public interface ServiceInstanceRepository {
             " url = :si.url," +
             " version = :si.version," +
             " organization_id = :si.organization.id," +
-            " additional_properties_json = :si.additionalProperties" +
+            " additional_properties_json = CAST(:si.additionalProperties AS JSONB)," +
+            " change_txid = DEFAULT" +
             " WHERE realm = :realm AND id = :si.id")
     void update(@Bind String realm, @BindBean("si") ServiceInstanceModel si);
 
+    @Override
     @SqlUpdate("DELETE FROM service_instance si WHERE si.realm = :realm AND si.id = :id")
     boolean delete(String realm, String id);
+
+    /**
+     * Puts the given service instances on a lease of the given length, which runs out at the given time
+     * unless it is renewed.
+     */
+    @Override
+    @SqlUpdate("UPDATE service_instance SET lease_ttl_seconds = :ttlSeconds, lease_expires_at = :expiresAt" +
+            " WHERE realm = :realm AND id IN (<ids>)")
+    void startLeases(@Bind("realm") String realm,
+                     @BindList("ids") Collection<String> ids,
+                     @Bind("ttlSeconds") int ttlSeconds,
+                     @Bind("expiresAt") ZonedDateTime expiresAt);
+
+    /**
+     * Extends each lease to its TTL after the given renewal time. A lease never moves backwards, so it
+     * doesn't matter in which order renewals from different nodes arrive.
+     *
+     * @return for each renewal, 1 if the lease was renewed, or 0 if there is no such instance with a lease
+     */
+    @Override
+    @SqlBatch("UPDATE service_instance SET lease_expires_at = GREATEST(lease_expires_at," +
+            " CAST(:r.renewedAt AS TIMESTAMP WITH TIME ZONE) + lease_ttl_seconds * INTERVAL '1' SECOND)" +
+            " WHERE realm = :r.realm AND id = :r.id AND lease_ttl_seconds IS NOT NULL")
+    int[] renewLeases(@BindBean("r") Collection<LeaseRenewal> renewals);
+
+    /**
+     * Deletes at most {@code limit} service instances whose lease ran out before the given time. Rows locked
+     * by another transaction, such as another node's sweep, are skipped.
+     *
+     * @return the deleted instances
+     */
+    @Override
+    @SqlQuery("DELETE FROM service_instance WHERE (realm, id) IN (" +
+            "   SELECT realm, id FROM service_instance WHERE lease_expires_at < :cutoff" +
+            "   LIMIT :limit FOR UPDATE SKIP LOCKED)" +
+            " RETURNING realm, id")
+    @RegisterBeanMapper(ServiceInstanceKey.class)
+    List<ServiceInstanceKey> deleteExpiredLeases(@Bind("cutoff") ZonedDateTime cutoff, @Bind("limit") int limit);
+
+    @Override
+    @SqlQuery("SELECT count(*) FROM service_instance WHERE lease_expires_at IS NOT NULL")
+    long countLeases();
+
+    /**
+     * Returns at most {@code limit} service instances with a URL whose health check is due, longest overdue
+     * first, and locks them. Rows locked by another transaction, such as another node's claim, are skipped.
+     */
+    @Override
+    @SqlQuery("SELECT realm, id, url, health_status FROM service_instance" +
+            " WHERE url IS NOT NULL AND (health_next_check_at IS NULL OR health_next_check_at <= :now)" +
+            " ORDER BY health_next_check_at NULLS FIRST" +
+            " LIMIT :limit FOR UPDATE SKIP LOCKED")
+    @RegisterBeanMapper(HealthCheck.class)
+    List<HealthCheck> findDueHealthChecks(@Bind("now") ZonedDateTime now, @Bind("limit") int limit);
+
+    @Override
+    @SqlBatch("UPDATE service_instance SET health_next_check_at = :c.nextCheckAt WHERE realm = :c.realm AND id = :c.id")
+    void scheduleHealthChecks(@BindBean("c") Collection<HealthCheck> checks);
+
+    /**
+     * Stores health check results. Only a change of status counts as a change of the instance for
+     * incremental sync; a new latency alone doesn't.
+     */
+    @Override
+    @SqlBatch("UPDATE service_instance SET" +
+            " health_status = :r.status," +
+            " health_latency_millis = :r.latencyMillis," +
+            " health_checked_at = :r.checkedAt," +
+            " change_txid = CASE WHEN :r.statusChanged THEN txid_current() ELSE change_txid END" +
+            " WHERE realm = :r.realm AND id = :r.id")
+    void saveHealthCheckResults(@BindBean("r") Collection<HealthCheckResult> results);
 }
@@ -0,0 +1,168 @@
+package com.dnastack.discovery.registry.repository;
+
+import com.dnastack.discovery.registry.model.Environment;
+import com.dnastack.discovery.registry.model.HealthStatus;
+import com.dnastack.discovery.registry.model.OrganizationModel;
+import com.dnastack.discovery.registry.model.ServiceInstanceHealth;
+import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import com.dnastack.discovery.registry.model.ServiceType;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import org.jdbi.v3.core.mapper.ColumnMapper;
+import org.jdbi.v3.core.mapper.MappingException;
+import org.jdbi.v3.core.mapper.NoSuchMapperException;
+import org.jdbi.v3.core.mapper.RowMapper;
+import org.jdbi.v3.core.statement.StatementContext;
+import org.jdbi.v3.jackson2.Jackson2Config;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps the columns of {@code service_instance}, joined with the {@code org_}-prefixed columns of its
+ * organization, to a {@link ServiceInstanceModel}.
+ * <p>
+ * Unlike {@link org.jdbi.v3.core.mapper.reflect.BeanMapper}, this looks up the column indexes once per
+ * result set rather than once per row, and sets properties without reflection. Columns missing from the
+ * result set leave their property unset, so it can also map queries that select only some columns.
+ * </p>
+ */
+public class ServiceInstanceRowMapper implements RowMapper<ServiceInstanceModel> {
+
+    private static final int ABSENT = -1;
+
+    @Override
+    public ServiceInstanceModel map(ResultSet rs, StatementContext ctx) throws SQLException {
+        return specialize(rs, ctx).map(rs, ctx);
+    }
+
+    @Override
+    public RowMapper<ServiceInstanceModel> specialize(ResultSet rs, StatementContext ctx) throws SQLException {
+        return new Specialized(rs.getMetaData(), ctx);
+    }
+
+    private static class Specialized implements RowMapper<ServiceInstanceModel> {
+
+        private final int id;
+        private final int name;
+        private final int type;
+        private final int url;
+        private final int description;
+        private final int contactUrl;
+        private final int documentationUrl;
+        private final int createdAt;
+        private final int updatedAt;
+        private final int environment;
+        private final int version;
+        private final int additionalProperties;
+        private final int healthStatus;
+        private final int healthLatencyMillis;
+        private final int healthCheckedAt;
+        private final int orgId;
+        private final int orgName;
+        private final int orgUrl;
+
+        private final ColumnMapper<ZonedDateTime> timestampMapper;
+        private final ObjectReader additionalPropertiesReader;
+
+        Specialized(ResultSetMetaData metaData, StatementContext ctx) throws SQLException {
+            Map<String, Integer> columns = new LinkedHashMap<>();
+            for (int i = metaData.getColumnCount(); i >= 1; i--) {
+                // on duplicate labels, the first one wins, as with ResultSet.findColumn()
+                columns.put(metaData.getColumnLabel(i).toLowerCase(Locale.ROOT), i);
+            }
+
+            id = columns.getOrDefault("id", ABSENT);
+            name = columns.getOrDefault("name", ABSENT);
+            type = columns.getOrDefault("type", ABSENT);
+            url = columns.getOrDefault("url", ABSENT);
+            description = columns.getOrDefault("description", ABSENT);
+            contactUrl = columns.getOrDefault("contact_url", ABSENT);
+            documentationUrl = columns.getOrDefault("documentation_url", ABSENT);
+            createdAt = columns.getOrDefault("created_at", ABSENT);
+            updatedAt = columns.getOrDefault("updated_at", ABSENT);
+            environment = columns.getOrDefault("environment", ABSENT);
+            version = columns.getOrDefault("version", ABSENT);
+            additionalProperties = columns.getOrDefault("additional_properties_json", ABSENT);
+            healthStatus = columns.getOrDefault("health_status", ABSENT);
+            healthLatencyMillis = columns.getOrDefault("health_latency_millis", ABSENT);
+            healthCheckedAt = columns.getOrDefault("health_checked_at", ABSENT);
+            orgId = columns.getOrDefault("org_id", ABSENT);
+            orgName = columns.getOrDefault("org_name", ABSENT);
+            orgUrl = columns.getOrDefault("org_url", ABSENT);
+
+            timestampMapper = ctx.findColumnMapperFor(ZonedDateTime.class)
+                    .orElseThrow(() -> new NoSuchMapperException("No column mapper for " + ZonedDateTime.class));
+            additionalPropertiesReader = ctx.getConfig(Jackson2Config.class).getMapper()
+                    .readerFor(TypeFactory.defaultInstance().constructMapType(LinkedHashMap.class, String.class, Object.class));
+        }
+
+        @Override
+        public ServiceInstanceModel map(ResultSet rs, StatementContext ctx) throws SQLException {
+            ServiceInstanceModel model = new ServiceInstanceModel();
+            model.setId(getString(rs, id));
+            model.setName(getString(rs, name));
+            model.setType(ServiceType.fromString(getString(rs, type)));
+            model.setUrl(getString(rs, url));
+            model.setDescription(getString(rs, description));
+            model.setContactUrl(getString(rs, contactUrl));
+            model.setDocumentationUrl(getString(rs, documentationUrl));
+            if (createdAt != ABSENT) {
+                model.setCreatedAt(timestampMapper.map(rs, createdAt, ctx));
+            }
+            if (updatedAt != ABSENT) {
+                model.setUpdatedAt(timestampMapper.map(rs, updatedAt, ctx));
+            }
+            String environmentName = getString(rs, environment);
+            if (environmentName != null) {
+                model.setEnvironment(Environment.valueOf(environmentName));
+            }
+            model.setVersion(getString(rs, version));
+            String additionalPropertiesJson = getString(rs, additionalProperties);
+            if (additionalPropertiesJson != null) {
+                model.setAdditionalProperties(parseAdditionalProperties(additionalPropertiesJson));
+            }
+            String healthStatusName = getString(rs, healthStatus);
+            if (healthStatusName != null) {
+                model.setHealth(new ServiceInstanceHealth(
+                        HealthStatus.valueOf(healthStatusName),
+                        getInteger(rs, healthLatencyMillis),
+                        healthCheckedAt == ABSENT ? null : timestampMapper.map(rs, healthCheckedAt, ctx)));
+            }
+            if (orgId != ABSENT || orgName != ABSENT || orgUrl != ABSENT) {
+                model.setOrganization(new OrganizationModel(getString(rs, orgId), getString(rs, orgName), getString(rs, orgUrl)));
+            }
+            return model;
+        }
+
+        private Map<String, Object> parseAdditionalProperties(String json) {
+            if (json.equals("{}")) {
+                // what's stored for the vast majority of instances, so skip the parser
+                return new LinkedHashMap<>();
+            }
+            try {
+                return additionalPropertiesReader.readValue(json);
+            } catch (IOException e) {
+                throw new MappingException("Invalid additional_properties_json: " + e.getMessage(), e);
+            }
+        }
+
+        private static String getString(ResultSet rs, int column) throws SQLException {
+            return column == ABSENT ? null : rs.getString(column);
+        }
+
+        private static Integer getInteger(ResultSet rs, int column) throws SQLException {
+            if (column == ABSENT) {
+                return null;
+            }
+            int value = rs.getInt(column);
+            return rs.wasNull() ? null : value;
+        }
+    }
+}
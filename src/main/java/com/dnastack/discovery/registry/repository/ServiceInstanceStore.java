@@ -0,0 +1,134 @@
+package com.dnastack.discovery.registry.repository;
+
+import com.dnastack.discovery.registry.model.HealthCheck;
+import com.dnastack.discovery.registry.model.HealthCheckResult;
+import com.dnastack.discovery.registry.model.LeaseRenewal;
+import com.dnastack.discovery.registry.model.ServiceInstanceFilter;
+import com.dnastack.discovery.registry.model.ServiceInstanceKey;
+import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import com.dnastack.discovery.registry.model.ServiceType;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Stores service instances. Implemented by {@link ServiceInstanceRepository} on Postgres, and by the
+ * in-memory storage engine.
+ */
+public interface ServiceInstanceStore {
+
+    Optional<ServiceInstanceModel> findById(String realm, String id);
+
+    /**
+     * Like {@link #findById(String, String)}, but also locks the instance until the end of the transaction,
+     * so that it can be read and then written without anybody else writing it in between.
+     */
+    Optional<ServiceInstanceModel> findByIdForUpdate(String realm, String id);
+
+    Optional<ServiceInstanceModel> findByNameAndType(String realm, String name, String type);
+
+    /**
+     * Returns the ID, name and type of every service instance in the realm with one of the given names.
+     */
+    List<ServiceInstanceModel> findAllByName(String realm, Collection<String> names);
+
+    List<ServiceInstanceModel> findAllById(String realm, Collection<String> ids);
+
+    /**
+     * Returns the service instances in the realm that were created or last updated by the given transaction
+     * or any later one.
+     */
+    List<ServiceInstanceModel> findAllChangedSince(String realm, long sinceTxid);
+
+    /**
+     * Returns the lowest ID of any transaction that was still running when the current transaction's
+     * snapshot was taken. Everything written by earlier transactions is visible to the current one.
+     */
+    long findSnapshotXmin();
+
+    List<ServiceType> findAllDistinctTypes(String realm);
+
+    List<ServiceInstanceModel> findAll(String realm);
+
+    /**
+     * Like {@link #findAll(String)}, but the instances may be read as the stream is consumed rather than all
+     * at once. The stream must be consumed and closed while the session is still open.
+     */
+    Stream<ServiceInstanceModel> streamAll(String realm);
+
+    /**
+     * Returns at most {@code limit} service instances matching the given filter, ordered by creation time
+     * and ID. Passing {@code null} for {@code afterCreatedAt} and {@code afterId} starts from the beginning;
+     * otherwise only instances positioned after that key are returned.
+     */
+    List<ServiceInstanceModel> findPage(String realm, ServiceInstanceFilter filter, ZonedDateTime afterCreatedAt,
+                                        String afterId, int limit);
+
+    /**
+     * Returns at most {@code limit} service instances in the realm that match the given
+     * {@code to_tsquery} expression on their name, description or organization name, best matches first,
+     * after skipping the first {@code offset}.
+     */
+    List<ServiceInstanceModel> search(String realm, String query, int offset, int limit);
+
+    /**
+     * Inserts the given instance unless the realm already has one with the same name and type. If that one
+     * is still being inserted by another transaction, this waits for it to commit or roll back.
+     *
+     * @return true if the instance was inserted; false if it already exists
+     */
+    boolean saveIfAbsent(String realm, String organizationId, ServiceInstanceModel si);
+
+    /**
+     * Batch counterpart of {@link #saveIfAbsent(String, String, ServiceInstanceModel)}.
+     *
+     * @return for each instance, 1 if it was inserted or 0 if it already exists
+     */
+    int[] saveAllIfAbsent(String realm, Collection<ServiceInstanceModel> instances);
+
+    void update(String realm, ServiceInstanceModel si);
+
+    boolean delete(String realm, String id);
+
+    /**
+     * Puts the given service instances on a lease of the given length, which runs out at the given time
+     * unless it is renewed.
+     */
+    void startLeases(String realm, Collection<String> ids, int ttlSeconds, ZonedDateTime expiresAt);
+
+    /**
+     * Extends each lease to its TTL after the given renewal time. A lease never moves backwards, so it
+     * doesn't matter in which order renewals from different nodes arrive.
+     *
+     * @return for each renewal, 1 if the lease was renewed, or 0 if there is no such instance with a lease
+     */
+    int[] renewLeases(Collection<LeaseRenewal> renewals);
+
+    /**
+     * Deletes at most {@code limit} service instances whose lease ran out before the given time. Instances
+     * locked by another transaction, such as another node's sweep, are skipped.
+     *
+     * @return the deleted instances
+     */
+    List<ServiceInstanceKey> deleteExpiredLeases(ZonedDateTime cutoff, int limit);
+
+    long countLeases();
+
+    /**
+     * Returns at most {@code limit} service instances with a URL whose health check is due, longest overdue
+     * first, and locks them. Instances locked by another transaction, such as another node's claim, are
+     * skipped.
+     */
+    List<HealthCheck> findDueHealthChecks(ZonedDateTime now, int limit);
+
+    void scheduleHealthChecks(Collection<HealthCheck> checks);
+
+    /**
+     * Stores health check results. Only a change of status counts as a change of the instance for
+     * incremental sync; a new latency alone doesn't.
+     */
+    void saveHealthCheckResults(Collection<HealthCheckResult> results);
+}
@@ -0,0 +1,45 @@
+package com.dnastack.discovery.registry.repository;
+
+import com.dnastack.discovery.registry.model.ServiceInstanceKey;
+import com.dnastack.discovery.registry.model.ServiceInstanceTombstone;
+import org.jdbi.v3.sqlobject.config.RegisterBeanMapper;
+import org.jdbi.v3.sqlobject.customizer.Bind;
+import org.jdbi.v3.sqlobject.customizer.BindBean;
+import org.jdbi.v3.sqlobject.statement.SqlBatch;
+import org.jdbi.v3.sqlobject.statement.SqlQuery;
+import org.jdbi.v3.sqlobject.statement.SqlUpdate;
+import org.springframework.stereotype.Repository;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ServiceInstanceTombstoneRepository extends ServiceInstanceTombstoneStore {
+
+    @Override
+    @SqlUpdate("INSERT INTO service_instance_tombstone (realm, id, deleted_at) VALUES (:realm, :id, :deletedAt)")
+    void save(String realm, String id, ZonedDateTime deletedAt);
+
+    @Override
+    @SqlBatch("INSERT INTO service_instance_tombstone (realm, id, deleted_at) VALUES (:si.realm, :si.id, :deletedAt)")
+    void saveAll(@BindBean("si") Collection<ServiceInstanceKey> serviceInstances, @Bind("deletedAt") ZonedDateTime deletedAt);
+
+    /**
+     * Returns the tombstones written by the given transaction or any later one.
+     */
+    @Override
+    @SqlQuery("SELECT t.id, t.deleted_at FROM service_instance_tombstone t" +
+            " WHERE t.realm = :realm AND t.change_txid >= :sinceTxid")
+    @RegisterBeanMapper(ServiceInstanceTombstone.class)
+    List<ServiceInstanceTombstone> findAllSince(@Bind("realm") String realm, @Bind("sinceTxid") long sinceTxid);
+
+    /**
+     * Deletes the tombstones of instances deleted before the given time, in all realms.
+     *
+     * @return the number of tombstones deleted
+     */
+    @Override
+    @SqlUpdate("DELETE FROM service_instance_tombstone WHERE deleted_at < :cutoff")
+    int deleteAllBefore(ZonedDateTime cutoff);
+}
@@ -0,0 +1,30 @@
+package com.dnastack.discovery.registry.repository;
+
+import com.dnastack.discovery.registry.model.ServiceInstanceKey;
+import com.dnastack.discovery.registry.model.ServiceInstanceTombstone;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Stores tombstones of deleted service instances for incremental sync.
+ */
+public interface ServiceInstanceTombstoneStore {
+
+    void save(String realm, String id, ZonedDateTime deletedAt);
+
+    void saveAll(Collection<ServiceInstanceKey> serviceInstances, ZonedDateTime deletedAt);
+
+    /**
+     * Returns the tombstones written by the given transaction or any later one.
+     */
+    List<ServiceInstanceTombstone> findAllSince(String realm, long sinceTxid);
+
+    /**
+     * Deletes the tombstones of instances deleted before the given time, in all realms.
+     *
+     * @return the number of tombstones deleted
+     */
+    int deleteAllBefore(ZonedDateTime cutoff);
+}
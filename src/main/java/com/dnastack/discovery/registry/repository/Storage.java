@@ -0,0 +1,24 @@
+package com.dnastack.discovery.registry.repository;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Where service instances are kept, as chosen by {@code app.storage.engine}: Postgres through
+ * {@link JdbiStorage}, or the in-memory engine in {@link com.dnastack.discovery.registry.repository.memory}.
+ */
+public interface Storage {
+
+    /**
+     * Opens a session, passes it to the given callback and closes it again. Within a transaction, the
+     * session takes part in it; otherwise, what the callback writes is committed when it returns.
+     */
+    <R> R withSession(Function<StorageSession, R> callback);
+
+    default void useSession(Consumer<StorageSession> callback) {
+        withSession(session -> {
+            callback.accept(session);
+            return null;
+        });
+    }
+}
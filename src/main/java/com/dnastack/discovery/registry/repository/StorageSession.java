@@ -0,0 +1,16 @@
+package com.dnastack.discovery.registry.repository;
+
+/**
+ * The stores as seen by one unit of work, which takes part in the current Spring-managed transaction if
+ * there is one.
+ */
+public interface StorageSession {
+
+    ServiceInstanceStore serviceInstances();
+
+    OrganizationStore organizations();
+
+    ServiceInstanceTombstoneStore tombstones();
+
+    ChangeNotificationStore changeNotifications();
+}
@@ -0,0 +1,36 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import com.dnastack.discovery.registry.model.OrganizationModel;
+import com.dnastack.discovery.registry.repository.OrganizationStore;
+
+import java.util.Collection;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+class InMemoryOrganizationStore implements OrganizationStore {
+
+    private final InMemoryTransaction transaction;
+
+    InMemoryOrganizationStore(InMemoryTransaction transaction) {
+        this.transaction = transaction;
+    }
+
+    @Override
+    public String upsert(String realm, OrganizationModel organization) {
+        // taken before looking, so that nobody else can insert the same organization in between
+        transaction.lock();
+        StoredOrganization existing = transaction.read(realm).organizationByName(organization.getName());
+        if (existing != null) {
+            return existing.getId();
+        }
+        transaction.write(WalRecord.putOrganization(realm,
+                new StoredOrganization(organization.getId(), organization.getName(), organization.getUrl())));
+        return organization.getId();
+    }
+
+    @Override
+    public List<String> upsertAll(String realm, Collection<OrganizationModel> organizations) {
+        return organizations.stream().map(organization -> upsert(realm, organization)).collect(toList());
+    }
+}
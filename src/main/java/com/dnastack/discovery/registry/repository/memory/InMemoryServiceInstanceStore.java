@@ -0,0 +1,385 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import com.dnastack.discovery.registry.model.HealthCheck;
+import com.dnastack.discovery.registry.model.HealthCheckResult;
+import com.dnastack.discovery.registry.model.LeaseRenewal;
+import com.dnastack.discovery.registry.model.ServiceInstanceFilter;
+import com.dnastack.discovery.registry.model.ServiceInstanceKey;
+import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import com.dnastack.discovery.registry.model.ServiceType;
+import com.dnastack.discovery.registry.repository.ServiceInstanceStore;
+import org.springframework.lang.Nullable;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Answers the queries of {@link com.dnastack.discovery.registry.repository.ServiceInstanceRepository}
+ * from the indexes of a {@link RealmState}. Leases and health checks span all realms and are found by
+ * scanning, which only background tasks do.
+ */
+class InMemoryServiceInstanceStore implements ServiceInstanceStore {
+
+    // the weights ts_rank gives to the name, description and organization name in Postgres
+    private static final double NAME_WEIGHT = 1.0;
+    private static final double DESCRIPTION_WEIGHT = 0.4;
+    private static final double ORGANIZATION_WEIGHT = 0.2;
+
+    private final InMemoryTransaction transaction;
+
+    InMemoryServiceInstanceStore(InMemoryTransaction transaction) {
+        this.transaction = transaction;
+    }
+
+    private static ServiceInstanceModel toModel(RealmState state, StoredInstance si) {
+        return si.toModel(state.organization(si.getOrganizationId()));
+    }
+
+    private static List<ServiceInstanceModel> toModels(RealmState state, Stream<StoredInstance> instances) {
+        return instances.map(si -> toModel(state, si)).collect(toList());
+    }
+
+    @Override
+    public Optional<ServiceInstanceModel> findById(String realm, String id) {
+        RealmState state = transaction.read(realm);
+        return Optional.ofNullable(state.instance(id)).map(si -> toModel(state, si));
+    }
+
+    @Override
+    public Optional<ServiceInstanceModel> findByIdForUpdate(String realm, String id) {
+        transaction.lock();
+        return findById(realm, id);
+    }
+
+    @Override
+    public Optional<ServiceInstanceModel> findByNameAndType(String realm, String name, String type) {
+        RealmState state = transaction.read(realm);
+        return Optional.ofNullable(state.instanceByNameAndType(name, type)).map(si -> toModel(state, si));
+    }
+
+    @Override
+    public List<ServiceInstanceModel> findAllByName(String realm, Collection<String> names) {
+        Set<String> nameSet = Set.copyOf(names);
+        RealmState state = transaction.read(realm);
+        return toModels(state, state.instances().stream().filter(si -> nameSet.contains(si.getName())));
+    }
+
+    @Override
+    public List<ServiceInstanceModel> findAllById(String realm, Collection<String> ids) {
+        RealmState state = transaction.read(realm);
+        return toModels(state, ids.stream().distinct().map(state::instance).filter(Objects::nonNull));
+    }
+
+    @Override
+    public List<ServiceInstanceModel> findAllChangedSince(String realm, long sinceTxid) {
+        RealmState state = transaction.read(realm);
+        return toModels(state, state.instances().stream().filter(si -> si.getChangeTxid() >= sinceTxid));
+    }
+
+    @Override
+    public long findSnapshotXmin() {
+        return transaction.snapshotXmin();
+    }
+
+    @Override
+    public List<ServiceType> findAllDistinctTypes(String realm) {
+        return transaction.read(realm).types().stream().map(ServiceType::fromString).collect(toList());
+    }
+
+    @Override
+    public List<ServiceInstanceModel> findAll(String realm) {
+        RealmState state = transaction.read(realm);
+        return toModels(state, state.instances().stream());
+    }
+
+    @Override
+    public Stream<ServiceInstanceModel> streamAll(String realm) {
+        RealmState state = transaction.read(realm);
+        return state.instances().stream().map(si -> toModel(state, si));
+    }
+
+    @Override
+    public List<ServiceInstanceModel> findPage(String realm, ServiceInstanceFilter filter, ZonedDateTime afterCreatedAt,
+                                               String afterId, int limit) {
+        RealmState state = transaction.read(realm);
+        StoredInstance after = afterId == null ? null : StoredInstance.builder().createdAt(afterCreatedAt).id(afterId).build();
+        Predicate<StoredInstance> matches = matcher(state, filter);
+
+        Set<String> candidates = narrowestIndex(state, filter);
+        if (candidates == null) {
+            return toModels(state, state.instancesCreatedAfter(after).stream().filter(matches).limit(limit));
+        }
+        return toModels(state, candidates.stream()
+                .map(state::instance)
+                .filter(si -> after == null || RealmState.BY_CREATION.compare(si, after) > 0)
+                .filter(matches)
+                .sorted(RealmState.BY_CREATION)
+                .limit(limit));
+    }
+
+    /**
+     * Returns the IDs of the instances of the filter's type or organization, whichever are fewer, or null
+     * if the filter names neither a whole type nor an organization.
+     */
+    @Nullable
+    private static Set<String> narrowestIndex(RealmState state, ServiceInstanceFilter filter) {
+        Set<String> narrowest = null;
+        if (filter.getTypeGroup() != null && filter.getTypeArtifact() != null && filter.getTypeVersion() != null) {
+            narrowest = state.idsOfType(filter.getTypeGroup() + ":" + filter.getTypeArtifact() + ":" + filter.getTypeVersion());
+        }
+        if (filter.getOrganizationName() != null) {
+            StoredOrganization organization = state.organizationByName(filter.getOrganizationName());
+            Set<String> ofOrganization = organization == null ? Set.of() : state.idsOfOrganization(organization.getId());
+            if (narrowest == null || ofOrganization.size() < narrowest.size()) {
+                narrowest = ofOrganization;
+            }
+        }
+        return narrowest;
+    }
+
+    private static Predicate<StoredInstance> matcher(RealmState state, ServiceInstanceFilter filter) {
+        List<Predicate<StoredInstance>> criteria = new ArrayList<>();
+        if (filter.getTypePattern() != null) {
+            criteria.add(si -> {
+                ServiceType type = ServiceType.fromString(si.getType());
+                return (filter.getTypeGroup() == null || filter.getTypeGroup().equals(type.getGroup()))
+                        && (filter.getTypeArtifact() == null || filter.getTypeArtifact().equals(type.getArtifact()))
+                        && (filter.getTypeVersion() == null || filter.getTypeVersion().equals(type.getVersion()));
+            });
+        }
+        if (filter.getEnvironment() != null) {
+            criteria.add(si -> filter.getEnvironment() == si.getEnvironment());
+        }
+        if (filter.getOrganizationName() != null) {
+            StoredOrganization organization = state.organizationByName(filter.getOrganizationName());
+            String organizationId = organization == null ? null : organization.getId();
+            criteria.add(si -> si.getOrganizationId().equals(organizationId));
+        }
+        if (filter.getHealthStatus() != null) {
+            criteria.add(si -> filter.getHealthStatus() == si.getHealthStatus());
+        }
+        Map<String, String> attributes = filter.getAttributeContainment();
+        if (attributes != null) {
+            criteria.add(si -> attributes.entrySet().stream()
+                    .allMatch(attribute -> attribute.getValue().equals(si.getAdditionalProperties().get(attribute.getKey()))));
+        }
+        return si -> criteria.stream().allMatch(criterion -> criterion.test(si));
+    }
+
+    /**
+     * Evaluates the prefix queries {@link com.dnastack.discovery.registry.service.ServiceInstanceService}
+     * makes, which are a conjunction of {@code word:*} terms. The rank is the sum of the weight of the best
+     * field each term matches in, which orders results much like {@code ts_rank} does.
+     */
+    @Override
+    public List<ServiceInstanceModel> search(String realm, String query, int offset, int limit) {
+        List<String> prefixes = Stream.of(query.split(" & "))
+                .map(term -> term.endsWith(":*") ? term.substring(0, term.length() - 2) : term)
+                .collect(toList());
+        RealmState state = transaction.read(realm);
+
+        List<Ranked> matches = new ArrayList<>();
+        for (StoredInstance si : state.instances()) {
+            StoredOrganization organization = state.organization(si.getOrganizationId());
+            List<String> name = words(si.getName());
+            List<String> description = words(si.getDescription());
+            List<String> organizationName = words(organization == null ? null : organization.getName());
+            double rank = 0;
+            for (String prefix : prefixes) {
+                double weight = matchesPrefix(name, prefix) ? NAME_WEIGHT
+                        : matchesPrefix(description, prefix) ? DESCRIPTION_WEIGHT
+                        : matchesPrefix(organizationName, prefix) ? ORGANIZATION_WEIGHT
+                        : 0;
+                if (weight == 0) {
+                    rank = 0;
+                    break;
+                }
+                rank += weight;
+            }
+            if (rank > 0) {
+                matches.add(new Ranked(si, rank));
+            }
+        }
+        return toModels(state, matches.stream()
+                .sorted(Comparator.comparingDouble((Ranked ranked) -> ranked.rank).reversed()
+                        .thenComparing(ranked -> ranked.instance.getId()))
+                .skip(offset)
+                .limit(limit)
+                .map(ranked -> ranked.instance));
+    }
+
+    private static class Ranked {
+        final StoredInstance instance;
+        final double rank;
+
+        Ranked(StoredInstance instance, double rank) {
+            this.instance = instance;
+            this.rank = rank;
+        }
+    }
+
+    private static List<String> words(@Nullable String text) {
+        if (text == null) {
+            return List.of();
+        }
+        return Stream.of(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(word -> !word.isEmpty())
+                .collect(toList());
+    }
+
+    private static boolean matchesPrefix(List<String> words, String prefix) {
+        return words.stream().anyMatch(word -> word.startsWith(prefix));
+    }
+
+    @Override
+    public boolean saveIfAbsent(String realm, String organizationId, ServiceInstanceModel si) {
+        long txid = transaction.lock();
+        if (transaction.read(realm).instanceByNameAndType(si.getName(), si.getType().toString()) != null) {
+            return false;
+        }
+        transaction.write(WalRecord.putInstance(realm, new StoredInstance().withAttributesOf(si, organizationId, txid)));
+        return true;
+    }
+
+    @Override
+    public int[] saveAllIfAbsent(String realm, Collection<ServiceInstanceModel> instances) {
+        return instances.stream()
+                .mapToInt(si -> saveIfAbsent(realm, si.getOrganization().getId(), si) ? 1 : 0)
+                .toArray();
+    }
+
+    @Override
+    public void update(String realm, ServiceInstanceModel si) {
+        long txid = transaction.lock();
+        StoredInstance existing = transaction.read(realm).instance(si.getId());
+        if (existing != null) {
+            transaction.write(WalRecord.putInstance(realm, existing.withAttributesOf(si, si.getOrganization().getId(), txid)));
+        }
+    }
+
+    @Override
+    public boolean delete(String realm, String id) {
+        transaction.lock();
+        if (transaction.read(realm).instance(id) == null) {
+            return false;
+        }
+        transaction.write(WalRecord.deleteInstance(realm, id));
+        return true;
+    }
+
+    @Override
+    public void startLeases(String realm, Collection<String> ids, int ttlSeconds, ZonedDateTime expiresAt) {
+        transaction.lock();
+        for (String id : ids) {
+            StoredInstance existing = transaction.read(realm).instance(id);
+            if (existing != null) {
+                transaction.write(WalRecord.putInstance(realm, existing.toBuilder()
+                        .leaseTtlSeconds(ttlSeconds)
+                        .leaseExpiresAt(expiresAt)
+                        .build()));
+            }
+        }
+    }
+
+    @Override
+    public int[] renewLeases(Collection<LeaseRenewal> renewals) {
+        transaction.lock();
+        int[] renewed = new int[renewals.size()];
+        int i = 0;
+        for (LeaseRenewal renewal : renewals) {
+            StoredInstance existing = transaction.read(renewal.getRealm()).instance(renewal.getId());
+            if (existing != null && existing.getLeaseTtlSeconds() != null) {
+                ZonedDateTime expiresAt = renewal.getRenewedAt().plusSeconds(existing.getLeaseTtlSeconds());
+                if (existing.getLeaseExpiresAt() == null || expiresAt.isAfter(existing.getLeaseExpiresAt())) {
+                    transaction.write(WalRecord.putInstance(renewal.getRealm(), existing.toBuilder().leaseExpiresAt(expiresAt).build()));
+                }
+                renewed[i] = 1;
+            }
+            i++;
+        }
+        return renewed;
+    }
+
+    @Override
+    public List<ServiceInstanceKey> deleteExpiredLeases(ZonedDateTime cutoff, int limit) {
+        transaction.lock();
+        List<ServiceInstanceKey> expired = new ArrayList<>();
+        for (String realm : transaction.realms()) {
+            transaction.read(realm).instances().stream()
+                    .filter(si -> si.getLeaseExpiresAt() != null && si.getLeaseExpiresAt().isBefore(cutoff))
+                    .limit(limit - expired.size())
+                    .forEach(si -> expired.add(new ServiceInstanceKey(realm, si.getId())));
+            if (expired.size() >= limit) {
+                break;
+            }
+        }
+        expired.forEach(si -> transaction.write(WalRecord.deleteInstance(si.getRealm(), si.getId())));
+        return expired;
+    }
+
+    @Override
+    public long countLeases() {
+        return transaction.realms().stream()
+                .flatMap(realm -> transaction.read(realm).instances().stream())
+                .filter(si -> si.getLeaseExpiresAt() != null)
+                .count();
+    }
+
+    @Override
+    public List<HealthCheck> findDueHealthChecks(ZonedDateTime now, int limit) {
+        transaction.lock();
+        Comparator<HealthCheck> longestOverdueFirst = Comparator.comparing(HealthCheck::getNextCheckAt,
+                Comparator.nullsFirst(Comparator.comparing(ZonedDateTime::toInstant)));
+        return transaction.realms().stream()
+                .flatMap(realm -> transaction.read(realm).instances().stream()
+                        .filter(si -> si.getUrl() != null)
+                        .filter(si -> si.getHealthNextCheckAt() == null || !si.getHealthNextCheckAt().isAfter(now))
+                        .map(si -> new HealthCheck(realm, si.getId(), si.getUrl(), si.getHealthStatus(), si.getHealthNextCheckAt())))
+                .sorted(longestOverdueFirst)
+                .limit(limit)
+                // the next check is only what it was until it's scheduled
+                .peek(check -> check.setNextCheckAt(null))
+                .collect(toList());
+    }
+
+    @Override
+    public void scheduleHealthChecks(Collection<HealthCheck> checks) {
+        transaction.lock();
+        for (HealthCheck check : checks) {
+            StoredInstance existing = transaction.read(check.getRealm()).instance(check.getId());
+            if (existing != null) {
+                transaction.write(WalRecord.putInstance(check.getRealm(), existing.toBuilder()
+                        .healthNextCheckAt(check.getNextCheckAt())
+                        .build()));
+            }
+        }
+    }
+
+    @Override
+    public void saveHealthCheckResults(Collection<HealthCheckResult> results) {
+        long txid = transaction.lock();
+        for (HealthCheckResult result : results) {
+            StoredInstance existing = transaction.read(result.getRealm()).instance(result.getId());
+            if (existing != null) {
+                transaction.write(WalRecord.putInstance(result.getRealm(), existing.toBuilder()
+                        .healthStatus(result.getStatus())
+                        .healthLatencyMillis(result.getLatencyMillis())
+                        .healthCheckedAt(result.getCheckedAt())
+                        .changeTxid(result.isStatusChanged() ? txid : existing.getChangeTxid())
+                        .build()));
+            }
+        }
+    }
+}
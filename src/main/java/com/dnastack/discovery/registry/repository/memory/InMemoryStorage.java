@@ -0,0 +1,74 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import com.dnastack.discovery.registry.repository.ChangeNotificationStore;
+import com.dnastack.discovery.registry.repository.OrganizationStore;
+import com.dnastack.discovery.registry.repository.ServiceInstanceStore;
+import com.dnastack.discovery.registry.repository.ServiceInstanceTombstoneStore;
+import com.dnastack.discovery.registry.repository.Storage;
+import com.dnastack.discovery.registry.repository.StorageSession;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Function;
+
+/**
+ * Keeps service instances in an {@link InMemoryStore}. Sessions take part in the transaction started by
+ * {@link InMemoryTransactionManager}; outside of one, each session is a transaction of its own.
+ * <p>
+ * There is nobody to notify of changes, since no other registry node can share the store.
+ * </p>
+ */
+public class InMemoryStorage implements Storage {
+
+    private static final ChangeNotificationStore NO_NOTIFICATIONS = (channel, payloads) -> { };
+
+    private final InMemoryStore store;
+
+    public InMemoryStorage(InMemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public <R> R withSession(Function<StorageSession, R> callback) {
+        InMemoryTransaction transaction = (InMemoryTransaction) TransactionSynchronizationManager.getResource(store);
+        if (transaction != null) {
+            return callback.apply(new Session(transaction));
+        }
+        transaction = store.begin(false);
+        try {
+            R result = callback.apply(new Session(transaction));
+            transaction.commit();
+            return result;
+        } finally {
+            transaction.rollback();
+        }
+    }
+
+    private static class Session implements StorageSession {
+
+        private final InMemoryTransaction transaction;
+
+        Session(InMemoryTransaction transaction) {
+            this.transaction = transaction;
+        }
+
+        @Override
+        public ServiceInstanceStore serviceInstances() {
+            return new InMemoryServiceInstanceStore(transaction);
+        }
+
+        @Override
+        public OrganizationStore organizations() {
+            return new InMemoryOrganizationStore(transaction);
+        }
+
+        @Override
+        public ServiceInstanceTombstoneStore tombstones() {
+            return new InMemoryTombstoneStore(transaction);
+        }
+
+        @Override
+        public ChangeNotificationStore changeNotifications() {
+            return NO_NOTIFICATIONS;
+        }
+    }
+}
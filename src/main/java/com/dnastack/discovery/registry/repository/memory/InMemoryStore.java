@@ -0,0 +1,160 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps service instances, organizations and tombstones in memory, for running the registry without a
+ * database.
+ * <p>
+ * Readers see an immutable {@link Snapshot} and never wait. Writers take turns: a transaction takes the
+ * store's single write lock the first time it writes or locks something, and holds it until it commits
+ * or rolls back. It works on copies of the realms it writes to, which become part of a new snapshot when
+ * it commits. Each writing transaction gets the next transaction ID, which is recorded with what it
+ * writes, like Postgres' {@code txid_current()}.
+ * </p>
+ * <p>
+ * With a {@link WriteAheadLog}, every commit is logged before it becomes visible, and the log is
+ * compacted every so often. Without, the data is gone when the process ends.
+ * </p>
+ */
+@Slf4j
+public class InMemoryStore implements Closeable {
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final @Nullable WriteAheadLog wal;
+    private final @Nullable ScheduledExecutorService compactor;
+    private volatile Snapshot committed;
+    private long compactedLength;
+
+    /**
+     * Creates a store that doesn't persist anything.
+     */
+    public InMemoryStore() {
+        this.wal = null;
+        this.compactor = null;
+        this.committed = new Snapshot(1, Map.of());
+    }
+
+    /**
+     * Creates a store that logs to and is restored from the write-ahead log in the given directory.
+     *
+     * @param fsync whether each commit waits for its log entry to reach the disk
+     * @param compactIntervalMinutes how often the log is compacted if it has grown; 0 to never compact it
+     */
+    public InMemoryStore(Path walDirectory, boolean fsync, long compactIntervalMinutes) throws IOException {
+        this.wal = new WriteAheadLog(walDirectory, fsync);
+        this.committed = wal.replay(1);
+        this.compactedLength = wal.length();
+        if (compactIntervalMinutes > 0) {
+            this.compactor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("wal-compaction-"));
+            compactor.scheduleWithFixedDelay(this::compactQuietly, compactIntervalMinutes, compactIntervalMinutes, TimeUnit.MINUTES);
+        } else {
+            this.compactor = null;
+        }
+    }
+
+    /**
+     * Starts a transaction. A read-only one sees the state as of now throughout; any other sees the latest
+     * committed state until it first writes, and its own writes after that.
+     */
+    public InMemoryTransaction begin(boolean readOnly) {
+        return new InMemoryTransaction(this, readOnly);
+    }
+
+    Snapshot committed() {
+        return committed;
+    }
+
+    /**
+     * Takes the write lock, and returns the committed state, which can't change until {@link #unlock()}.
+     *
+     * @throws IllegalStateException if the current thread already holds the lock for another transaction
+     */
+    Snapshot lock() {
+        if (writeLock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("This thread is already writing in another transaction, which it would wait for forever");
+        }
+        writeLock.lock();
+        return committed;
+    }
+
+    void unlock() {
+        writeLock.unlock();
+    }
+
+    /**
+     * Logs the given changes and makes them visible. The caller has to hold the write lock.
+     *
+     * @param realms the realms the transaction wrote to, in their new state
+     */
+    void commit(long txid, Map<String, RealmState> realms, List<WalRecord> records) {
+        if (wal != null) {
+            wal.append(new WalEntry(txid, records));
+        }
+        Map<String, RealmState> newRealms = new HashMap<>(committed.realms);
+        newRealms.putAll(realms);
+        newRealms.values().removeIf(RealmState::isEmpty);
+        committed = new Snapshot(txid + 1, newRealms);
+    }
+
+    /**
+     * Rewrites the write-ahead log as the current state, if anything was committed since it was last
+     * compacted. Writers wait while this runs.
+     */
+    public void compact() throws IOException {
+        if (wal == null) {
+            return;
+        }
+        lock();
+        try {
+            if (wal.length() == compactedLength) {
+                return;
+            }
+            long before = wal.length();
+            long start = System.nanoTime();
+            wal.compact(committed);
+            compactedLength = wal.length();
+            log.info("Compacted {} from {} to {} bytes in {} ms", wal.getFile(), before, compactedLength,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } finally {
+            unlock();
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            // the log keeps growing until the next attempt
+            log.warn("Failed to compact the write-ahead log: {}", e.toString());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        if (wal != null) {
+            lock();
+            try {
+                wal.close();
+            } finally {
+                unlock();
+            }
+        }
+    }
+}
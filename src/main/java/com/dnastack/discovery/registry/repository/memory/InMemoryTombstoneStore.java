@@ -0,0 +1,54 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import com.dnastack.discovery.registry.model.ServiceInstanceKey;
+import com.dnastack.discovery.registry.model.ServiceInstanceTombstone;
+import com.dnastack.discovery.registry.repository.ServiceInstanceTombstoneStore;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+class InMemoryTombstoneStore implements ServiceInstanceTombstoneStore {
+
+    private final InMemoryTransaction transaction;
+
+    InMemoryTombstoneStore(InMemoryTransaction transaction) {
+        this.transaction = transaction;
+    }
+
+    @Override
+    public void save(String realm, String id, ZonedDateTime deletedAt) {
+        long txid = transaction.lock();
+        transaction.write(WalRecord.putTombstone(realm, new StoredTombstone(id, deletedAt, txid)));
+    }
+
+    @Override
+    public void saveAll(Collection<ServiceInstanceKey> serviceInstances, ZonedDateTime deletedAt) {
+        serviceInstances.forEach(si -> save(si.getRealm(), si.getId(), deletedAt));
+    }
+
+    @Override
+    public List<ServiceInstanceTombstone> findAllSince(String realm, long sinceTxid) {
+        return transaction.read(realm).tombstones().stream()
+                .filter(tombstone -> tombstone.getChangeTxid() >= sinceTxid)
+                .map(tombstone -> new ServiceInstanceTombstone(tombstone.getId(), tombstone.getDeletedAt()))
+                .collect(toList());
+    }
+
+    @Override
+    public int deleteAllBefore(ZonedDateTime cutoff) {
+        transaction.lock();
+        int deleted = 0;
+        for (String realm : transaction.realms()) {
+            List<String> expired = transaction.read(realm).tombstones().stream()
+                    .filter(tombstone -> tombstone.getDeletedAt().isBefore(cutoff))
+                    .map(StoredTombstone::getId)
+                    .collect(toList());
+            expired.forEach(id -> transaction.write(WalRecord.deleteTombstone(realm, id)));
+            deleted += expired.size();
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,140 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A unit of work on an {@link InMemoryStore}, used by one thread at a time.
+ * <p>
+ * Until it first writes, a transaction reads the latest committed state, or the state as of its start if
+ * it is read-only. Writing takes the store's write lock, which also makes sure that what the transaction
+ * reads from then on stays current, and starts copies of the realms written to. The lock is released when
+ * the transaction commits or rolls back.
+ * </p>
+ */
+public class InMemoryTransaction {
+
+    private final InMemoryStore store;
+    private final boolean readOnly;
+    private final Snapshot readOnlySnapshot;
+
+    private boolean locked;
+    private boolean completed;
+    private boolean rollbackOnly;
+    private long txid;
+    private final Map<String, RealmState> written = new HashMap<>();
+    private final List<WalRecord> records = new ArrayList<>();
+
+    InMemoryTransaction(InMemoryStore store, boolean readOnly) {
+        this.store = store;
+        this.readOnly = readOnly;
+        this.readOnlySnapshot = readOnly ? store.committed() : null;
+    }
+
+    public boolean isRollbackOnly() {
+        return rollbackOnly;
+    }
+
+    public void setRollbackOnly() {
+        this.rollbackOnly = true;
+    }
+
+    /**
+     * Returns the state of the given realm as this transaction sees it.
+     */
+    RealmState read(String realm) {
+        RealmState state = written.get(realm);
+        return state != null ? state : snapshot().realm(realm);
+    }
+
+    /**
+     * Returns the names of all realms that have anything in them, as this transaction sees it.
+     */
+    Collection<String> realms() {
+        Set<String> realms = new HashSet<>(snapshot().realms.keySet());
+        realms.addAll(written.keySet());
+        return realms;
+    }
+
+    /**
+     * Returns the lowest ID of a transaction whose changes this transaction may not see.
+     */
+    long snapshotXmin() {
+        return locked ? txid : snapshot().nextTxid;
+    }
+
+    private Snapshot snapshot() {
+        return readOnlySnapshot != null ? readOnlySnapshot : store.committed();
+    }
+
+    /**
+     * Takes the store's write lock, unless this transaction already holds it.
+     *
+     * @return the ID of this transaction, which is what its writes record as their change ID
+     * @throws IllegalStateException if the transaction is read-only
+     */
+    long lock() {
+        if (readOnly) {
+            throw new IllegalStateException("Read-only transactions can't write");
+        }
+        if (completed) {
+            throw new IllegalStateException("Transaction has already completed");
+        }
+        if (!locked) {
+            txid = store.lock().nextTxid;
+            locked = true;
+        }
+        return txid;
+    }
+
+    /**
+     * Applies the given change to this transaction's copy of the realm, taking the write lock first.
+     */
+    void write(WalRecord record) {
+        lock();
+        written.computeIfAbsent(record.getRealm(), realm -> store.committed().realm(realm).copy()).apply(record);
+        records.add(record);
+    }
+
+    /**
+     * Makes what this transaction wrote visible to others, and releases the write lock.
+     */
+    public void commit() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        if (!locked) {
+            return;
+        }
+        try {
+            if (!records.isEmpty()) {
+                store.commit(txid, written, records);
+            }
+        } finally {
+            locked = false;
+            store.unlock();
+        }
+    }
+
+    /**
+     * Discards what this transaction wrote, and releases the write lock.
+     */
+    public void rollback() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        written.clear();
+        records.clear();
+        if (locked) {
+            locked = false;
+            store.unlock();
+        }
+    }
+}
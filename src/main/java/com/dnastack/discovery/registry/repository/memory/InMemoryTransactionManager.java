@@ -0,0 +1,89 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.SmartTransactionObject;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs Spring-managed transactions as {@link InMemoryTransaction}s, bound to the thread while they are
+ * active, where {@link InMemoryStorage} finds them. Isolation levels are ignored: read-only transactions
+ * always read from a snapshot, and writing transactions always run one at a time.
+ */
+public class InMemoryTransactionManager extends AbstractPlatformTransactionManager {
+
+    private final InMemoryStore store;
+
+    public InMemoryTransactionManager(InMemoryStore store) {
+        this.store = store;
+    }
+
+    private static class TransactionObject implements SmartTransactionObject {
+
+        InMemoryTransaction transaction;
+
+        TransactionObject(InMemoryTransaction transaction) {
+            this.transaction = transaction;
+        }
+
+        @Override
+        public boolean isRollbackOnly() {
+            return transaction != null && transaction.isRollbackOnly();
+        }
+
+        @Override
+        public void flush() {
+            // nothing is buffered outside of the transaction
+        }
+    }
+
+    @Override
+    protected Object doGetTransaction() {
+        return new TransactionObject((InMemoryTransaction) TransactionSynchronizationManager.getResource(store));
+    }
+
+    @Override
+    protected boolean isExistingTransaction(Object transaction) {
+        return ((TransactionObject) transaction).transaction != null;
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        InMemoryTransaction inMemoryTransaction = store.begin(definition.isReadOnly());
+        ((TransactionObject) transaction).transaction = inMemoryTransaction;
+        TransactionSynchronizationManager.bindResource(store, inMemoryTransaction);
+    }
+
+    @Override
+    protected Object doSuspend(Object transaction) {
+        ((TransactionObject) transaction).transaction = null;
+        return TransactionSynchronizationManager.unbindResource(store);
+    }
+
+    @Override
+    protected void doResume(Object transaction, Object suspendedResources) {
+        TransactionSynchronizationManager.bindResource(store, suspendedResources);
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+        ((TransactionObject) status.getTransaction()).transaction.commit();
+    }
+
+    @Override
+    protected void doRollback(DefaultTransactionStatus status) {
+        ((TransactionObject) status.getTransaction()).transaction.rollback();
+    }
+
+    @Override
+    protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+        ((TransactionObject) status.getTransaction()).transaction.setRollbackOnly();
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        TransactionSynchronizationManager.unbindResource(store);
+        ((TransactionObject) transaction).transaction = null;
+    }
+}
@@ -0,0 +1,213 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import org.springframework.lang.Nullable;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The service instances, organizations and tombstones of one realm, with the indexes the in-memory store
+ * looks instances up by: unique by name and type, by type, by organization, and ordered by creation time
+ * and ID for paging.
+ * <p>
+ * A state that has been published in a {@link Snapshot} is never modified again, so readers need no locks.
+ * A transaction that writes to the realm works on a {@link #copy()}, which copies the maps but shares the
+ * instances and the sets of IDs in the type and organization indexes. Such a set is only copied once the
+ * transaction adds an instance to it or removes one.
+ * </p>
+ */
+class RealmState {
+
+    static final Comparator<StoredInstance> BY_CREATION = Comparator
+            .comparing((StoredInstance si) -> si.getCreatedAt().toInstant())
+            .thenComparing(StoredInstance::getId);
+
+    static final RealmState EMPTY = new RealmState();
+
+    private final Map<String, StoredInstance> instances;
+    private final Map<String, String> idsByNameAndType;
+    private final Map<String, Set<String>> idsByType;
+    private final Map<String, Set<String>> idsByOrganization;
+    private final NavigableSet<StoredInstance> byCreation;
+    private final Map<String, StoredOrganization> organizations;
+    private final Map<String, String> organizationIdsByName;
+    private final Map<String, StoredTombstone> tombstones;
+    // keys of the index sets this state has copied, and may therefore modify
+    private final Set<String> ownTypeSets = new HashSet<>();
+    private final Set<String> ownOrganizationSets = new HashSet<>();
+
+    RealmState() {
+        this.instances = new HashMap<>();
+        this.idsByNameAndType = new HashMap<>();
+        this.idsByType = new HashMap<>();
+        this.idsByOrganization = new HashMap<>();
+        this.byCreation = new TreeSet<>(BY_CREATION);
+        this.organizations = new HashMap<>();
+        this.organizationIdsByName = new HashMap<>();
+        this.tombstones = new HashMap<>();
+    }
+
+    private RealmState(RealmState other) {
+        this.instances = new HashMap<>(other.instances);
+        this.idsByNameAndType = new HashMap<>(other.idsByNameAndType);
+        this.idsByType = new HashMap<>(other.idsByType);
+        this.idsByOrganization = new HashMap<>(other.idsByOrganization);
+        this.byCreation = new TreeSet<>(other.byCreation);
+        this.organizations = new HashMap<>(other.organizations);
+        this.organizationIdsByName = new HashMap<>(other.organizationIdsByName);
+        this.tombstones = new HashMap<>(other.tombstones);
+    }
+
+    RealmState copy() {
+        return new RealmState(this);
+    }
+
+    static String nameAndType(String name, String type) {
+        return name + "\n" + type;
+    }
+
+    @Nullable
+    StoredInstance instance(String id) {
+        return instances.get(id);
+    }
+
+    Collection<StoredInstance> instances() {
+        return instances.values();
+    }
+
+    @Nullable
+    StoredInstance instanceByNameAndType(String name, String type) {
+        String id = idsByNameAndType.get(nameAndType(name, type));
+        return id == null ? null : instances.get(id);
+    }
+
+    Set<String> idsOfType(String type) {
+        return idsByType.getOrDefault(type, Set.of());
+    }
+
+    Set<String> types() {
+        return idsByType.keySet();
+    }
+
+    Set<String> idsOfOrganization(String organizationId) {
+        return idsByOrganization.getOrDefault(organizationId, Set.of());
+    }
+
+    /**
+     * Returns the instances created after the given one, in the order of {@link #BY_CREATION}, or all of
+     * them if it is null.
+     */
+    NavigableSet<StoredInstance> instancesCreatedAfter(@Nullable StoredInstance after) {
+        return after == null ? byCreation : byCreation.tailSet(after, false);
+    }
+
+    @Nullable
+    StoredOrganization organization(String id) {
+        return organizations.get(id);
+    }
+
+    @Nullable
+    StoredOrganization organizationByName(String name) {
+        String id = organizationIdsByName.get(name);
+        return id == null ? null : organizations.get(id);
+    }
+
+    Collection<StoredOrganization> organizations() {
+        return organizations.values();
+    }
+
+    Collection<StoredTombstone> tombstones() {
+        return tombstones.values();
+    }
+
+    boolean isEmpty() {
+        return instances.isEmpty() && organizations.isEmpty() && tombstones.isEmpty();
+    }
+
+    /**
+     * Applies the given change to this state, which must not have been published yet.
+     */
+    void apply(WalRecord record) {
+        switch (record.getKind()) {
+            case PUT_INSTANCE:
+                putInstance(record.getInstance());
+                break;
+            case DELETE_INSTANCE:
+                removeInstance(record.getId());
+                break;
+            case PUT_ORGANIZATION:
+                putOrganization(record.getOrganization());
+                break;
+            case PUT_TOMBSTONE:
+                tombstones.put(record.getTombstone().getId(), record.getTombstone());
+                break;
+            case DELETE_TOMBSTONE:
+                tombstones.remove(record.getId());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kind of change " + record.getKind());
+        }
+    }
+
+    private void putInstance(StoredInstance si) {
+        removeInstance(si.getId());
+        instances.put(si.getId(), si);
+        idsByNameAndType.put(nameAndType(si.getName(), si.getType()), si.getId());
+        addToIndex(idsByType, ownTypeSets, si.getType(), si.getId());
+        addToIndex(idsByOrganization, ownOrganizationSets, si.getOrganizationId(), si.getId());
+        byCreation.add(si);
+    }
+
+    private void removeInstance(String id) {
+        StoredInstance si = instances.remove(id);
+        if (si == null) {
+            return;
+        }
+        idsByNameAndType.remove(nameAndType(si.getName(), si.getType()));
+        removeFromIndex(idsByType, ownTypeSets, si.getType(), id);
+        removeFromIndex(idsByOrganization, ownOrganizationSets, si.getOrganizationId(), id);
+        byCreation.remove(si);
+    }
+
+    private void putOrganization(StoredOrganization organization) {
+        StoredOrganization previous = organizations.put(organization.getId(), organization);
+        if (previous != null) {
+            organizationIdsByName.remove(previous.getName());
+        }
+        organizationIdsByName.put(organization.getName(), organization.getId());
+    }
+
+    private static void addToIndex(Map<String, Set<String>> index, Set<String> ownSets, String key, String id) {
+        Set<String> ids = index.get(key);
+        if (!ownSets.contains(key)) {
+            ids = ids == null ? new HashSet<>() : new HashSet<>(ids);
+            index.put(key, ids);
+            ownSets.add(key);
+        }
+        ids.add(id);
+    }
+
+    private static void removeFromIndex(Map<String, Set<String>> index, Set<String> ownSets, String key, String id) {
+        Set<String> ids = index.get(key);
+        if (ids == null) {
+            return;
+        }
+        if (!ownSets.contains(key)) {
+            ids = new HashSet<>(ids);
+            ownSets.add(key);
+        }
+        ids.remove(id);
+        if (ids.isEmpty()) {
+            index.remove(key);
+            ownSets.remove(key);
+        } else {
+            index.put(key, ids);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import java.util.Map;
+
+/**
+ * The committed state of the in-memory store as of one transaction. Never modified once published.
+ */
+class Snapshot {
+
+    // the ID the next writing transaction gets; everything written by lower IDs is part of this snapshot
+    final long nextTxid;
+    final Map<String, RealmState> realms;
+
+    Snapshot(long nextTxid, Map<String, RealmState> realms) {
+        this.nextTxid = nextTxid;
+        this.realms = realms;
+    }
+
+    RealmState realm(String realm) {
+        return realms.getOrDefault(realm, RealmState.EMPTY);
+    }
+}
@@ -0,0 +1,100 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import com.dnastack.discovery.registry.model.Environment;
+import com.dnastack.discovery.registry.model.HealthStatus;
+import com.dnastack.discovery.registry.model.OrganizationModel;
+import com.dnastack.discovery.registry.model.ServiceInstanceHealth;
+import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import com.dnastack.discovery.registry.model.ServiceType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.lang.Nullable;
+
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A service instance as the in-memory store keeps it: the columns of {@code service_instance}, with the
+ * type in its {@code group:artifact:version} form. Never modified once it is part of a {@link RealmState};
+ * changes replace it with a copy.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+class StoredInstance {
+
+    private String id;
+    private String name;
+    private String type;
+    private @Nullable String url;
+    private @Nullable String description;
+    private String organizationId;
+    private @Nullable String contactUrl;
+    private @Nullable String documentationUrl;
+    private ZonedDateTime createdAt;
+    private ZonedDateTime updatedAt;
+    private @Nullable Environment environment;
+    private String version;
+    private Map<String, Object> additionalProperties;
+    private @Nullable HealthStatus healthStatus;
+    private @Nullable Integer healthLatencyMillis;
+    private @Nullable ZonedDateTime healthCheckedAt;
+    private @Nullable ZonedDateTime healthNextCheckAt;
+    private @Nullable Integer leaseTtlSeconds;
+    private @Nullable ZonedDateTime leaseExpiresAt;
+    private long changeTxid;
+
+    /**
+     * Returns a copy of this instance with the attributes clients set taken from the given model, as
+     * written by an insert or update. Health checks and leases are left as they are.
+     */
+    StoredInstance withAttributesOf(ServiceInstanceModel si, String organizationId, long changeTxid) {
+        return toBuilder()
+                .id(si.getId())
+                .name(si.getName())
+                .type(si.getType().toString())
+                .url(si.getUrl())
+                .description(si.getDescription())
+                .organizationId(organizationId)
+                .contactUrl(si.getContactUrl())
+                .documentationUrl(si.getDocumentationUrl())
+                .createdAt(si.getCreatedAt())
+                .updatedAt(si.getUpdatedAt())
+                .environment(si.getEnvironment())
+                .version(si.getVersion())
+                .additionalProperties(Collections.unmodifiableMap(new LinkedHashMap<>(si.getAdditionalProperties())))
+                .changeTxid(changeTxid)
+                .build();
+    }
+
+    /**
+     * Returns a new model of this instance, which the caller is free to modify.
+     */
+    ServiceInstanceModel toModel(@Nullable StoredOrganization organization) {
+        ServiceInstanceModel model = new ServiceInstanceModel();
+        model.setId(id);
+        model.setName(name);
+        model.setType(ServiceType.fromString(type));
+        model.setUrl(url);
+        model.setDescription(description);
+        model.setContactUrl(contactUrl);
+        model.setDocumentationUrl(documentationUrl);
+        model.setCreatedAt(createdAt);
+        model.setUpdatedAt(updatedAt);
+        model.setEnvironment(environment);
+        model.setVersion(version);
+        model.setAdditionalProperties(new LinkedHashMap<>(additionalProperties));
+        if (healthStatus != null) {
+            model.setHealth(new ServiceInstanceHealth(healthStatus, healthLatencyMillis, healthCheckedAt));
+        }
+        model.setOrganization(organization == null
+                ? new OrganizationModel(organizationId, null, null)
+                : new OrganizationModel(organization.getId(), organization.getName(), organization.getUrl()));
+        return model;
+    }
+}
@@ -0,0 +1,19 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.lang.Nullable;
+
+/**
+ * An organization as the in-memory store keeps it.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class StoredOrganization {
+
+    private String id;
+    private String name;
+    private @Nullable String url;
+}
@@ -0,0 +1,20 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.ZonedDateTime;
+
+/**
+ * The tombstone of a deleted service instance, as the in-memory store keeps it.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class StoredTombstone {
+
+    private String id;
+    private ZonedDateTime deletedAt;
+    private long changeTxid;
+}
@@ -0,0 +1,19 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The changes made by one committed transaction, written to the {@link WriteAheadLog} as one line.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class WalEntry {
+
+    private long txid;
+    private List<WalRecord> records;
+}
@@ -0,0 +1,48 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.lang.Nullable;
+
+/**
+ * One change to a realm, as written to the {@link WriteAheadLog} and applied to a {@link RealmState}.
+ * Which of the other fields are set depends on the kind of change.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class WalRecord {
+
+    enum Kind {
+        PUT_INSTANCE, DELETE_INSTANCE, PUT_ORGANIZATION, PUT_TOMBSTONE, DELETE_TOMBSTONE
+    }
+
+    private Kind kind;
+    private String realm;
+    // the ID of the deleted instance or tombstone
+    private @Nullable String id;
+    private @Nullable StoredInstance instance;
+    private @Nullable StoredOrganization organization;
+    private @Nullable StoredTombstone tombstone;
+
+    static WalRecord putInstance(String realm, StoredInstance instance) {
+        return new WalRecord(Kind.PUT_INSTANCE, realm, null, instance, null, null);
+    }
+
+    static WalRecord deleteInstance(String realm, String id) {
+        return new WalRecord(Kind.DELETE_INSTANCE, realm, id, null, null, null);
+    }
+
+    static WalRecord putOrganization(String realm, StoredOrganization organization) {
+        return new WalRecord(Kind.PUT_ORGANIZATION, realm, null, null, organization, null);
+    }
+
+    static WalRecord putTombstone(String realm, StoredTombstone tombstone) {
+        return new WalRecord(Kind.PUT_TOMBSTONE, realm, null, null, null, tombstone);
+    }
+
+    static WalRecord deleteTombstone(String realm, String id) {
+        return new WalRecord(Kind.DELETE_TOMBSTONE, realm, id, null, null, null);
+    }
+}
@@ -0,0 +1,199 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the in-memory store as an append-only log of committed transactions, one JSON line each, in
+ * {@code wal.log} in the given directory. On startup, the log is replayed; a last line that was only
+ * partly written when the process died is cut off.
+ * <p>
+ * {@link #compact} rewrites the log as the transactions that create the current state, so that the log
+ * only grows with the amount of data rather than the number of changes. The new log is written to a
+ * temporary file first and moved over the old one, so a crash during compaction loses nothing.
+ * </p>
+ */
+@Slf4j
+class WriteAheadLog implements Closeable {
+
+    static final String FILE_NAME = "wal.log";
+
+    private final Path file;
+    private final boolean fsync;
+    private final ObjectWriter entryWriter;
+    private final ObjectReader entryReader;
+    private FileChannel channel;
+    private long length;
+
+    /**
+     * @param fsync whether each commit waits for its entry to reach the disk; without, a commit can be lost
+     *              if the machine (rather than just the process) goes down
+     */
+    WriteAheadLog(Path directory, boolean fsync) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve(FILE_NAME);
+        this.fsync = fsync;
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+                .serializationInclusion(JsonInclude.Include.NON_NULL)
+                .build();
+        this.entryWriter = objectMapper.writerFor(WalEntry.class);
+        this.entryReader = objectMapper.readerFor(WalEntry.class);
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Reads back everything logged so far and opens the log for appending.
+     *
+     * @param firstTxid the ID to start from if the log is empty
+     * @throws IllegalStateException if an entry other than the last one can't be read
+     */
+    Snapshot replay(long firstTxid) throws IOException {
+        Map<String, RealmState> realms = new HashMap<>();
+        long lastTxid = firstTxid - 1;
+        long validLength = 0;
+        int entries = 0;
+        if (Files.exists(file)) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                ByteArrayOutputStream line = new ByteArrayOutputStream();
+                int b;
+                while ((b = in.read()) != -1) {
+                    if (b != '\n') {
+                        line.write(b);
+                        continue;
+                    }
+                    WalEntry entry;
+                    try {
+                        entry = entryReader.readValue(line.toByteArray());
+                    } catch (IOException e) {
+                        if (in.read() == -1) {
+                            // the last entry, cut off below
+                            break;
+                        }
+                        throw new IllegalStateException("Entry at byte " + validLength + " of " + file + " is unreadable", e);
+                    }
+                    for (WalRecord record : entry.getRecords()) {
+                        realms.computeIfAbsent(record.getRealm(), realm -> new RealmState()).apply(record);
+                    }
+                    lastTxid = Math.max(lastTxid, entry.getTxid());
+                    validLength += line.size() + 1;
+                    entries++;
+                    line.reset();
+                }
+            }
+            if (validLength < Files.size(file)) {
+                log.warn("Cutting off the incomplete last entry of {} at byte {}", file, validLength);
+            }
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(validLength);
+        channel.position(validLength);
+        length = validLength;
+        log.info("Replayed {} entries from {}", entries, file);
+        realms.values().removeIf(RealmState::isEmpty);
+        return new Snapshot(lastTxid + 1, realms);
+    }
+
+    /**
+     * Appends the given entry. If that fails, the log is left as it was.
+     */
+    void append(WalEntry entry) {
+        try {
+            byte[] line = toLine(entry);
+            try {
+                write(channel, line);
+                if (fsync) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                channel.truncate(length);
+                channel.position(length);
+                throw e;
+            }
+            length += line.length;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to " + file, e);
+        }
+    }
+
+    long length() {
+        return length;
+    }
+
+    /**
+     * Replaces the log with one entry per realm that recreates the given snapshot. The caller has to make
+     * sure nothing is appended meanwhile.
+     */
+    void compact(Snapshot snapshot) throws IOException {
+        Path compacted = file.resolveSibling(FILE_NAME + ".compacting");
+        long compactedLength = 0;
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // carries the transaction ID over even if there is no data, so that sync tokens stay valid
+            compactedLength += write(out, toLine(new WalEntry(snapshot.nextTxid - 1, List.of())));
+            for (Map.Entry<String, RealmState> realm : snapshot.realms.entrySet()) {
+                compactedLength += write(out, toLine(new WalEntry(snapshot.nextTxid - 1, records(realm.getKey(), realm.getValue()))));
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        channel.position(compactedLength);
+        length = compactedLength;
+    }
+
+    private static List<WalRecord> records(String realm, RealmState state) {
+        List<WalRecord> records = new ArrayList<>();
+        state.organizations().forEach(organization -> records.add(WalRecord.putOrganization(realm, organization)));
+        state.instances().forEach(si -> records.add(WalRecord.putInstance(realm, si)));
+        state.tombstones().forEach(tombstone -> records.add(WalRecord.putTombstone(realm, tombstone)));
+        return records;
+    }
+
+    private byte[] toLine(WalEntry entry) throws IOException {
+        byte[] json = entryWriter.writeValueAsBytes(entry);
+        byte[] line = new byte[json.length + 1];
+        System.arraycopy(json, 0, line, 0, json.length);
+        line[json.length] = '\n';
+        return line;
+    }
+
+    private static int write(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return bytes.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.dnastack.discovery.registry.service;
+
+import com.dnastack.discovery.registry.model.HealthCheck;
+import com.dnastack.discovery.registry.model.HealthCheckResult;
+import com.dnastack.discovery.registry.model.HealthStatus;
+import com.dnastack.discovery.registry.model.ServiceInstanceHealth;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically probes every service instance that has a URL, through {@link HealthProber}, and stores the
+ * resulting health status and latency with the instance.
+ * <p>
+ * Each instance is checked about every {@code app.health-checks.interval-seconds}, randomly varied by
+ * {@code app.health-checks.jitter} so that the probes spread out over time. Due instances are claimed in
+ * the database in batches before they are probed, so that registry nodes sharing a database split the
+ * work between them rather than each probing everything.
+ * </p>
+ */
+@Slf4j
+@Component
+public class HealthChecker {
+
+    private final ServiceInstanceService service;
+    private final HealthProber prober;
+    private final Duration interval;
+    private final double jitter;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<HealthStatus, Counter> checks = new EnumMap<>(HealthStatus.class);
+
+    @Inject
+    public HealthChecker(ServiceInstanceService service,
+                         HealthProber prober,
+                         MeterRegistry meterRegistry,
+                         @Value("${app.health-checks.enabled:true}") boolean enabled,
+                         @Value("${app.health-checks.interval-seconds:60}") long intervalSeconds,
+                         @Value("${app.health-checks.jitter:0.2}") double jitter,
+                         @Value("${app.health-checks.poll-interval-seconds:5}") long pollIntervalSeconds,
+                         @Value("${app.health-checks.batch-size:500}") int batchSize) {
+        this.service = service;
+        this.prober = prober;
+        this.interval = Duration.ofSeconds(intervalSeconds);
+        this.jitter = jitter;
+        this.batchSize = batchSize;
+
+        for (HealthStatus status : HealthStatus.values()) {
+            checks.put(status, Counter.builder("health.checks")
+                    .description("Health checks of service instances, by outcome")
+                    .tag("status", status.toString())
+                    .register(meterRegistry));
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("health-checks-"));
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::checkDue, pollIntervalSeconds, pollIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            log.info("Not checking the health of service instances");
+        }
+    }
+
+    private void checkDue() {
+        try {
+            List<HealthCheck> claimed;
+            do {
+                claimed = service.claimHealthChecks(batchSize, interval, jitter);
+                if (!claimed.isEmpty()) {
+                    check(claimed);
+                }
+            } while (claimed.size() == batchSize);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // whatever was claimed is checked again once it's due
+            log.warn("Failed to check the health of service instances: {}", e.toString());
+        }
+    }
+
+    private void check(List<HealthCheck> claimed) throws InterruptedException {
+        List<CompletableFuture<ServiceInstanceHealth>> probes = new ArrayList<>(claimed.size());
+        for (HealthCheck check : claimed) {
+            probes.add(prober.probe(check.getUrl()));
+        }
+
+        List<HealthCheckResult> results = new ArrayList<>(claimed.size());
+        for (int i = 0; i < claimed.size(); i++) {
+            HealthCheck check = claimed.get(i);
+            ServiceInstanceHealth health;
+            try {
+                health = probes.get(i).get();
+            } catch (ExecutionException e) {
+                // not expected, since probes report failures as DOWN
+                throw new IllegalStateException(e.getCause());
+            }
+            checks.get(health.getStatus()).increment();
+            results.add(new HealthCheckResult(
+                    check.getRealm(),
+                    check.getId(),
+                    health.getStatus(),
+                    health.getLatencyMillis(),
+                    health.getCheckedAt(),
+                    health.getStatus() != check.getHealthStatus()));
+        }
+        service.saveHealthCheckResults(results);
+        log.debug("Checked the health of {} service instances", results.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
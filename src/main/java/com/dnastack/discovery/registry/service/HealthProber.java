@@ -0,0 +1,200 @@
+package com.dnastack.discovery.registry.service;
+
+import com.dnastack.discovery.registry.model.HealthStatus;
+import com.dnastack.discovery.registry.model.ServiceInstanceHealth;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes the {@code /service-info} endpoint of service instances over HTTP.
+ * <p>
+ * Probes are sent with the asynchronous JDK HTTP client, so waiting for slow services ties up no threads.
+ * At most {@code app.health-checks.max-concurrency} probes are in flight at once, and at most
+ * {@code app.health-checks.max-concurrency-per-host} of those go to the same host, so that many instances
+ * behind one host aren't probed all at once. Probes over the limits are queued and sent as others
+ * complete, taking turns between hosts.
+ * </p>
+ */
+@Slf4j
+@Component
+public class HealthProber {
+
+    private static final String SERVICE_INFO_PATH = "/service-info";
+
+    private static class Probe {
+        final URI uri;
+        final CompletableFuture<ServiceInstanceHealth> result = new CompletableFuture<>();
+
+        Probe(URI uri) {
+            this.uri = uri;
+        }
+    }
+
+    private static class Host {
+        final String key;
+        final Deque<Probe> waiting = new ArrayDeque<>();
+        int inFlight;
+        // whether this host is in the ready queue
+        boolean ready;
+
+        Host(String key) {
+            this.key = key;
+        }
+    }
+
+    private final HttpClient client;
+    private final ExecutorService executor;
+    private final Duration timeout;
+    private final int maxConcurrency;
+    private final int maxConcurrencyPerHost;
+
+    // guarded by this
+    private final Map<String, Host> hosts = new HashMap<>();
+    // hosts with waiting probes and spare capacity, in the order they get to send their next probe
+    private final Deque<Host> readyHosts = new ArrayDeque<>();
+    private int inFlight;
+
+    @Inject
+    public HealthProber(@Value("${app.health-checks.timeout-millis:5000}") long timeoutMillis,
+                        @Value("${app.health-checks.max-concurrency:64}") int maxConcurrency,
+                        @Value("${app.health-checks.max-concurrency-per-host:4}") int maxConcurrencyPerHost) {
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.maxConcurrency = maxConcurrency;
+        this.maxConcurrencyPerHost = maxConcurrencyPerHost;
+        // only runs the client's bookkeeping and completes the futures; nothing blocks on it
+        this.executor = Executors.newCachedThreadPool(new CustomizableThreadFactory("health-probe-"));
+        this.client = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    /**
+     * Probes the service instance at the given base URL. The returned future never completes
+     * exceptionally: a malformed URL, a failed request, a timeout or a non-2xx response all make the
+     * instance {@link HealthStatus#DOWN}.
+     */
+    public CompletableFuture<ServiceInstanceHealth> probe(String url) {
+        URI uri;
+        try {
+            uri = URI.create(url.replaceAll("/+$", "") + SERVICE_INFO_PATH);
+            if (uri.getHost() == null || !("http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme()))) {
+                throw new IllegalArgumentException("Not an HTTP URL");
+            }
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(new ServiceInstanceHealth(HealthStatus.DOWN, null, now()));
+        }
+
+        Probe probe = new Probe(uri);
+        synchronized (this) {
+            String key = uri.getScheme().toLowerCase(Locale.ROOT) + "://" + uri.getHost().toLowerCase(Locale.ROOT) + ":" + uri.getPort();
+            Host host = hosts.computeIfAbsent(key, Host::new);
+            host.waiting.add(probe);
+            markReadyIfPossible(host);
+        }
+        dispatch();
+        return probe.result;
+    }
+
+    /**
+     * Sends waiting probes for as long as the limits allow, one per host in turn.
+     */
+    private void dispatch() {
+        while (true) {
+            Probe probe;
+            Host host;
+            synchronized (this) {
+                if (inFlight >= maxConcurrency || readyHosts.isEmpty()) {
+                    return;
+                }
+                host = readyHosts.poll();
+                host.ready = false;
+                probe = host.waiting.poll();
+                host.inFlight++;
+                inFlight++;
+                markReadyIfPossible(host);
+            }
+            send(host, probe);
+        }
+    }
+
+    private void markReadyIfPossible(Host host) {
+        if (!host.ready && !host.waiting.isEmpty() && host.inFlight < maxConcurrencyPerHost) {
+            host.ready = true;
+            readyHosts.add(host);
+        }
+    }
+
+    private void send(Host host, Probe probe) {
+        HttpRequest request = HttpRequest.newBuilder(probe.uri)
+                .timeout(timeout)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        long startNanos = System.nanoTime();
+        CompletableFuture<HttpResponse<Void>> sent;
+        try {
+            sent = client.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        sent.handle((response, error) -> {
+            int latencyMillis = (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            if (error != null) {
+                log.debug("Health check of {} failed: {}", probe.uri, error.toString());
+                return new ServiceInstanceHealth(HealthStatus.DOWN, null, now());
+            }
+            HealthStatus status = response.statusCode() / 100 == 2 ? HealthStatus.UP : HealthStatus.DOWN;
+            return new ServiceInstanceHealth(status, latencyMillis, now());
+        }).whenCompleteAsync((health, error) -> {
+            // not on the sending thread, so that failing fast can't recurse through dispatch()
+            completed(host);
+            probe.result.complete(health);
+        }, executor);
+    }
+
+    private void completed(Host host) {
+        synchronized (this) {
+            host.inFlight--;
+            inFlight--;
+            if (host.inFlight == 0 && host.waiting.isEmpty()) {
+                hosts.remove(host.key);
+            } else {
+                markReadyIfPossible(host);
+            }
+        }
+        dispatch();
+    }
+
+    private static ZonedDateTime now() {
+        return ZonedDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.MICROS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
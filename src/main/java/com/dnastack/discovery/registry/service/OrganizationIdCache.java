@@ -0,0 +1,73 @@
+package com.dnastack.discovery.registry.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.inject.Inject;
+
+/**
+ * Remembers the IDs of organizations by realm and name, so that registering an instance for a known
+ * organization takes no organization query.
+ * <p>
+ * The service never renames or deletes organizations. If that is done in the database, a trigger tells
+ * every node over the change relay, which publishes a {@link ServiceInstanceResyncEvent} that clears this
+ * cache along with the others.
+ * </p>
+ */
+@Slf4j
+@Component
+public class OrganizationIdCache {
+
+    private final Cache<String, String> idsByRealmAndName;
+
+    @Inject
+    public OrganizationIdCache(@Value("${app.cache.organizations.max-size:10000}") long maxSize,
+                               MeterRegistry meterRegistry) {
+        this.idsByRealmAndName = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, idsByRealmAndName, "organizations");
+    }
+
+    private static String key(String realm, String name) {
+        return realm + "\n" + name;
+    }
+
+    @Nullable
+    public String get(String realm, String name) {
+        return idsByRealmAndName.getIfPresent(key(realm, name));
+    }
+
+    /**
+     * Remembers the ID of the given organization once the current transaction commits, since it may have
+     * created the organization. Without a transaction, it is remembered right away.
+     */
+    public void putAfterCommit(String realm, String name, String id) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            idsByRealmAndName.put(key(realm, name), id);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                idsByRealmAndName.put(key(realm, name), id);
+            }
+        });
+    }
+
+    @EventListener
+    public void onResync(ServiceInstanceResyncEvent event) {
+        idsByRealmAndName.invalidateAll();
+        log.debug("Invalidated cached organization IDs for all realms");
+    }
+}
@@ -0,0 +1,45 @@
+package com.dnastack.discovery.registry.service;
+
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in a service instance listing ordered by {@code (created_at, id)}. Clients only ever see the
+ * encoded form, which they are expected to hand back unchanged.
+ */
+@Value
+public class PageCursor {
+
+    ZonedDateTime createdAt;
+    String id;
+
+    public String encode() {
+        String plain = createdAt.toInstant().toString() + "," + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor previously produced by {@link #encode()}.
+     *
+     * @throws IllegalArgumentException if the given value is not a valid cursor
+     */
+    public static PageCursor decode(String encoded) {
+        try {
+            String plain = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            int separator = plain.indexOf(',');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Malformed cursor: " + encoded);
+            }
+            ZonedDateTime createdAt = Instant.parse(plain.substring(0, separator)).atZone(ZoneOffset.UTC);
+            return new PageCursor(createdAt, plain.substring(separator + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Malformed cursor: " + encoded, e);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.dnastack.discovery.registry.service;
+
+/**
+ * Thrown instead of retrying a failed transaction when too many other transactions are already waiting
+ * to be retried.
+ */
+public class RetryBudgetExhaustedException extends RuntimeException {
+
+    public RetryBudgetExhaustedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
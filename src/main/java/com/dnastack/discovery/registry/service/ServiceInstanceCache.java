@@ -0,0 +1,392 @@
+package com.dnastack.discovery.registry.service;
+
+import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import com.dnastack.discovery.registry.model.ServiceType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Size-bounded, realm-scoped read-through cache of the full service instance listing, which also keeps
+ * track of a version number for each realm. Listings are kept rendered as JSON, so that they can be
+ * served without serializing the instances again.
+ * <p>
+ * A realm's version is bumped when a {@link ServiceInstanceChangeEvent} for the realm is delivered, which
+ * happens only after the writing transaction has committed, or when the change is relayed from another
+ * node. The cached listing isn't dropped then: the changed instance is remembered, and the next read of
+ * the listing re-reads and re-renders only the instances changed since. Listings with too many changes
+ * pending are dropped instead. On a {@link ServiceInstanceResyncEvent}, every realm moves to a new
+ * version and all listings are dropped. A listing is always at least as new as the version it is tagged
+ * with: the loader records the version before reading from the database, and doesn't cache its result if
+ * the version moved on in the meantime.
+ * </p>
+ * <p>
+ * Versions are only meaningful within this process; {@link #getEpoch()} tells apart the versions of
+ * different processes.
+ * </p>
+ */
+@Slf4j
+@Component
+public class ServiceInstanceCache {
+
+    // above this many changed instances, reloading the whole realm is about as cheap as re-reading them
+    private static final int MAX_PENDING_CHANGES = 1000;
+    // gzip costs more than it saves on bodies that fit in a packet or two anyway
+    private static final int MIN_GZIP_BYTES = 1024;
+
+    @lombok.Value
+    public static class RealmVersion {
+        long sequence;
+        Instant lastModified;
+    }
+
+    /**
+     * A service instance along with its JSON representation.
+     */
+    @lombok.Value
+    public static class RenderedInstance {
+        ServiceInstanceModel instance;
+        byte[] json;
+    }
+
+    /**
+     * All service instances of a realm at some version, rendered as JSON. The bodies of the listing and of
+     * the types response are put together from the rendered instances the first time they are asked for.
+     */
+    public static class Listing {
+
+        private final RealmVersion version;
+        // in listing order
+        private final Map<String, RenderedInstance> instances;
+        private final ObjectWriter writer;
+        private final boolean gzip;
+        private volatile byte[] body;
+        private volatile byte[] gzippedBody;
+        private volatile byte[] typesBody;
+
+        private Listing(RealmVersion version, Map<String, RenderedInstance> instances, ObjectWriter writer, boolean gzip) {
+            this.version = version;
+            this.instances = instances;
+            this.writer = writer;
+            this.gzip = gzip;
+        }
+
+        public RealmVersion getVersion() {
+            return version;
+        }
+
+        public @Nullable RenderedInstance getInstance(String id) {
+            return instances.get(id);
+        }
+
+        /**
+         * Returns the JSON array of all instances, in UTF-8.
+         */
+        public byte[] getBody() {
+            byte[] result = body;
+            if (result == null) {
+                int length = 2 + Math.max(instances.size() - 1, 0);
+                for (RenderedInstance instance : instances.values()) {
+                    length += instance.getJson().length;
+                }
+                result = new byte[length];
+                int position = 0;
+                result[position++] = '[';
+                for (RenderedInstance instance : instances.values()) {
+                    if (position > 1) {
+                        result[position++] = ',';
+                    }
+                    System.arraycopy(instance.getJson(), 0, result, position, instance.getJson().length);
+                    position += instance.getJson().length;
+                }
+                result[position] = ']';
+                body = result;
+            }
+            return result;
+        }
+
+        /**
+         * Returns {@link #getBody()} compressed with gzip, or {@code null} if the body is too short to be worth
+         * compressing or compression is turned off.
+         */
+        public @Nullable byte[] getGzippedBody() {
+            if (!gzip) {
+                return null;
+            }
+            byte[] result = gzippedBody;
+            if (result == null) {
+                byte[] uncompressed = getBody();
+                if (uncompressed.length < MIN_GZIP_BYTES) {
+                    return null;
+                }
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(uncompressed.length / 4);
+                try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                    out.write(uncompressed);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                result = compressed.toByteArray();
+                gzippedBody = result;
+            }
+            return result;
+        }
+
+        /**
+         * Returns the JSON array of the distinct service types in the realm, in UTF-8.
+         */
+        public byte[] getTypesBody() {
+            byte[] result = typesBody;
+            if (result == null) {
+                Set<ServiceType> types = new LinkedHashSet<>();
+                instances.values().forEach(instance -> types.add(instance.getInstance().getType()));
+                result = render(writer, new ArrayList<>(types));
+                typesBody = result;
+            }
+            return result;
+        }
+
+        /**
+         * Returns a listing at the given version in which the given instances are replaced by their reloaded
+         * state. Instances that weren't reloaded have been deleted; reloaded instances that aren't listed yet
+         * are added at the end.
+         */
+        private Listing withChanges(RealmVersion version, Set<String> changedIds, List<ServiceInstanceModel> reloaded) {
+            Map<String, RenderedInstance> reloadedById = new HashMap<>();
+            reloaded.forEach(instance -> reloadedById.put(instance.getId(), renderInstance(writer, instance)));
+
+            Map<String, RenderedInstance> result = new LinkedHashMap<>();
+            instances.forEach((id, instance) -> {
+                if (!changedIds.contains(id)) {
+                    result.put(id, instance);
+                } else if (reloadedById.containsKey(id)) {
+                    // updated instances keep their place
+                    result.put(id, reloadedById.remove(id));
+                }
+            });
+            result.putAll(reloadedById);
+            return new Listing(version, Collections.unmodifiableMap(result), writer, gzip);
+        }
+    }
+
+    /**
+     * The cached listing of a realm and the instances changed since it was rendered, each with the realm
+     * version its latest change moved the realm to. Guarded by the cache's monitor.
+     */
+    private static class Entry {
+        Listing listing;
+        final Map<String, Long> changedIds = new HashMap<>();
+
+        Entry(Listing listing) {
+            this.listing = listing;
+        }
+    }
+
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final Instant startedAt = Instant.now();
+    private final Cache<String, Entry> listingsByRealm;
+    private final ConcurrentMap<String, RealmVersion> versions = new ConcurrentHashMap<>();
+    // the version of realms that haven't changed since the last resync
+    private volatile RealmVersion baseline = new RealmVersion(0, startedAt);
+    private final ObjectWriter writer;
+    private final boolean gzip;
+    private final Counter invalidations;
+
+    @Inject
+    public ServiceInstanceCache(@Value("${app.cache.services.max-realms:100}") long maxRealms,
+                                @Value("${app.cache.services.gzip:true}") boolean gzip,
+                                ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry) {
+        this.listingsByRealm = Caffeine.newBuilder()
+                .maximumSize(maxRealms)
+                .recordStats()
+                .build();
+        // the same mapper as the HTTP message converters use, so that the rendered JSON is what they would write
+        this.writer = objectMapper.writer();
+        this.gzip = gzip;
+        CaffeineCacheMetrics.monitor(meterRegistry, listingsByRealm, "services");
+        this.invalidations = Counter.builder("cache.invalidations")
+                .tag("cache", "services")
+                .description("The number of committed writes that made a realm listing stale")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns a value that differs between processes, so that realm versions handed out before a restart
+     * or by another replica are never mistaken for current ones.
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the current version of the given realm. Realms that haven't changed since this process
+     * started are at sequence 0, last modified at startup, until the first resync moves them on.
+     */
+    public RealmVersion getVersion(String realm) {
+        return versions.getOrDefault(realm, baseline);
+    }
+
+    /**
+     * Returns the cached listing for the given realm, brought up to date with the given reloader if
+     * instances changed since it was rendered, or loads it using the given loader on a miss.
+     *
+     * @param realm the realm whose service instances are requested
+     * @param loader reads the current listing from the database
+     * @param reloader reads the given instances of the realm from the database, leaving out deleted ones
+     * @return all service instances in the realm, with the realm version they reflect
+     */
+    public Listing getInstances(String realm,
+                                Supplier<List<ServiceInstanceModel>> loader,
+                                Function<Collection<String>, List<ServiceInstanceModel>> reloader) {
+        Listing cached = getCachedInstances(realm, reloader);
+        if (cached != null) {
+            return cached;
+        }
+
+        RealmVersion versionBeforeLoad = getVersion(realm);
+        Map<String, RenderedInstance> rendered = new LinkedHashMap<>();
+        loader.get().forEach(instance -> rendered.put(instance.getId(), renderInstance(writer, instance)));
+        Listing loaded = new Listing(versionBeforeLoad, Collections.unmodifiableMap(rendered), writer, gzip);
+        synchronized (this) {
+            // if a write committed while we were loading, what we just read may already be stale
+            if (getVersion(realm).getSequence() == versionBeforeLoad.getSequence()) {
+                listingsByRealm.put(realm, new Entry(loaded));
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns the given service instance from the cached listing of its realm, brought up to date like
+     * {@link #getInstances}.
+     *
+     * @return null if the realm's listing isn't cached, or doesn't have the instance
+     */
+    public @Nullable RenderedInstance getInstance(String realm, String id,
+                                                  Function<Collection<String>, List<ServiceInstanceModel>> reloader) {
+        Listing cached = getCachedInstances(realm, reloader);
+        return cached == null ? null : cached.getInstance(id);
+    }
+
+    /**
+     * Returns the cached listing of the given realm, brought up to date like {@link #getInstances}, without
+     * loading it on a miss.
+     *
+     * @return null if the realm's listing isn't cached
+     */
+    public @Nullable Listing getCachedListing(String realm, Function<Collection<String>, List<ServiceInstanceModel>> reloader) {
+        return getCachedInstances(realm, reloader);
+    }
+
+    private @Nullable Listing getCachedInstances(String realm, Function<Collection<String>, List<ServiceInstanceModel>> reloader) {
+        Entry entry = listingsByRealm.getIfPresent(realm);
+        if (entry == null) {
+            return null;
+        }
+        Listing listing;
+        Map<String, Long> changedIds;
+        RealmVersion version;
+        synchronized (this) {
+            listing = entry.listing;
+            if (entry.changedIds.isEmpty()) {
+                return listing;
+            }
+            changedIds = Map.copyOf(entry.changedIds);
+            version = getVersion(realm);
+        }
+
+        // every change up to this version has committed, so reading now sees at least that
+        Listing refreshed = listing.withChanges(version, changedIds.keySet(), reloader.apply(changedIds.keySet()));
+        synchronized (this) {
+            // unless somebody else got there first
+            if (entry.listing == listing) {
+                entry.listing = refreshed;
+                // instances that changed again while we were reading stay pending
+                changedIds.forEach((id, sequence) -> entry.changedIds.remove(id, sequence));
+            }
+        }
+        log.debug("Refreshed {} changed service instances in the cached listing of realm {}", changedIds.size(), realm);
+        return refreshed;
+    }
+
+    // synchronized with invalidateAll, so that no sequence number is ever handed out twice
+    public synchronized void invalidate(String realm, String id) {
+        Instant now = Instant.now();
+        RealmVersion version = versions.compute(realm, (r, v) -> new RealmVersion((v == null ? baseline : v).getSequence() + 1, now));
+        Entry entry = listingsByRealm.getIfPresent(realm);
+        if (entry != null) {
+            entry.changedIds.put(id, version.getSequence());
+            if (entry.changedIds.size() > MAX_PENDING_CHANGES) {
+                listingsByRealm.invalidate(realm);
+            }
+        }
+        invalidations.increment();
+        log.debug("Service instance {} changed in realm {}", id, realm);
+    }
+
+    /**
+     * Moves every realm, including those this process hasn't seen yet, past all versions handed out so far.
+     */
+    public synchronized void invalidateAll() {
+        long latest = versions.values().stream().mapToLong(RealmVersion::getSequence).max().orElse(0);
+        baseline = new RealmVersion(Math.max(latest, baseline.getSequence()) + 1, Instant.now());
+        versions.clear();
+        listingsByRealm.invalidateAll();
+        log.debug("Invalidated cached service instances for all realms");
+    }
+
+    // without a transaction, the change was relayed from another node and has already been committed
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onServiceInstanceChange(ServiceInstanceChangeEvent event) {
+        invalidate(event.getRealm(), event.getServiceInstanceId());
+    }
+
+    @EventListener
+    public void onResync(ServiceInstanceResyncEvent event) {
+        invalidateAll();
+    }
+
+    private static RenderedInstance renderInstance(ObjectWriter writer, ServiceInstanceModel instance) {
+        return new RenderedInstance(instance, render(writer, instance));
+    }
+
+    private static byte[] render(ObjectWriter writer, Object value) {
+        try {
+            return writer.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Couldn't render " + value + " as JSON", e);
+        }
+    }
+}
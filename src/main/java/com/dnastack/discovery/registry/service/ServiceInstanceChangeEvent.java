@@ -0,0 +1,26 @@
+package com.dnastack.discovery.registry.service;
+
+import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import lombok.Value;
+import org.springframework.lang.Nullable;
+
+/**
+ * Published by {@link ServiceInstanceService} whenever a service instance is created, replaced or
+ * deleted. Listeners that must only observe committed state should use
+ * {@link org.springframework.transaction.event.TransactionalEventListener}. Changes made by other nodes
+ * are published by {@link ServiceInstanceChangeRelay} outside of any transaction, after they committed.
+ */
+@Value
+public class ServiceInstanceChangeEvent {
+
+    public enum Operation {
+        CREATED, UPDATED, DELETED
+    }
+
+    String realm;
+    String serviceInstanceId;
+    Operation operation;
+    // the instance as written; null for deletions, and for relayed changes to instances deleted since
+    @Nullable ServiceInstanceModel serviceInstance;
+
+}
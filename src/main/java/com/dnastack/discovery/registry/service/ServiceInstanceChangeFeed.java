@@ -0,0 +1,372 @@
+package com.dnastack.discovery.registry.service;
+
+import com.dnastack.discovery.registry.model.ServiceInstanceChange;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Numbers the committed changes of each realm and hands them to any number of subscribers.
+ * <p>
+ * Every change gets the next sequence number of its realm once its transaction has committed, or once it
+ * has been relayed from another node, and the most recent changes of each realm are kept in a bounded
+ * buffer. A subscriber that says where it left off is first sent the buffered changes it missed; if that
+ * position is no longer in the buffer (or comes from another process), it is told to reset instead, i.e.
+ * to reload the realm before applying further changes.
+ * </p>
+ * <p>
+ * Each subscriber has its own queue, drained by a small worker pool, so a slow subscriber delays neither
+ * the writing transaction nor the other subscribers. A subscriber that falls further behind than the
+ * replay buffer is disconnected; when it reconnects, it resumes from the buffer or resets.
+ * </p>
+ * <p>
+ * A realm's feed is dropped once it has neither subscribers nor buffered changes, so subscribing to realms
+ * that never change doesn't leave anything behind. A later feed of the same realm starts numbering after
+ * the last sequence number of any dropped feed, so that positions handed out before never point into it.
+ * </p>
+ */
+@Slf4j
+@Component
+public class ServiceInstanceChangeFeed {
+
+    /**
+     * Receives the changes of one realm. Calls to a subscriber never overlap, and changes arrive in
+     * sequence order. If a method throws, the subscription is cancelled.
+     */
+    public interface Subscriber {
+
+        void onChange(String eventId, ServiceInstanceChange change) throws Exception;
+
+        /**
+         * Changes may have been missed, so the subscriber should reload the realm. Changes after the
+         * given position follow.
+         */
+        void onReset(String eventId, long sequence) throws Exception;
+
+        /**
+         * Called when there have been no changes for a while, so that idle connections stay open.
+         */
+        void onHeartbeat() throws Exception;
+
+        /**
+         * Called once the subscription has ended for any reason. No other calls follow.
+         */
+        void onClose();
+    }
+
+    public interface Subscription {
+        void cancel();
+    }
+
+    private static final Object HEARTBEAT = new Object();
+
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final int replayBufferSize;
+    private final ConcurrentMap<String, RealmFeed> realms = new ConcurrentHashMap<>();
+    // the highest sequence number of any dropped feed
+    private final AtomicLong droppedSequence = new AtomicLong();
+    private final ExecutorService workers;
+    private final ScheduledExecutorService heartbeats;
+
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final Counter published;
+    private final Counter disconnectedSlowSubscribers;
+
+    @Inject
+    public ServiceInstanceChangeFeed(@Value("${app.changes.replay-buffer-size:1000}") int replayBufferSize,
+                                     @Value("${app.changes.heartbeat-seconds:30}") long heartbeatSeconds,
+                                     @Value("${app.changes.delivery-threads:4}") int deliveryThreads,
+                                     MeterRegistry meterRegistry) {
+        this.replayBufferSize = replayBufferSize;
+        this.workers = Executors.newFixedThreadPool(deliveryThreads, new CustomizableThreadFactory("change-feed-"));
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("change-feed-heartbeat-"));
+        heartbeats.scheduleAtFixedRate(this::sendHeartbeats, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+
+        this.published = Counter.builder("changes.published")
+                .description("Committed service instance changes published on the change feed")
+                .register(meterRegistry);
+        this.disconnectedSlowSubscribers = Counter.builder("changes.subscribers.disconnected.slow")
+                .description("Change feed subscribers disconnected for falling behind the replay buffer")
+                .register(meterRegistry);
+        Gauge.builder("changes.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open change feed subscriptions")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts sending the realm's changes to the given subscriber.
+     *
+     * @param lastEventId the event ID of the last change the subscriber has seen, or {@code null} if it has
+     *                    none. Unless the changes after it can be replayed, the subscriber is reset first.
+     */
+    public Subscription subscribe(String realm, @Nullable String lastEventId, Subscriber subscriber) {
+        RealmFeed feed = lockableFeed(realm);
+        synchronized (feed) {
+            if (feed.dropped) {
+                return subscribe(realm, lastEventId, subscriber);
+            }
+            // registered under the lock so that nothing published in between is missed or sent twice
+            Delivery delivery = new Delivery(feed, subscriber);
+            subscriberCount.incrementAndGet();
+            Long lastSeen = parseSequence(lastEventId);
+            ServiceInstanceChange oldest = feed.buffer.peekFirst();
+            long oldestBuffered = oldest == null ? feed.sequence + 1 : oldest.getSequence();
+            if (lastSeen == null || lastSeen > feed.sequence || lastSeen < oldestBuffered - 1) {
+                delivery.enqueue(new Reset(feed.sequence));
+            } else {
+                for (ServiceInstanceChange change : feed.buffer) {
+                    if (change.getSequence() > lastSeen) {
+                        delivery.enqueue(change);
+                    }
+                }
+            }
+            feed.deliveries.add(delivery);
+            return delivery;
+        }
+    }
+
+    // without a transaction, the change was relayed from another node and has already been committed
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onServiceInstanceChange(ServiceInstanceChangeEvent event) {
+        RealmFeed feed = lockableFeed(event.getRealm());
+        synchronized (feed) {
+            if (feed.dropped) {
+                onServiceInstanceChange(event);
+                return;
+            }
+            ServiceInstanceChange change = new ServiceInstanceChange(
+                    ++feed.sequence,
+                    event.getOperation().name().toLowerCase(Locale.ROOT),
+                    event.getServiceInstanceId(),
+                    event.getServiceInstance());
+            feed.buffer.addLast(change);
+            if (feed.buffer.size() > replayBufferSize) {
+                feed.buffer.removeFirst();
+            }
+            feed.deliveries.forEach(delivery -> delivery.enqueue(change));
+        }
+        published.increment();
+    }
+
+    /**
+     * Resets every subscriber, and makes every position handed out so far unusable for resuming, because
+     * changes from other nodes may have been missed. This uses up a sequence number without a change.
+     */
+    @EventListener
+    public void onResync(ServiceInstanceResyncEvent event) {
+        realms.values().forEach(feed -> {
+            synchronized (feed) {
+                feed.buffer.clear();
+                Reset reset = new Reset(++feed.sequence);
+                feed.deliveries.forEach(delivery -> delivery.enqueue(reset));
+                dropIfUnused(feed);
+            }
+        });
+    }
+
+    /**
+     * Returns the given realm's feed, creating it if there is none. Callers must check under the feed's
+     * lock that it hasn't been dropped in the meantime, and start over if it has.
+     */
+    private RealmFeed lockableFeed(String realm) {
+        return realms.computeIfAbsent(realm, r -> new RealmFeed(r, droppedSequence.get()));
+    }
+
+    // called with the feed's lock held
+    private void dropIfUnused(RealmFeed feed) {
+        if (feed.deliveries.isEmpty() && feed.buffer.isEmpty()) {
+            // before the feed is removed, so that its successor starts after it
+            droppedSequence.accumulateAndGet(feed.sequence, Math::max);
+            feed.dropped = true;
+            realms.remove(feed.realm, feed);
+        }
+    }
+
+    int realmCount() {
+        return realms.size();
+    }
+
+    private String eventId(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    private Long parseSequence(@Nullable String eventId) {
+        if (eventId == null || !eventId.startsWith(epoch + "-")) {
+            return null;
+        }
+        try {
+            return Long.parseLong(eventId.substring(epoch.length() + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void sendHeartbeats() {
+        realms.values().forEach(feed -> feed.deliveries.forEach(Delivery::enqueueHeartbeat));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeats.shutdownNow();
+        realms.values().forEach(feed -> feed.deliveries.forEach(Delivery::cancel));
+        workers.shutdown();
+    }
+
+    private static class RealmFeed {
+        private final String realm;
+        // guarded by the RealmFeed's monitor
+        private long sequence;
+        private boolean dropped;
+        private final Deque<ServiceInstanceChange> buffer = new ArrayDeque<>();
+        private final Set<Delivery> deliveries = ConcurrentHashMap.newKeySet();
+
+        RealmFeed(String realm, long sequence) {
+            this.realm = realm;
+            this.sequence = sequence;
+        }
+    }
+
+    @lombok.Value
+    private static class Reset {
+        long sequence;
+    }
+
+    /**
+     * The queue of one subscriber. At most one worker drains it at a time, which keeps the calls to the
+     * subscriber in order and never overlapping.
+     */
+    private class Delivery implements Subscription, Runnable {
+
+        private final RealmFeed feed;
+        private final Subscriber subscriber;
+        private final Queue<Object> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final AtomicBoolean closeDelivered = new AtomicBoolean();
+
+        Delivery(RealmFeed feed, Subscriber subscriber) {
+            this.feed = feed;
+            this.subscriber = subscriber;
+        }
+
+        void enqueue(Object item) {
+            if (cancelled.get()) {
+                return;
+            }
+            // a full replay plus a reset always fits
+            if (pendingCount.incrementAndGet() > replayBufferSize + 1) {
+                disconnectedSlowSubscribers.increment();
+                log.info("Disconnecting change feed subscriber that fell more than {} changes behind", replayBufferSize);
+                cancel();
+                return;
+            }
+            pending.add(item);
+            schedule();
+        }
+
+        void enqueueHeartbeat() {
+            if (pendingCount.get() == 0) {
+                enqueue(HEARTBEAT);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                synchronized (feed) {
+                    feed.deliveries.remove(this);
+                    dropIfUnused(feed);
+                }
+                subscriberCount.decrementAndGet();
+                // the worker tells the subscriber, so that onClose doesn't overlap with another call
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    cancelled.set(true);
+                    close();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Object item;
+                while (!cancelled.get() && (item = pending.poll()) != null) {
+                    pendingCount.decrementAndGet();
+                    deliver(item);
+                }
+            } catch (Exception e) {
+                log.debug("Cancelling change feed subscription after failed delivery: {}", e.toString());
+                cancel();
+            } finally {
+                scheduled.set(false);
+            }
+
+            if (cancelled.get()) {
+                close();
+            } else if (!pending.isEmpty()) {
+                // enqueued after the loop above gave up, but before the scheduled flag was cleared
+                schedule();
+            }
+        }
+
+        private void deliver(Object item) throws Exception {
+            if (item == HEARTBEAT) {
+                subscriber.onHeartbeat();
+            } else if (item instanceof Reset) {
+                long sequence = ((Reset) item).getSequence();
+                subscriber.onReset(eventId(sequence), sequence);
+            } else {
+                ServiceInstanceChange change = (ServiceInstanceChange) item;
+                subscriber.onChange(eventId(change.getSequence()), change);
+            }
+        }
+
+        private void close() {
+            if (closeDelivered.compareAndSet(false, true)) {
+                pending.clear();
+                try {
+                    subscriber.onClose();
+                } catch (RuntimeException e) {
+                    log.debug("Ignoring failure to close change feed subscriber: {}", e.toString());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.dnastack.discovery.registry.service;
+
+import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import com.dnastack.discovery.registry.repository.Storage;
+import com.dnastack.discovery.registry.repository.StorageSession;
+import com.dnastack.discovery.registry.service.ServiceInstanceChangeEvent.Operation;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Keeps the in-process state of registry nodes that share a database consistent, by relaying every
+ * committed change to the other nodes over Postgres LISTEN/NOTIFY.
+ * <p>
+ * Writers call {@link #send} inside their transaction, so a notification goes out if and only if the
+ * change commits. Each node listens on a dedicated connection and republishes the changes made by other
+ * nodes as {@link ServiceInstanceChangeEvent}s, which the cache and the change feed handle just like
+ * their own node's changes. Created and updated instances are read back from the database first, so they
+ * reflect the latest committed state rather than necessarily the one that was written.
+ * </p>
+ * <p>
+ * Notifications sent while a node isn't listening are lost, so whenever the listening connection is
+ * (re)established, and whenever a notification can't be handled, a {@link ServiceInstanceResyncEvent}
+ * tells the node to discard everything it derived from the database. The same happens when an organization
+ * is renamed or deleted, which the service itself never does: a trigger in the database then sends a
+ * notification naming the organization.
+ * </p>
+ */
+@Slf4j
+@Component
+public class ServiceInstanceChangeRelay {
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Notification {
+        String node;
+        String realm;
+        String id;
+        Operation op;
+        // set instead of id and op by the trigger on the organization table
+        String organization;
+    }
+
+    private final String nodeId = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final Storage storage;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DataSourceProperties dataSourceProperties;
+    private final ObjectWriter notificationWriter;
+    private final ObjectReader notificationReader;
+    private final boolean enabled;
+    private final String channel;
+    private final int checkIntervalMillis;
+    private final long reconnectDelayMillis;
+
+    private final Counter received;
+    private final Counter resyncs;
+
+    private volatile boolean running;
+    private Thread listener;
+
+    @Inject
+    public ServiceInstanceChangeRelay(Storage storage,
+                                      ApplicationEventPublisher eventPublisher,
+                                      DataSourceProperties dataSourceProperties,
+                                      ObjectMapper objectMapper,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${app.changes.relay.enabled:true}") boolean enabled,
+                                      @Value("${app.changes.relay.channel:service_instance_changes}") String channel,
+                                      @Value("${app.changes.relay.check-interval-millis:10000}") int checkIntervalMillis,
+                                      @Value("${app.changes.relay.reconnect-delay-millis:5000}") long reconnectDelayMillis) {
+        this.storage = storage;
+        this.eventPublisher = eventPublisher;
+        this.dataSourceProperties = dataSourceProperties;
+        this.notificationWriter = objectMapper.writerFor(Notification.class);
+        this.notificationReader = objectMapper.readerFor(Notification.class);
+        this.enabled = enabled;
+        this.channel = channel;
+        this.checkIntervalMillis = checkIntervalMillis;
+        this.reconnectDelayMillis = reconnectDelayMillis;
+
+        this.received = Counter.builder("changes.relay.received")
+                .description("Service instance changes received from other registry nodes")
+                .register(meterRegistry);
+        this.resyncs = Counter.builder("changes.relay.resyncs")
+                .description("Full resynchronizations after changes from other registry nodes may have been missed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Tells the other nodes about changes to the given service instances once the transaction the given
+     * session takes part in commits. All IDs go out in a single statement.
+     */
+    public void send(StorageSession session, String realm, Operation operation, Collection<String> serviceInstanceIds) {
+        if (!enabled || serviceInstanceIds.isEmpty()) {
+            return;
+        }
+        String[] payloads = serviceInstanceIds.stream()
+                .map(id -> toPayload(new Notification(nodeId, realm, id, operation, null)))
+                .toArray(String[]::new);
+        session.changeNotifications().notifyAll(channel, payloads);
+    }
+
+    private String toPayload(Notification notification) {
+        try {
+            return notificationWriter.writeValueAsString(notification);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("Not relaying service instance changes between registry nodes");
+            return;
+        }
+        running = true;
+        listener = new Thread(this::listen, "change-relay");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+            listener.join(checkIntervalMillis);
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = openConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN \"" + channel.replace("\"", "\"\"") + "\"");
+                }
+                log.info("Listening for service instance changes from other registry nodes on channel {}", channel);
+                // whatever was committed before LISTEN took effect was never relayed to us
+                resync();
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(checkIntervalMillis);
+                    if (notifications == null || notifications.length == 0) {
+                        // waiting doesn't notice a dead connection, but a query will
+                        try (Statement statement = connection.createStatement()) {
+                            statement.execute("SELECT 1");
+                        }
+                    } else {
+                        relay(notifications);
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (running) {
+                    log.warn("Lost connection for relaying service instance changes, reconnecting in {} ms: {}",
+                            reconnectDelayMillis, e.toString());
+                    try {
+                        Thread.sleep(reconnectDelayMillis);
+                    } catch (InterruptedException interrupted) {
+                        // stopping
+                    }
+                }
+            }
+        }
+    }
+
+    private Connection openConnection() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", dataSourceProperties.determineUsername());
+        properties.setProperty("password", dataSourceProperties.determinePassword());
+        properties.setProperty("tcpKeepAlive", "true");
+        properties.setProperty("ApplicationName", "service-registry change relay");
+        // not taken from the pool, since it's held for as long as the node runs
+        return DriverManager.getConnection(dataSourceProperties.determineUrl(), properties);
+    }
+
+    private void relay(PGNotification[] notifications) {
+        try {
+            List<Notification> changes = new ArrayList<>();
+            for (PGNotification notification : notifications) {
+                Notification change = notificationReader.readValue(notification.getParameter());
+                if (change.getOrganization() != null) {
+                    // renaming or deleting it changed the instances that belong to it, without notifications for them
+                    log.info("Organization {} in realm {} was renamed or deleted, resynchronizing", change.getOrganization(), change.getRealm());
+                    resync();
+                    return;
+                }
+                // this node already handled its own changes when they committed
+                if (!nodeId.equals(change.getNode())) {
+                    changes.add(change);
+                }
+            }
+            if (changes.isEmpty()) {
+                return;
+            }
+
+            Map<String, List<String>> idsToReadByRealm = new LinkedHashMap<>();
+            changes.stream()
+                    .filter(change -> change.getOp() != Operation.DELETED)
+                    .forEach(change -> idsToReadByRealm.computeIfAbsent(change.getRealm(), r -> new ArrayList<>()).add(change.getId()));
+            Map<String, Map<String, ServiceInstanceModel>> instancesByRealm = new HashMap<>();
+            idsToReadByRealm.forEach((realm, ids) -> instancesByRealm.put(realm, storage.withSession(session ->
+                    session.serviceInstances().findAllById(realm, ids).stream()
+                            .collect(toMap(ServiceInstanceModel::getId, si -> si)))));
+
+            for (Notification change : changes) {
+                // null if the instance was deleted in the meantime; its deletion follows
+                ServiceInstanceModel instance = instancesByRealm.getOrDefault(change.getRealm(), Map.of()).get(change.getId());
+                eventPublisher.publishEvent(new ServiceInstanceChangeEvent(
+                        change.getRealm(), change.getId(), change.getOp(), instance));
+            }
+            received.increment(changes.size());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to relay service instance changes from other registry nodes, resynchronizing: {}", e.toString());
+            resync();
+        }
+    }
+
+    private void resync() {
+        resyncs.increment();
+        eventPublisher.publishEvent(new ServiceInstanceResyncEvent());
+    }
+}
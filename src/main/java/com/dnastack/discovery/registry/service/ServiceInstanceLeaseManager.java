@@ -0,0 +1,185 @@
+package com.dnastack.discovery.registry.service;
+
+import com.dnastack.discovery.registry.model.LeaseRenewal;
+import com.dnastack.discovery.registry.model.ServiceInstanceKey;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the leases of service instances registered with a TTL.
+ * <p>
+ * Heartbeats only record the time of the latest renewal in memory. The pending renewals are written to the
+ * database in one batch every {@code app.leases.flush-interval-millis}, so that a heartbeat costs next to
+ * nothing no matter how many instances send them. A heartbeat for an instance that turns out to have no
+ * lease, because it expired, was deleted or never had one, is only noticed when the batch is written; from
+ * then on, heartbeats for that instance are rejected, so that it registers again.
+ * </p>
+ * <p>
+ * A sweeper deletes expired leases in bulk every {@code app.leases.sweep-interval-seconds}. It only
+ * deletes leases that ran out more than two flush intervals ago, so that a heartbeat another node has
+ * received but not written yet still counts.
+ * </p>
+ */
+@Slf4j
+@Component
+public class ServiceInstanceLeaseManager {
+
+    private final ServiceInstanceService service;
+    private final int minTtlSeconds;
+    private final int maxTtlSeconds;
+    private final long flushIntervalMillis;
+    private final int sweepBatchSize;
+    private final ConcurrentMap<ServiceInstanceKey, ZonedDateTime> pendingRenewals = new ConcurrentHashMap<>();
+    private final Cache<ServiceInstanceKey, Boolean> unknownLeases;
+    // a single thread, so that flushes and sweeps never overlap
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong activeLeases = new AtomicLong();
+    private final Counter heartbeats;
+    private final Counter expired;
+    private final Timer flushes;
+    private final Timer sweeps;
+
+    @Inject
+    public ServiceInstanceLeaseManager(ServiceInstanceService service,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${app.leases.min-ttl-seconds:5}") int minTtlSeconds,
+                                       @Value("${app.leases.max-ttl-seconds:86400}") int maxTtlSeconds,
+                                       @Value("${app.leases.flush-interval-millis:1000}") long flushIntervalMillis,
+                                       @Value("${app.leases.sweep-interval-seconds:10}") long sweepIntervalSeconds,
+                                       @Value("${app.leases.sweep-batch-size:1000}") int sweepBatchSize) {
+        this.service = service;
+        this.minTtlSeconds = minTtlSeconds;
+        this.maxTtlSeconds = maxTtlSeconds;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.sweepBatchSize = sweepBatchSize;
+        this.unknownLeases = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(maxTtlSeconds, TimeUnit.SECONDS)
+                .build();
+
+        this.heartbeats = Counter.builder("leases.heartbeats")
+                .description("Lease renewals received")
+                .register(meterRegistry);
+        this.expired = Counter.builder("leases.expired")
+                .description("Service instances deleted because their lease ran out")
+                .register(meterRegistry);
+        this.flushes = Timer.builder("leases.flush")
+                .description("Time taken to write a batch of lease renewals")
+                .register(meterRegistry);
+        this.sweeps = Timer.builder("leases.sweep")
+                .description("Time taken to delete expired leases")
+                .register(meterRegistry);
+        Gauge.builder("leases.active", activeLeases, AtomicLong::get)
+                .description("Service instances on a lease, as of the last sweep")
+                .register(meterRegistry);
+        Gauge.builder("leases.renewals.pending", pendingRenewals, ConcurrentMap::size)
+                .description("Lease renewals received but not yet written")
+                .register(meterRegistry);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("leases-"));
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::sweep, sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Checks a requested lease length.
+     *
+     * @throws IllegalArgumentException if the TTL is out of the configured range
+     */
+    public void validateTtl(@Nullable Integer ttlSeconds) {
+        if (ttlSeconds != null && (ttlSeconds < minTtlSeconds || ttlSeconds > maxTtlSeconds)) {
+            throw new IllegalArgumentException("Lease TTL must be between " + minTtlSeconds + " and " + maxTtlSeconds + " seconds");
+        }
+    }
+
+    /**
+     * Renews the lease of the given service instance as of now.
+     *
+     * @return false if the instance is known to have no lease
+     */
+    public boolean heartbeat(String realm, String id) {
+        ServiceInstanceKey key = new ServiceInstanceKey(realm, id);
+        if (unknownLeases.getIfPresent(key) != null) {
+            return false;
+        }
+        pendingRenewals.put(key, ZonedDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.MICROS));
+        heartbeats.increment();
+        return true;
+    }
+
+    private void flush() {
+        if (pendingRenewals.isEmpty()) {
+            return;
+        }
+        List<LeaseRenewal> renewals = new ArrayList<>();
+        for (ServiceInstanceKey key : pendingRenewals.keySet()) {
+            // removes whatever the latest heartbeat put there, so none gets lost
+            ZonedDateTime renewedAt = pendingRenewals.remove(key);
+            if (renewedAt != null) {
+                renewals.add(new LeaseRenewal(key.getRealm(), key.getId(), renewedAt));
+            }
+        }
+
+        try {
+            List<ServiceInstanceKey> notRenewed = flushes.recordCallable(() -> service.renewLeases(renewals));
+            notRenewed.forEach(key -> unknownLeases.put(key, Boolean.TRUE));
+            log.debug("Renewed {} leases", renewals.size() - notRenewed.size());
+        } catch (Exception e) {
+            log.warn("Failed to renew {} leases, retrying with the next batch: {}", renewals.size(), e.toString());
+            renewals.forEach(renewal -> pendingRenewals.merge(
+                    new ServiceInstanceKey(renewal.getRealm(), renewal.getId()),
+                    renewal.getRenewedAt(),
+                    (pending, failed) -> pending.isAfter(failed) ? pending : failed));
+        }
+    }
+
+    private void sweep() {
+        try {
+            sweeps.record(() -> {
+                // this node's own renewals shouldn't have to rely on the grace period
+                flush();
+                ZonedDateTime cutoff = ZonedDateTime.now(ZoneOffset.UTC).minus(2 * flushIntervalMillis, ChronoUnit.MILLIS);
+                int swept;
+                do {
+                    swept = service.expireLeases(cutoff, sweepBatchSize).size();
+                    expired.increment(swept);
+                } while (swept == sweepBatchSize);
+                activeLeases.set(service.countLeases());
+            });
+        } catch (RuntimeException e) {
+            // the next sweep will catch up
+            log.warn("Failed to expire leases: {}", e.toString());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        // don't let leases run out just because this node went away
+        flush();
+    }
+}
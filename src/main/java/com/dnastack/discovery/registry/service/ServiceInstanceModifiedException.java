@@ -0,0 +1,22 @@
+package com.dnastack.discovery.registry.service;
+
+import com.dnastack.discovery.registry.controller.exception.HasServiceInstanceId;
+
+/**
+ * Thrown when a conditional write finds that the service instance has changed since the version the
+ * client based its request on.
+ */
+public class ServiceInstanceModifiedException extends RuntimeException implements HasServiceInstanceId {
+
+    private final String serviceInstanceId;
+
+    public ServiceInstanceModifiedException(String serviceInstanceId, String message) {
+        super(message);
+        this.serviceInstanceId = serviceInstanceId;
+    }
+
+    @Override
+    public String getServiceInstanceId() {
+        return serviceInstanceId;
+    }
+}
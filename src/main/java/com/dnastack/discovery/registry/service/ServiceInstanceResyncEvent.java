@@ -0,0 +1,9 @@
+package com.dnastack.discovery.registry.service;
+
+/**
+ * Published by {@link ServiceInstanceChangeRelay} when changes committed by other nodes may have been
+ * missed, for example while its connection to the database was down. Anything this node derives from
+ * the database has to be considered stale.
+ */
+public class ServiceInstanceResyncEvent {
+}
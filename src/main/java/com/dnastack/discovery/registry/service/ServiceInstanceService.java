@@ -1,36 +1,89 @@
 package com.dnastack.discovery.registry.service;
 
+import com.dnastack.discovery.registry.model.BatchRegistrationResult;
+import com.dnastack.discovery.registry.model.HealthCheck;
+import com.dnastack.discovery.registry.model.HealthCheckResult;
+import com.dnastack.discovery.registry.model.LeaseRenewal;
 import com.dnastack.discovery.registry.model.OrganizationModel;
+import com.dnastack.discovery.registry.model.ServiceInstanceDelta;
+import com.dnastack.discovery.registry.model.ServiceInstanceFilter;
+import com.dnastack.discovery.registry.model.ServiceInstanceKey;
 import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import com.dnastack.discovery.registry.model.ServiceInstancePage;
 import com.dnastack.discovery.registry.model.ServiceType;
-import com.dnastack.discovery.registry.repository.OrganizationRepository;
-import com.dnastack.discovery.registry.repository.ServiceInstanceRepository;
+import com.dnastack.discovery.registry.repository.ServiceInstanceStore;
+import com.dnastack.discovery.registry.repository.Storage;
+import com.dnastack.discovery.registry.repository.StorageSession;
+import com.dnastack.discovery.registry.service.ServiceInstanceChangeEvent.Operation;
 import lombok.extern.slf4j.Slf4j;
-import org.jdbi.v3.core.Handle;
-import org.jdbi.v3.core.Jdbi;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.BindException;
+import org.springframework.validation.FieldError;
 import org.springframework.validation.ValidationUtils;
 
 import javax.inject.Inject;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.StringJoiner;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Reads and writes service instances. Methods run in read-only transactions at READ COMMITTED unless they are
+ * annotated otherwise. The ones that write run at READ COMMITTED as well, and rely on unique constraints and
+ * row locks rather than the isolation level: duplicates are detected with {@code INSERT ... ON CONFLICT},
+ * and instances that are read in order to be written are locked first.
+ */
 @Slf4j
 @Service
-@Transactional(isolation = Isolation.SERIALIZABLE, propagation = Propagation.REQUIRES_NEW)
+@Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRES_NEW, readOnly = true)
 public class ServiceInstanceService {
 
-    private final Jdbi jdbi;
+    private final Storage storage;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ServiceInstanceChangeRelay changeRelay;
+    private final OrganizationIdCache organizationIdCache;
+    private final Duration tombstoneRetention;
 
     @Inject
-    public ServiceInstanceService(Jdbi jdbi) {
-        this.jdbi = jdbi;
+    public ServiceInstanceService(Storage storage,
+                                  ApplicationEventPublisher eventPublisher,
+                                  ServiceInstanceChangeRelay changeRelay,
+                                  OrganizationIdCache organizationIdCache,
+                                  @Value("${app.sync.tombstone-retention-days:30}") int tombstoneRetentionDays) {
+        this.storage = storage;
+        this.eventPublisher = eventPublisher;
+        this.changeRelay = changeRelay;
+        this.organizationIdCache = organizationIdCache;
+        this.tombstoneRetention = Duration.ofDays(tombstoneRetentionDays);
     }
 
     private void validate(ServiceInstanceModel si) throws BindException {
@@ -40,6 +93,10 @@ public class ServiceInstanceService {
         ValidationUtils.rejectIfEmptyOrWhitespace(errors, "name", "required field");
         ValidationUtils.rejectIfEmptyOrWhitespace(errors, "type", "required field");
         ValidationUtils.rejectIfEmptyOrWhitespace(errors, "organization", "required field");
+        if (!errors.hasFieldErrors("organization")) {
+            // organizations are looked up and created by name
+            ValidationUtils.rejectIfEmptyOrWhitespace(errors, "organization.name", "required field");
+        }
         ValidationUtils.rejectIfEmptyOrWhitespace(errors, "version", "required field");
 
         if (errors.hasErrors()) {
@@ -47,106 +104,556 @@ public class ServiceInstanceService {
         }
     }
 
+    /**
+     * Registers a new service instance.
+     *
+     * @param leaseTtlSeconds if not null, the instance is deleted once it hasn't been renewed for this long
+     * @throws ServiceInstanceExistsException if the realm already has an instance with the same name and type
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRES_NEW)
     public ServiceInstanceModel registerInstance(
             String realm,
-            ServiceInstanceModel newServiceInstance) throws BindException {
+            ServiceInstanceModel newServiceInstance,
+            @Nullable Integer leaseTtlSeconds) throws BindException {
         validate(newServiceInstance);
-        return jdbi.withHandle(handle -> {
-            ServiceInstanceRepository serviceRepository = handle.attach(ServiceInstanceRepository.class);
-
-            Optional<ServiceInstanceModel> existingInstance =
-                    serviceRepository.findByNameAndType(
-                            realm,
-                            newServiceInstance.getName(),
-                            newServiceInstance.getType().toString());
-
-            if (existingInstance.isPresent()) {
-                throw new ServiceInstanceExistsException(
-                        existingInstance.get().getId(),
-                        "Service instance (ID " + existingInstance.get().getId() + ")" +
-                                " with given name and type already exists");
-            }
-
-            createOrResolveOrganization(handle, realm, newServiceInstance);
+        return storage.withSession(session -> {
+            ServiceInstanceStore serviceRepository = session.serviceInstances();
+            createOrResolveOrganization(session, realm, newServiceInstance);
 
-            ZonedDateTime now = ZonedDateTime.now();
+            ZonedDateTime now = now();
             newServiceInstance.setId(UUID.randomUUID().toString());
             newServiceInstance.setCreatedAt(now);
             newServiceInstance.setUpdatedAt(now);
 
-            serviceRepository.save(realm, newServiceInstance.getOrganization().getId(), newServiceInstance);
+            if (!serviceRepository.saveIfAbsent(realm, newServiceInstance.getOrganization().getId(), newServiceInstance)) {
+                // rolls back the organization too, if it was created above
+                String existingId = serviceRepository.findByNameAndType(
+                        realm,
+                        newServiceInstance.getName(),
+                        newServiceInstance.getType().toString())
+                        .map(ServiceInstanceModel::getId)
+                        .orElse(null);
+                throw new ServiceInstanceExistsException(existingId, alreadyExists(existingId));
+            }
+            if (leaseTtlSeconds != null) {
+                serviceRepository.startLeases(realm, List.of(newServiceInstance.getId()), leaseTtlSeconds, now.plusSeconds(leaseTtlSeconds));
+            }
+            publishChange(session, realm, newServiceInstance.getId(), Operation.CREATED, newServiceInstance);
             return newServiceInstance;
         });
     }
 
+    /**
+     * Registers many service instances in one transaction. Every entry is validated before the database
+     * is touched, existing instances and organizations are looked up with one query each, and the new
+     * organizations and instances are inserted as JDBC batches. Entries that are invalid or that conflict
+     * with an existing instance (or with an earlier entry of the same batch) are reported in the result
+     * and do not prevent the remaining entries from being registered.
+     *
+     * @param leaseTtlSeconds if not null, every registered instance is put on a lease of this length
+     * @return one result per entry, in the same order as the given instances
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRES_NEW)
+    public List<BatchRegistrationResult> registerInstances(
+            String realm,
+            List<ServiceInstanceModel> newServiceInstances,
+            @Nullable Integer leaseTtlSeconds) {
+        BatchRegistrationResult[] results = new BatchRegistrationResult[newServiceInstances.size()];
+
+        // index of each valid entry that is the first of the batch with its name and type
+        Map<String, Integer> candidates = new LinkedHashMap<>();
+        for (int i = 0; i < newServiceInstances.size(); i++) {
+            ServiceInstanceModel si = newServiceInstances.get(i);
+            try {
+                validate(si);
+            } catch (BindException e) {
+                String fieldErrors = e.getFieldErrors().stream().map(FieldError::toString).collect(joining("; "));
+                results[i] = batchResult(HttpStatus.BAD_REQUEST, fieldErrors, null);
+                continue;
+            }
+            Integer earlierEntry = candidates.putIfAbsent(nameAndType(si.getName(), si.getType()), i);
+            if (earlierEntry != null) {
+                results[i] = batchResult(HttpStatus.CONFLICT,
+                        "Service instance with given name and type is also at index " + earlierEntry + " of this batch",
+                        null);
+            }
+        }
+
+        if (!candidates.isEmpty()) {
+            storage.useSession(session -> {
+                ServiceInstanceStore serviceRepository = session.serviceInstances();
+
+                Map<String, String> existingIds = serviceRepository.findAllByName(
+                        realm,
+                        candidates.values().stream().map(i -> newServiceInstances.get(i).getName()).collect(toSet()))
+                        .stream()
+                        .collect(toMap(si -> nameAndType(si.getName(), si.getType()), ServiceInstanceModel::getId, (a, b) -> a));
+
+                List<ServiceInstanceModel> toInsert = new ArrayList<>();
+                ZonedDateTime now = now();
+                candidates.forEach((key, i) -> {
+                    String existingId = existingIds.get(key);
+                    if (existingId != null) {
+                        results[i] = batchResult(HttpStatus.CONFLICT, alreadyExists(existingId), existingId);
+                        return;
+                    }
+                    ServiceInstanceModel si = newServiceInstances.get(i);
+                    si.setId(UUID.randomUUID().toString());
+                    si.setCreatedAt(now);
+                    si.setUpdatedAt(now);
+                    toInsert.add(si);
+                    results[i] = batchResult(HttpStatus.CREATED, null, si.getId());
+                });
+
+                if (toInsert.isEmpty()) {
+                    return;
+                }
+                createOrResolveOrganizations(session, realm, toInsert);
+                int[] inserted = serviceRepository.saveAllIfAbsent(realm, toInsert);
+                List<ServiceInstanceModel> conflicting = new ArrayList<>();
+                for (int i = 0; i < inserted.length; i++) {
+                    if (inserted[i] == 0) {
+                        conflicting.add(toInsert.get(i));
+                    }
+                }
+                if (!conflicting.isEmpty()) {
+                    // registered by somebody else since the lookup above
+                    Map<String, String> conflictingIds = serviceRepository.findAllByName(
+                            realm,
+                            conflicting.stream().map(ServiceInstanceModel::getName).collect(toSet()))
+                            .stream()
+                            .collect(toMap(si -> nameAndType(si.getName(), si.getType()), ServiceInstanceModel::getId, (a, b) -> a));
+                    for (ServiceInstanceModel si : conflicting) {
+                        String key = nameAndType(si.getName(), si.getType());
+                        String existingId = conflictingIds.get(key);
+                        results[candidates.get(key)] = batchResult(HttpStatus.CONFLICT, alreadyExists(existingId), existingId);
+                    }
+                    toInsert.removeAll(conflicting);
+                    if (toInsert.isEmpty()) {
+                        return;
+                    }
+                }
+                List<String> insertedIds = toInsert.stream().map(ServiceInstanceModel::getId).collect(toList());
+                if (leaseTtlSeconds != null) {
+                    serviceRepository.startLeases(realm, insertedIds, leaseTtlSeconds, now.plusSeconds(leaseTtlSeconds));
+                }
+                log.debug("Registered {} service instances in realm {} as a batch", toInsert.size(), realm);
+                toInsert.forEach(si -> eventPublisher.publishEvent(
+                        new ServiceInstanceChangeEvent(realm, si.getId(), Operation.CREATED, si)));
+                changeRelay.send(session, realm, Operation.CREATED, insertedIds);
+            });
+        }
+
+        return List.of(results);
+    }
+
+    private static String nameAndType(String name, ServiceType type) {
+        return name + "\n" + type;
+    }
+
+    private static String alreadyExists(@Nullable String existingId) {
+        return existingId == null
+                ? "Service instance with given name and type already exists"
+                : "Service instance (ID " + existingId + ") with given name and type already exists";
+    }
+
+    private static BatchRegistrationResult batchResult(HttpStatus status, String detail, String serviceInstanceId) {
+        return BatchRegistrationResult.builder()
+                .status(status.value())
+                .title(status.getReasonPhrase())
+                .detail(detail)
+                .serviceInstanceId(serviceInstanceId)
+                .build();
+    }
+
+    /**
+     * Batch counterpart of {@link #createOrResolveOrganization(StorageSession, String, ServiceInstanceModel)}:
+     * resolves the organizations that aren't cached with a single batch of upserts. Instances naming the
+     * same new organization share a single new row, and so do instances naming an organization that somebody
+     * else creates at the same time.
+     */
+    private void createOrResolveOrganizations(StorageSession session, String realm, List<ServiceInstanceModel> serviceInstances) {
+        Map<String, String> organizationIds = new HashMap<>();
+        // sorted, so that concurrent batches lock the organizations they share in the same order
+        SortedMap<String, OrganizationModel> uncached = new TreeMap<>();
+        for (ServiceInstanceModel si : serviceInstances) {
+            OrganizationModel org = si.getOrganization();
+            String id = organizationIds.computeIfAbsent(org.getName(), name -> organizationIdCache.get(realm, name));
+            if (id == null) {
+                uncached.putIfAbsent(org.getName(), org);
+            }
+        }
+
+        if (!uncached.isEmpty()) {
+            uncached.values().forEach(org -> org.setId(UUID.randomUUID().toString()));
+            List<String> ids = session.organizations().upsertAll(realm, uncached.values());
+            log.debug("Resolved {} uncached organizations for this batch", ids.size());
+            int i = 0;
+            for (String name : uncached.keySet()) {
+                String id = ids.get(i++);
+                organizationIds.put(name, id);
+                organizationIdCache.putAfterCommit(realm, name, id);
+            }
+        }
+        serviceInstances.forEach(si -> si.getOrganization().setId(organizationIds.get(si.getOrganization().getName())));
+    }
+
     /**
      * Sets the {@code id} attribute of the given service's organization by setting it to the ID of
      * an existing organization in the same realm with the same name, or by creating a new organization
-     * in the given realm and setting its ID.
+     * in the given realm and setting its ID. If somebody else creates the same organization at the same time,
+     * theirs is used. Known organizations are looked up in {@link OrganizationIdCache} rather than the
+     * database.
      *
-     * @param handle an active JDBI handle
+     * @param session an open storage session
      * @param realm the realm the service instance is in
      * @param serviceInstance the service instance whose organization should be updated.
      */
-    private void createOrResolveOrganization(Handle handle, String realm, ServiceInstanceModel serviceInstance) {
-        OrganizationRepository organizationRepository = handle.attach(OrganizationRepository.class);
-        final Optional<String> organizationId = organizationRepository.findIdForName(
-                realm,
-                serviceInstance.getOrganization().getName());
-
-        if (organizationId.isEmpty()) {
-            OrganizationModel org = serviceInstance.getOrganization();
+    private void createOrResolveOrganization(StorageSession session, String realm, ServiceInstanceModel serviceInstance) {
+        OrganizationModel org = serviceInstance.getOrganization();
+        String id = organizationIdCache.get(realm, org.getName());
+        if (id == null) {
             org.setId(UUID.randomUUID().toString());
-            log.debug("Creating new organization {} for this service instance", org.getId());
-            organizationRepository.save(realm, org);
-        } else {
-            serviceInstance.getOrganization().setId(organizationId.get());
+            id = session.organizations().upsert(realm, org);
+            log.debug("Resolved organization {} for this service instance", id);
+            organizationIdCache.putAfterCommit(realm, org.getName(), id);
         }
+        org.setId(id);
     }
 
-    public ServiceInstanceModel replaceInstance(String realm, String id, ServiceInstanceModel patch) {
-        return jdbi.withHandle(handle -> {
-            ServiceInstanceRepository serviceRepository = handle.attach(ServiceInstanceRepository.class);
-            ServiceInstanceModel existingInstance = getInstanceById(realm, id);
+    /**
+     * Announces a change to the given service instance, both within this node and to the other nodes.
+     * Listeners registered with {@link org.springframework.transaction.event.TransactionalEventListener}
+     * and other nodes see it only once the current transaction has committed.
+     */
+    private void publishChange(StorageSession session, String realm, String id, Operation operation, @Nullable ServiceInstanceModel instance) {
+        eventPublisher.publishEvent(new ServiceInstanceChangeEvent(realm, id, operation, instance));
+        changeRelay.send(session, realm, operation, List.of(id));
+    }
+
+    /**
+     * Replaces the given service instance, reading and writing it through a single session. The instance is
+     * locked while it is read, so that concurrent replacements of it happen one after the other. Nothing
+     * is carried over from the stored instance but its ID and creation time; in particular, custom attributes
+     * the replacement leaves out are removed.
+     *
+     * @param expectedVersions if not null, the replacement only happens if the instance's current
+     *                         {@code updatedAt} timestamp is one of these
+     * @throws ServiceInstanceNotFoundException if there is no such instance
+     * @throws ServiceInstanceModifiedException if the instance is not at one of the expected versions
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRES_NEW)
+    public ServiceInstanceModel replaceInstance(
+            String realm,
+            String id,
+            ServiceInstanceModel patch,
+            @Nullable Set<Instant> expectedVersions) {
+        return storage.withSession(session -> {
+            ServiceInstanceStore serviceRepository = session.serviceInstances();
+            ServiceInstanceModel existingInstance = serviceRepository.findByIdForUpdate(realm, id)
+                    .orElseThrow(ServiceInstanceNotFoundException::new);
+            // the lock keeps the version from changing until the update below has committed
+            if (expectedVersions != null && !expectedVersions.contains(existingInstance.getUpdatedAt().toInstant())) {
+                throw new ServiceInstanceModifiedException(id,
+                        "Service instance (ID " + id + ") is not at any of the expected versions");
+            }
+
             patch.setId(id);
             patch.setCreatedAt(existingInstance.getCreatedAt());
-            patch.setUpdatedAt(ZonedDateTime.now());
-            createOrResolveOrganization(handle, realm, patch);
-            patch.getAdditionalProperties().putAll(existingInstance.getAdditionalProperties());
-            log.debug("Replaced/updated service instance {}", id);
+            patch.setUpdatedAt(now());
+            createOrResolveOrganization(session, realm, patch);
+
             serviceRepository.update(realm, patch);
+            log.debug("Replaced/updated service instance {}", id);
+            publishChange(session, realm, id, Operation.UPDATED, patch);
             return patch;
         });
     }
 
+    /**
+     * Returns the current time at the precision the database stores timestamps with, so that versions
+     * derived from an in-memory instance match the ones derived from what was saved.
+     */
+    private static ZonedDateTime now() {
+        return ZonedDateTime.now().truncatedTo(ChronoUnit.MICROS);
+    }
+
+    @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRES_NEW)
     public void deregisterInstanceById(String realm, String id) {
-        jdbi.withHandle(handle -> {
-            ServiceInstanceRepository serviceRepository = handle.attach(ServiceInstanceRepository.class);
+        storage.withSession(session -> {
+            ServiceInstanceStore serviceRepository = session.serviceInstances();
             if (!serviceRepository.delete(realm, id)) {
                 throw new ServiceInstanceNotFoundException(id);
             }
+            // so that clients syncing incrementally find out about the deletion
+            session.tombstones().save(realm, id, now());
+            publishChange(session, realm, id, Operation.DELETED, null);
             return null;
         });
     }
 
+    /**
+     * Returns what changed in the realm since the sync that handed out the given token: the current state of
+     * the instances created or updated since, and tombstones for the instances deleted since. Without a
+     * token, every instance in the realm is returned. Either way, the result carries the token for the
+     * next sync.
+     * <p>
+     * The changes are found by the ID of the transaction that made them, so the cost depends on the
+     * amount of change rather than the size of the realm. Changes that were being committed while the
+     * previous sync ran are returned again, so clients may see an instance or tombstone more than once.
+     * </p>
+     *
+     * @param since the token of the previous sync, or {@code null} to start from scratch
+     * @throws IllegalArgumentException if the token is malformed
+     * @throws SyncTokenExpiredException if the token is older than the tombstone retention period
+     */
+    // one snapshot for all of the queries below; read-only transactions never fail to serialize at this level
+    @Transactional(isolation = Isolation.REPEATABLE_READ, propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public ServiceInstanceDelta getChangesSince(String realm, @Nullable String since) {
+        SyncToken after = since == null ? null : SyncToken.decode(since);
+        Instant now = Instant.now();
+        if (after != null && after.getIssuedAt().isBefore(now.minus(tombstoneRetention))) {
+            throw new SyncTokenExpiredException("Sync token is older than " + tombstoneRetention.toDays() +
+                    " days, so deletions may have been forgotten; fetch the whole realm again");
+        }
+
+        return storage.withSession(session -> {
+            ServiceInstanceStore serviceRepository = session.serviceInstances();
+            // from this transaction's snapshot, so the next sync picks up whatever the queries below can't see
+            String nextSince = new SyncToken(serviceRepository.findSnapshotXmin(), now).encode();
+            if (after == null) {
+                return new ServiceInstanceDelta(serviceRepository.findAll(realm), List.of(), nextSince);
+            }
+            return new ServiceInstanceDelta(
+                    serviceRepository.findAllChangedSince(realm, after.getSnapshotXmin()),
+                    session.tombstones().findAllSince(realm, after.getSnapshotXmin()),
+                    nextSince);
+        });
+    }
+
+    /**
+     * Deletes tombstones that no sync token still accepted can ask for. They are kept an hour longer than
+     * tokens are accepted, so that a deletion still being committed when a token was handed out keeps its
+     * tombstone for as long as the token is valid.
+     *
+     * @return the number of tombstones deleted
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRES_NEW)
+    public int purgeTombstones() {
+        ZonedDateTime cutoff = now().minus(tombstoneRetention).minusHours(1);
+        return storage.withSession(session -> session.tombstones().deleteAllBefore(cutoff));
+    }
+
+    /**
+     * Writes the given lease renewals. Each is a blind update of a single row, so this runs at READ
+     * COMMITTED, where a concurrent write to the same instance can't make the whole batch fail.
+     *
+     * @return the instances that have no lease (any more), and were therefore not renewed
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRES_NEW)
+    public List<ServiceInstanceKey> renewLeases(List<LeaseRenewal> renewals) {
+        int[] renewed = storage.withSession(session -> session.serviceInstances().renewLeases(renewals));
+        List<ServiceInstanceKey> notRenewed = new ArrayList<>();
+        for (int i = 0; i < renewed.length; i++) {
+            if (renewed[i] == 0) {
+                notRenewed.add(new ServiceInstanceKey(renewals.get(i).getRealm(), renewals.get(i).getId()));
+            }
+        }
+        return notRenewed;
+    }
+
+    /**
+     * Deletes at most {@code limit} service instances whose lease ran out before the given time, leaving
+     * tombstones and announcing the deletions like {@link #deregisterInstanceById} does. At READ COMMITTED,
+     * an instance whose lease is renewed while this runs is not deleted.
+     *
+     * @return the deleted instances
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRES_NEW)
+    public List<ServiceInstanceKey> expireLeases(ZonedDateTime cutoff, int limit) {
+        return storage.withSession(session -> {
+            List<ServiceInstanceKey> expired = session.serviceInstances().deleteExpiredLeases(cutoff, limit);
+            if (expired.isEmpty()) {
+                return expired;
+            }
+            session.tombstones().saveAll(expired, now());
+            expired.forEach(si -> eventPublisher.publishEvent(
+                    new ServiceInstanceChangeEvent(si.getRealm(), si.getId(), Operation.DELETED, null)));
+            expired.stream()
+                    .collect(groupingBy(ServiceInstanceKey::getRealm, mapping(ServiceInstanceKey::getId, toList())))
+                    .forEach((realm, ids) -> changeRelay.send(session, realm, Operation.DELETED, ids));
+            log.debug("Expired the leases of {} service instances", expired.size());
+            return expired;
+        });
+    }
+
+    public long countLeases() {
+        return storage.withSession(session -> session.serviceInstances().countLeases());
+    }
+
+    /**
+     * Claims at most {@code limit} service instances whose health check is due, and schedules their next
+     * check {@code interval} from now, give or take {@code jitter} of it, so that instances registered
+     * together drift apart. Other nodes skip the claimed instances until then.
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRES_NEW)
+    public List<HealthCheck> claimHealthChecks(int limit, Duration interval, double jitter) {
+        return storage.withSession(session -> {
+            ServiceInstanceStore serviceRepository = session.serviceInstances();
+            ZonedDateTime now = now();
+            List<HealthCheck> due = serviceRepository.findDueHealthChecks(now, limit);
+            if (due.isEmpty()) {
+                return due;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (HealthCheck check : due) {
+                double factor = 1 + jitter * (2 * random.nextDouble() - 1);
+                check.setNextCheckAt(now.plus((long) (interval.toMillis() * factor), ChronoUnit.MILLIS));
+            }
+            serviceRepository.scheduleHealthChecks(due);
+            return due;
+        });
+    }
+
+    /**
+     * Stores health check results. Instances whose status changed are announced as updated; a new latency
+     * alone isn't, so listings served from the cache may show an older latency.
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRES_NEW)
+    public void saveHealthCheckResults(List<HealthCheckResult> results) {
+        storage.useSession(session -> {
+            ServiceInstanceStore serviceRepository = session.serviceInstances();
+            serviceRepository.saveHealthCheckResults(results);
+            results.stream()
+                    .filter(HealthCheckResult::isStatusChanged)
+                    .collect(groupingBy(HealthCheckResult::getRealm, mapping(HealthCheckResult::getId, toList())))
+                    .forEach((realm, ids) -> {
+                        List<ServiceInstanceModel> changed = serviceRepository.findAllById(realm, ids);
+                        changed.forEach(si -> eventPublisher.publishEvent(
+                                new ServiceInstanceChangeEvent(realm, si.getId(), Operation.UPDATED, si)));
+                        changeRelay.send(session, realm, Operation.UPDATED, changed.stream().map(ServiceInstanceModel::getId).collect(toList()));
+                    });
+        });
+    }
+
+    /**
+     * Returns every service instance in the given realm. This doesn't run read-only, so that it reads from the
+     * primary even when there are read replicas: its result is cached until the next change notification,
+     * which may arrive before a replica has caught up with the change.
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRES_NEW)
     public List<ServiceInstanceModel> getInstances(String realm) {
-        return jdbi.withHandle(handle -> {
-            ServiceInstanceRepository serviceRepository = handle.attach(ServiceInstanceRepository.class);
+        return storage.withSession(session -> {
+            ServiceInstanceStore serviceRepository = session.serviceInstances();
             return serviceRepository.findAll(realm);
         });
     }
 
+    /**
+     * Returns those of the given service instances that still exist. Like {@link #getInstances}, this reads
+     * from the primary, since it brings cached listings up to date with changes that were just announced.
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRES_NEW)
+    public List<ServiceInstanceModel> getInstancesById(String realm, Collection<String> ids) {
+        return storage.withSession(session -> session.serviceInstances().findAllById(realm, ids));
+    }
+
+    /**
+     * Passes every service instance in the given realm to the given consumer as soon as it has been read,
+     * so that the realm never has to be held in memory as a whole. The consumer runs inside the reading
+     * transaction and should not block for longer than necessary.
+     */
+    public void streamInstances(String realm, Consumer<ServiceInstanceModel> consumer) {
+        storage.useSession(session -> {
+            ServiceInstanceStore serviceRepository = session.serviceInstances();
+            try (Stream<ServiceInstanceModel> instances = serviceRepository.streamAll(realm)) {
+                instances.forEach(consumer);
+            }
+        });
+    }
+
+    /**
+     * Returns one page of the service instances in the given realm that match the given filter.
+     *
+     * @param cursor the encoded cursor from the previous page, or null to start at the first page
+     * @param limit the maximum number of instances on the returned page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public ServiceInstancePage getInstancePage(String realm, ServiceInstanceFilter filter, String cursor, int limit) {
+        PageCursor after = cursor == null ? null : PageCursor.decode(cursor);
+        List<ServiceInstanceModel> instances = storage.withSession(session -> {
+            ServiceInstanceStore serviceRepository = session.serviceInstances();
+            // fetch one extra row to find out whether there is a next page
+            return serviceRepository.findPage(
+                    realm,
+                    filter,
+                    after == null ? null : after.getCreatedAt(),
+                    after == null ? null : after.getId(),
+                    limit + 1);
+        });
+
+        if (instances.size() <= limit) {
+            return new ServiceInstancePage(instances, null);
+        }
+        List<ServiceInstanceModel> page = instances.subList(0, limit);
+        ServiceInstanceModel last = page.get(limit - 1);
+        return new ServiceInstancePage(page, new PageCursor(last.getCreatedAt(), last.getId()).encode());
+    }
+
+    /**
+     * Searches the name, description and organization name of the service instances in the realm. Every
+     * word in the given text has to match the beginning of a word in one of those, so that the text can be
+     * searched for as it is being typed. Instances whose name matches rank above those where only the
+     * description or organization matches.
+     *
+     * @param cursor the {@code nextCursor} of the previous page, or {@code null} for the first page
+     * @throws IllegalArgumentException if the text contains no words or the cursor is invalid
+     */
+    public ServiceInstancePage searchInstances(String realm, String text, String cursor, int limit) {
+        String query = toPrefixQuery(text);
+        int offset = cursor == null ? 0 : Integer.parseInt(cursor);
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+
+        List<ServiceInstanceModel> instances = storage.withSession(session -> session.serviceInstances()
+                // fetch one extra row to find out whether there is a next page
+                .search(realm, query, offset, limit + 1));
+
+        if (instances.size() <= limit) {
+            return new ServiceInstancePage(instances, null);
+        }
+        return new ServiceInstancePage(instances.subList(0, limit), Integer.toString(offset + limit));
+    }
+
+    /**
+     * Turns free text into a {@code to_tsquery} expression that requires a prefix match for every word.
+     * Only letters and digits are kept, which also keeps the tsquery operators out of the expression.
+     */
+    static String toPrefixQuery(String text) {
+        StringJoiner query = new StringJoiner(" & ");
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                query.add(word.toLowerCase(Locale.ROOT) + ":*");
+            }
+        }
+        if (query.length() == 0) {
+            throw new IllegalArgumentException("Search text must contain at least one letter or digit");
+        }
+        return query.toString();
+    }
+
     public ServiceInstanceModel getInstanceById(String realm, String id) {
-        return jdbi.withHandle(handle -> {
-            ServiceInstanceRepository serviceRepository = handle.attach(ServiceInstanceRepository.class);
+        return storage.withSession(session -> {
+            ServiceInstanceStore serviceRepository = session.serviceInstances();
             return serviceRepository.findById(realm, id)
                     .orElseThrow(ServiceInstanceNotFoundException::new);
         });
     }
 
     public List<ServiceType> getTypes(String realm) {
-        return jdbi.withHandle(handle -> {
-            ServiceInstanceRepository serviceRepository = handle.attach(ServiceInstanceRepository.class);
+        return storage.withSession(session -> {
+            ServiceInstanceStore serviceRepository = session.serviceInstances();
             return serviceRepository.findAllDistinctTypes(realm);
         });
     }
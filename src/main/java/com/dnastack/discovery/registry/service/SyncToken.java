@@ -0,0 +1,45 @@
+package com.dnastack.discovery.registry.service;
+
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Where an incremental sync left off: every change made by a transaction with a lower ID than
+ * {@code snapshotXmin} had been seen by then. Clients only ever see the encoded form, which they are
+ * expected to hand back unchanged.
+ */
+@Value
+public class SyncToken {
+
+    long snapshotXmin;
+    Instant issuedAt;
+
+    public String encode() {
+        String plain = snapshotXmin + "," + issuedAt;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token previously produced by {@link #encode()}.
+     *
+     * @throws IllegalArgumentException if the given value is not a valid token
+     */
+    public static SyncToken decode(String encoded) {
+        try {
+            String plain = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            int separator = plain.indexOf(',');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Malformed sync token: " + encoded);
+            }
+            return new SyncToken(
+                    Long.parseLong(plain.substring(0, separator)),
+                    Instant.parse(plain.substring(separator + 1)));
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Malformed sync token: " + encoded, e);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.dnastack.discovery.registry.service;
+
+/**
+ * Thrown when an incremental sync is requested with a token so old that the tombstones of instances
+ * deleted since may have been purged. The client has to fetch the whole realm again.
+ */
+public class SyncTokenExpiredException extends RuntimeException {
+
+    public SyncTokenExpiredException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,47 @@
+package com.dnastack.discovery.registry.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically deletes the tombstones of service instances deleted longer ago than the retention period.
+ * Every node does this; running it more than once is harmless.
+ */
+@Slf4j
+@Component
+public class TombstonePurger {
+
+    private final ServiceInstanceService service;
+    private final ScheduledExecutorService scheduler;
+
+    @Inject
+    public TombstonePurger(ServiceInstanceService service,
+                           @Value("${app.sync.purge-interval-minutes:60}") long purgeIntervalMinutes) {
+        this.service = service;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("tombstone-purge-"));
+        scheduler.scheduleWithFixedDelay(this::purge, purgeIntervalMinutes, purgeIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    private void purge() {
+        try {
+            int purged = service.purgeTombstones();
+            log.debug("Purged {} expired tombstones", purged);
+        } catch (RuntimeException e) {
+            // the next run will catch up
+            log.warn("Failed to purge expired tombstones: {}", e.toString());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
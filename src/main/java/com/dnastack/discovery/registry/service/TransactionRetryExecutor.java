@@ -0,0 +1,171 @@
+package com.dnastack.discovery.registry.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs write operations and retries the ones that failed because of a serialization failure or deadlock.
+ * <p>
+ * The first attempt runs on the calling thread. Retries are scheduled with exponential backoff and full
+ * jitter, and run on a small worker pool, so the calling (request) thread is never put to sleep. The
+ * number of operations waiting to be retried at any time is capped by a global budget; once it is used
+ * up, further failures are reported immediately with {@link RetryBudgetExhaustedException} rather than
+ * queued up behind the others.
+ * </p>
+ */
+@Slf4j
+@Component
+public class TransactionRetryExecutor {
+
+    /**
+     * SQLSTATEs for {@code serialization_failure} and {@code deadlock_detected}. Anything else is not
+     * going to succeed on a second try.
+     */
+    private static final Set<String> RETRYABLE_SQL_STATES = Set.of("40001", "40P01");
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Semaphore retryBudget;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService workers;
+
+    private final Counter retries;
+    private final Counter successes;
+    private final Counter exhausted;
+    private final Counter budgetExhausted;
+
+    @Inject
+    public TransactionRetryExecutor(@Value("${app.retry.max-attempts:5}") int maxAttempts,
+                                    @Value("${app.retry.initial-backoff-millis:50}") long initialBackoffMillis,
+                                    @Value("${app.retry.max-backoff-millis:2000}") long maxBackoffMillis,
+                                    @Value("${app.retry.budget:32}") int budget,
+                                    @Value("${app.retry.worker-threads:4}") int workerThreads,
+                                    MeterRegistry meterRegistry) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.retryBudget = new Semaphore(budget);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("tx-retry-scheduler-"));
+        this.workers = Executors.newFixedThreadPool(workerThreads, new CustomizableThreadFactory("tx-retry-worker-"));
+
+        this.retries = Counter.builder("transaction.retries")
+                .description("Attempts made after a transaction failed with a serialization failure or deadlock")
+                .register(meterRegistry);
+        this.successes = Counter.builder("transaction.retry.successes")
+                .description("Operations that succeeded after at least one retry")
+                .register(meterRegistry);
+        this.exhausted = Counter.builder("transaction.retry.exhausted")
+                .description("Operations that still failed after the maximum number of attempts")
+                .register(meterRegistry);
+        this.budgetExhausted = Counter.builder("transaction.retry.budget.exhausted")
+                .description("Operations that failed without retrying because the retry budget was used up")
+                .register(meterRegistry);
+        Gauge.builder("transaction.retry.in.flight", retryBudget, s -> budget - s.availablePermits())
+                .description("Operations currently waiting for or running a retry")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the given operation, retrying it in the background as long as it fails with a serialization
+     * failure or deadlock and attempts remain.
+     *
+     * @param operation the operation to run. It may be invoked on a different thread for retries, so it
+     *                  must not rely on request-scoped thread-local state.
+     * @return a future that completes with the operation's result, or exceptionally with its last failure
+     * or with {@link RetryBudgetExhaustedException}
+     */
+    public <R> CompletableFuture<R> execute(Callable<R> operation) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        attempt(operation, 1, result);
+        return result;
+    }
+
+    private <R> void attempt(Callable<R> operation, int attempt, CompletableFuture<R> result) {
+        try {
+            R value = operation.call();
+            if (attempt > 1) {
+                successes.increment();
+            }
+            result.complete(value);
+        } catch (Exception e) {
+            if (!isSerializationFailure(e)) {
+                result.completeExceptionally(e);
+                return;
+            }
+            if (attempt >= maxAttempts) {
+                exhausted.increment();
+                result.completeExceptionally(e);
+                return;
+            }
+            if (attempt == 1) {
+                if (!retryBudget.tryAcquire()) {
+                    budgetExhausted.increment();
+                    result.completeExceptionally(new RetryBudgetExhaustedException(
+                            "Too many concurrent write conflicts; try again later", e));
+                    return;
+                }
+                result.whenComplete((value, failure) -> retryBudget.release());
+            }
+            scheduleRetry(operation, attempt + 1, result);
+        }
+    }
+
+    private <R> void scheduleRetry(Callable<R> operation, int nextAttempt, CompletableFuture<R> result) {
+        // full jitter: anywhere between zero and the exponential backoff for this attempt
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(nextAttempt - 2, 30));
+        long backoff = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        log.info("Retrying transaction serialization failure (backoff={}; attempt={} of {})", backoff, nextAttempt, maxAttempts);
+        try {
+            scheduler.schedule(() -> {
+                try {
+                    workers.execute(() -> {
+                        retries.increment();
+                        attempt(operation, nextAttempt, result);
+                    });
+                } catch (RejectedExecutionException e) {
+                    result.completeExceptionally(e);
+                }
+            }, backoff, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    static boolean isSerializationFailure(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            // batch failures report the underlying error as the next exception rather than the cause
+            for (SQLException s = t instanceof SQLException ? (SQLException) t : null; s != null; s = s.getNextException()) {
+                if (RETRYABLE_SQL_STATES.contains(s.getSQLState())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        workers.shutdown();
+    }
+}
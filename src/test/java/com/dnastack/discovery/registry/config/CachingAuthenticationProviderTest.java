@@ -0,0 +1,108 @@
+package com.dnastack.discovery.registry.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class CachingAuthenticationProviderTest {
+
+    private final AtomicInteger verifications = new AtomicInteger();
+    private CachingAuthenticationProvider provider;
+
+    @Before
+    public void setUp() {
+        AuthenticationProvider passwords = new AuthenticationProvider() {
+            @Override
+            public Authentication authenticate(Authentication authentication) {
+                verifications.incrementAndGet();
+                if (!"secret".equals(authentication.getCredentials())) {
+                    throw new BadCredentialsException("Bad credentials");
+                }
+                return new UsernamePasswordAuthenticationToken(authentication.getName(), authentication.getCredentials(), AuthorityUtils.createAuthorityList("ROLE_USER"));
+            }
+
+            @Override
+            public boolean supports(Class<?> authentication) {
+                return true;
+            }
+        };
+        provider = new CachingAuthenticationProvider(passwords, Duration.ofMinutes(1), 100, new SimpleMeterRegistry());
+    }
+
+    @Test
+    public void authenticate_should_verifyOnce_when_sameCredentialsAreRepeated() {
+        Authentication first = provider.authenticate(credentials("dev", "secret"));
+        Authentication second = provider.authenticate(credentials("dev", "secret"));
+
+        assertThat(verifications.get(), equalTo(1));
+        assertThat(second.isAuthenticated(), is(true));
+        assertThat(second.getName(), equalTo(first.getName()));
+    }
+
+    @Test
+    public void authenticate_should_returnTokenOfItsOwn_to_eachRequest() {
+        // what ProviderManager does to the token it returns
+        UsernamePasswordAuthenticationToken first = (UsernamePasswordAuthenticationToken) provider.authenticate(credentials("dev", "secret"));
+        first.eraseCredentials();
+        first.setDetails("first request");
+        UsernamePasswordAuthenticationToken second = (UsernamePasswordAuthenticationToken) provider.authenticate(credentials("dev", "secret"));
+        second.setDetails("second request");
+        Authentication third = provider.authenticate(credentials("dev", "secret"));
+
+        assertThat(verifications.get(), equalTo(1));
+        assertThat(third, not(sameInstance(second)));
+        assertThat(third.isAuthenticated(), is(true));
+        assertThat(third.getCredentials(), nullValue());
+        assertThat(third.getDetails(), nullValue());
+        assertThat(third.getAuthorities(), hasSize(1));
+    }
+
+    @Test
+    public void authenticate_should_verifyAgain_when_passwordDiffers() {
+        provider.authenticate(credentials("dev", "secret"));
+        try {
+            provider.authenticate(credentials("dev", "wrong"));
+        } catch (BadCredentialsException expected) {
+        }
+
+        assertThat(verifications.get(), equalTo(2));
+    }
+
+    @Test
+    public void authenticate_shouldNot_cacheFailures() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                provider.authenticate(credentials("dev", "wrong"));
+            } catch (BadCredentialsException expected) {
+            }
+        }
+
+        assertThat(verifications.get(), equalTo(2));
+    }
+
+    @Test
+    public void authenticate_should_keepUsernameAndPasswordApart() {
+        provider.authenticate(credentials("dev", "secret"));
+        try {
+            provider.authenticate(credentials("dev:s", "ecret"));
+        } catch (BadCredentialsException expected) {
+        }
+
+        assertThat(verifications.get(), equalTo(2));
+    }
+
+    private static UsernamePasswordAuthenticationToken credentials(String username, String password) {
+        return new UsernamePasswordAuthenticationToken(username, password);
+    }
+}
@@ -0,0 +1,83 @@
+package com.dnastack.discovery.registry.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class ConnectionLimitingDataSourceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ConnectionLimitingDataSource limitedTo(int maxConnections, int maxWaiting, long maxWaitMillis) {
+        JdbcDataSource target = new JdbcDataSource();
+        target.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL");
+        return new ConnectionLimitingDataSource(target, maxConnections, maxWaiting, maxWaitMillis, meterRegistry);
+    }
+
+    @Test
+    public void timesOutWhileAllConnectionsAreInUse() throws SQLException {
+        ConnectionLimitingDataSource dataSource = limitedTo(1, 10, 50);
+        try (Connection ignored = dataSource.getConnection()) {
+            dataSource.getConnection();
+            fail("Expected ConnectionLimitExceededException");
+        } catch (ConnectionLimitExceededException e) {
+            assertThat(e.getMessage(), containsString("Timed out"));
+        }
+        assertThat(meterRegistry.get("datasource.connection.limit.rejected").counter().count(), equalTo(1.0));
+    }
+
+    @Test
+    public void releasesConnectionOnceWhenClosedTwice() throws SQLException {
+        ConnectionLimitingDataSource dataSource = limitedTo(1, 10, 50);
+        Connection connection = dataSource.getConnection();
+        connection.close();
+        connection.close();
+
+        try (Connection ignored = dataSource.getConnection()) {
+            dataSource.getConnection();
+            fail("Expected ConnectionLimitExceededException");
+        } catch (ConnectionLimitExceededException expected) {
+        }
+    }
+
+    @Test
+    public void handsClosedConnectionToWaitingCaller() throws Exception {
+        ConnectionLimitingDataSource dataSource = limitedTo(1, 10, 5000);
+        Connection first = dataSource.getConnection();
+        CompletableFuture<Connection> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return dataSource.getConnection();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertThat(second.isDone(), is(false));
+
+        first.close();
+        second.get(5, TimeUnit.SECONDS).close();
+    }
+
+    @Test
+    public void rejectsRightAwayWhenTooManyCallersAreWaiting() throws SQLException {
+        ConnectionLimitingDataSource dataSource = limitedTo(1, 0, 5000);
+        long start = System.nanoTime();
+        try (Connection ignored = dataSource.getConnection()) {
+            dataSource.getConnection();
+            fail("Expected ConnectionLimitExceededException");
+        } catch (ConnectionLimitExceededException e) {
+            assertThat(e.getMessage(), containsString("Too many requests waiting"));
+        }
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(1000L));
+    }
+}
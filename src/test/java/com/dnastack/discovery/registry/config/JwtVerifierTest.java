@@ -0,0 +1,90 @@
+package com.dnastack.discovery.registry.config;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.PlainJWT;
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class JwtVerifierTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+    private final JwtVerifier verifier = new JwtVerifier(SECRET, "", "https://issuer.example.org", "service-registry");
+
+    @Test
+    public void verify_should_returnClaims_when_tokenIsValid() throws Exception {
+        String token = sign(new MACSigner(SECRET), JWSAlgorithm.HS256, validClaims().build());
+
+        assertThat(verifier.verify(token).getSubject(), equalTo("client-1"));
+    }
+
+    @Test
+    public void verify_should_acceptRs256_when_publicKeyIsConfigured() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        String pem = "-----BEGIN PUBLIC KEY-----\n"
+                + Base64.getMimeEncoder().encodeToString(keyPair.getPublic().getEncoded())
+                + "\n-----END PUBLIC KEY-----\n";
+        JwtVerifier rsaVerifier = new JwtVerifier("", pem, "", "");
+
+        String token = sign(new RSASSASigner(keyPair.getPrivate()), JWSAlgorithm.RS256, validClaims().build());
+
+        assertThat(rsaVerifier.verify(token).getSubject(), equalTo("client-1"));
+    }
+
+    @Test(expected = BadCredentialsException.class)
+    public void verify_should_reject_when_signedWithAnotherKey() throws Exception {
+        verifier.verify(sign(new MACSigner("fedcba9876543210fedcba9876543210"), JWSAlgorithm.HS256, validClaims().build()));
+    }
+
+    @Test(expected = BadCredentialsException.class)
+    public void verify_should_reject_when_tokenIsUnsigned() {
+        verifier.verify(new PlainJWT(validClaims().build()).serialize());
+    }
+
+    @Test(expected = BadCredentialsException.class)
+    public void verify_should_reject_when_tokenHasExpired() throws Exception {
+        JWTClaimsSet claims = validClaims().expirationTime(Date.from(Instant.now().minusSeconds(3600))).build();
+        verifier.verify(sign(new MACSigner(SECRET), JWSAlgorithm.HS256, claims));
+    }
+
+    @Test(expected = BadCredentialsException.class)
+    public void verify_should_reject_when_audienceDiffers() throws Exception {
+        verifier.verify(sign(new MACSigner(SECRET), JWSAlgorithm.HS256, validClaims().audience("another-service").build()));
+    }
+
+    @Test(expected = BadCredentialsException.class)
+    public void verify_should_reject_when_noKeyIsConfigured() throws Exception {
+        new JwtVerifier("", "", "", "").verify(sign(new MACSigner(SECRET), JWSAlgorithm.HS256, validClaims().build()));
+    }
+
+    private static JWTClaimsSet.Builder validClaims() {
+        return new JWTClaimsSet.Builder()
+                .subject("client-1")
+                .issuer("https://issuer.example.org")
+                .audience("service-registry")
+                .expirationTime(Date.from(Instant.now().plusSeconds(300)));
+    }
+
+    private static String sign(JWSSigner signer, JWSAlgorithm algorithm, JWTClaimsSet claims) throws Exception {
+        SignedJWT jwt = new SignedJWT(new JWSHeader(algorithm), claims);
+        jwt.sign(signer);
+        return jwt.serialize();
+    }
+}
@@ -0,0 +1,134 @@
+package com.dnastack.discovery.registry.config;
+
+import com.dnastack.discovery.registry.config.ReadReplicaRoutingDataSource.PrimaryOnly;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ReadReplicaRoutingDataSourceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DataSource primary = database("primary");
+    private final DataSource replica1 = database("replica1");
+    private final DataSource replica2 = database("replica2");
+
+    @After
+    public void clearTransactionState() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";MODE=PostgreSQL");
+        return dataSource;
+    }
+
+    private static DataSource unavailable() {
+        return new AbstractDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                throw new SQLException("Connection refused");
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                throw new SQLException("Connection refused");
+            }
+        };
+    }
+
+    private static String databaseOf(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.getMetaData().getURL().replaceAll("^jdbc:h2:mem:([^-]+)-.*$", "$1");
+        }
+    }
+
+    @Test
+    public void sendsReadWriteTransactionsToPrimary() throws SQLException {
+        ReadReplicaRoutingDataSource dataSource = new ReadReplicaRoutingDataSource(primary, List.of(replica1), 1000, meterRegistry);
+
+        assertThat(databaseOf(dataSource), equalTo("primary"));
+    }
+
+    @Test
+    public void spreadsReadOnlyTransactionsOverReplicas() throws SQLException {
+        ReadReplicaRoutingDataSource dataSource = new ReadReplicaRoutingDataSource(primary, List.of(replica1, replica2), 1000, meterRegistry);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(List.of(databaseOf(dataSource), databaseOf(dataSource), databaseOf(dataSource)),
+                contains("replica1", "replica2", "replica1"));
+    }
+
+    @Test
+    public void sendsReadOnlyTransactionsToPrimaryWhenAskedTo() throws SQLException {
+        ReadReplicaRoutingDataSource dataSource = new ReadReplicaRoutingDataSource(primary, List.of(replica1), 1000, meterRegistry);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        PrimaryOnly outer = ReadReplicaRoutingDataSource.primaryOnly();
+        PrimaryOnly nested = ReadReplicaRoutingDataSource.primaryOnly();
+        assertThat(databaseOf(dataSource), equalTo("primary"));
+        nested.close();
+        assertThat(databaseOf(dataSource), equalTo("primary"));
+        outer.close();
+        assertThat(databaseOf(dataSource), equalTo("replica1"));
+    }
+
+    @Test
+    public void skipsUnavailableReplica() throws SQLException {
+        ReadReplicaRoutingDataSource dataSource = new ReadReplicaRoutingDataSource(primary, List.of(unavailable(), replica2), 60_000, meterRegistry);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(List.of(databaseOf(dataSource), databaseOf(dataSource)), contains("replica2", "replica2"));
+        assertThat(meterRegistry.get("datasource.replicas.available").gauge().value(), equalTo(1.0));
+        assertThat(meterRegistry.get("datasource.replicas.fallbacks").counter().count(), equalTo(0.0));
+    }
+
+    @Test
+    public void fallsBackToPrimaryWhenNoReplicaIsAvailable() throws SQLException {
+        ReadReplicaRoutingDataSource dataSource = new ReadReplicaRoutingDataSource(primary, List.of(unavailable()), 60_000, meterRegistry);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(databaseOf(dataSource), equalTo("primary"));
+        assertThat(databaseOf(dataSource), equalTo("primary"));
+        assertThat(meterRegistry.get("datasource.replicas.fallbacks").counter().count(), equalTo(2.0));
+    }
+
+    @Test
+    public void retriesReplicaAfterItWasSkipped() throws SQLException {
+        DataSource flaky = new AbstractDataSource() {
+            private boolean failed;
+
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (!failed) {
+                    failed = true;
+                    throw new SQLException("Connection refused");
+                }
+                return replica1.getConnection();
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        ReadReplicaRoutingDataSource dataSource = new ReadReplicaRoutingDataSource(primary, List.of(flaky), 0, meterRegistry);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(databaseOf(dataSource), equalTo("primary"));
+        assertThat(databaseOf(dataSource), equalTo("replica1"));
+        assertThat(meterRegistry.get("datasource.replicas.available").gauge().value(), equalTo(1.0));
+    }
+}
@@ -0,0 +1,68 @@
+package com.dnastack.discovery.registry.config;
+
+import com.dnastack.discovery.registry.repository.ServiceInstanceRepository;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.SqlStatements;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class TimingSqlLoggerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private Handle handle;
+
+    @Before
+    public void setUp() throws IOException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL");
+        Jdbi jdbi = DatabaseConfiguration.createJdbi(dataSource);
+        jdbi.getConfig(SqlStatements.class).setSqlLogger(new TimingSqlLogger(meterRegistry));
+        handle = jdbi.open();
+        try (InputStream schema = getClass().getResourceAsStream("/h2-schema.sql")) {
+            handle.createScript(new String(schema.readAllBytes(), StandardCharsets.UTF_8)).execute();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        handle.close();
+    }
+
+    @Test
+    public void recordsRepositoryStatementsByMethod() {
+        ServiceInstanceRepository repository = handle.attach(ServiceInstanceRepository.class);
+        repository.findAll("test");
+        repository.findAll("test");
+
+        Timer timer = meterRegistry.find("jdbi.statements")
+                .tags("statement", "ServiceInstanceRepository.findAll", "outcome", "success")
+                .timer();
+        assertThat(timer, notNullValue());
+        assertThat(timer.count(), equalTo(2L));
+    }
+
+    @Test
+    public void recordsFailedStatements() {
+        try {
+            handle.execute("INSERT INTO organization (realm, id, name) VALUES ('test', 'org-1', NULL)");
+        } catch (RuntimeException expected) {
+        }
+
+        Timer timer = meterRegistry.find("jdbi.statements").tags("statement", "other", "outcome", "error").timer();
+        assertThat(timer, notNullValue());
+        assertThat(timer.count(), equalTo(1L));
+    }
+}
@@ -0,0 +1,42 @@
+package com.dnastack.discovery.registry.controller;
+
+import com.dnastack.discovery.registry.model.HealthStatus;
+import com.dnastack.discovery.registry.model.ServiceInstanceHealth;
+import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import org.junit.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class EntityTagsTest {
+
+    private static final ZonedDateTime UPDATED_AT = ZonedDateTime.of(2019, 6, 1, 12, 0, 0, 1000, ZoneOffset.UTC);
+
+    @Test
+    public void of_should_change_when_healthIsChecked() {
+        ServiceInstanceModel si = ServiceInstanceModel.builder().updatedAt(UPDATED_AT).build();
+        String unchecked = EntityTags.of(si);
+
+        si.setHealth(new ServiceInstanceHealth(HealthStatus.DOWN, null, UPDATED_AT.plusMinutes(1)));
+        String checked = EntityTags.of(si);
+        si.setHealth(new ServiceInstanceHealth(HealthStatus.UP, 10, UPDATED_AT.plusMinutes(2)));
+
+        assertThat(checked, not(equalTo(unchecked)));
+        assertThat(EntityTags.of(si), not(equalTo(checked)));
+        assertThat(EntityTags.lastModified(si), equalTo(UPDATED_AT.plusMinutes(2)));
+    }
+
+    @Test
+    public void parseIfMatch_should_acceptVersion_regardlessOfHealthCheck() {
+        ServiceInstanceModel si = ServiceInstanceModel.builder().updatedAt(UPDATED_AT).build();
+        String unchecked = EntityTags.of(si);
+        si.setHealth(new ServiceInstanceHealth(HealthStatus.UP, 10, UPDATED_AT.plusMinutes(1)));
+
+        assertThat(EntityTags.parseIfMatch(unchecked + ", " + EntityTags.of(si)), contains(UPDATED_AT.toInstant()));
+        assertThat(EntityTags.parseIfMatch("W/" + EntityTags.of(si)), empty());
+        assertThat(EntityTags.parseIfMatch("*"), nullValue());
+    }
+}
@@ -0,0 +1,35 @@
+package com.dnastack.discovery.registry.model;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ServiceTypeTest {
+
+    @Test
+    public void parsesGroupArtifactVersion() {
+        assertThat(ServiceType.fromString("org.ga4gh:beacon:1.0.0"), equalTo(new ServiceType("org.ga4gh", "beacon", "1.0.0")));
+        assertThat(ServiceType.fromString(":beacon:1.0.0"), equalTo(new ServiceType("", "beacon", "1.0.0")));
+        assertThat(ServiceType.fromString("org.ga4gh::1.0.0"), equalTo(new ServiceType("org.ga4gh", "", "1.0.0")));
+        assertThat(ServiceType.fromString("org.ga4gh:beacon:1.0.0:extra"), equalTo(new ServiceType("org.ga4gh", "beacon", "1.0.0")));
+        assertThat(ServiceType.fromString(null), nullValue());
+    }
+
+    @Test
+    public void roundTripsThroughToString() {
+        ServiceType type = new ServiceType("org.ga4gh", "beacon", "1.0.0");
+        assertThat(ServiceType.fromString(type.toString()), equalTo(type));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingVersion() {
+        ServiceType.fromString("org.ga4gh:beacon:");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingArtifact() {
+        ServiceType.fromString("org.ga4gh");
+    }
+}
@@ -0,0 +1,143 @@
+package com.dnastack.discovery.registry.repository;
+
+import com.dnastack.discovery.registry.config.DatabaseConfiguration;
+import com.dnastack.discovery.registry.model.Environment;
+import com.dnastack.discovery.registry.model.HealthStatus;
+import com.dnastack.discovery.registry.model.ServiceInstanceHealth;
+import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import com.dnastack.discovery.registry.model.ServiceType;
+import org.h2.jdbcx.JdbcDataSource;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.mapper.reflect.BeanMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ServiceInstanceRowMapperTest {
+
+    private static final String REALM = "test";
+    private static final String SELECT_ALL = "SELECT si.*, o.id AS org_id, o.name AS org_name, o.url AS org_url" +
+            " FROM service_instance si" +
+            " LEFT OUTER JOIN organization o ON si.realm = o.realm AND si.organization_id = o.id" +
+            " WHERE si.realm = :realm ORDER BY si.id";
+
+    private Handle handle;
+
+    @Before
+    public void setUp() throws IOException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL");
+        handle = DatabaseConfiguration.createJdbi(dataSource).open();
+        try (InputStream schema = getClass().getResourceAsStream("/h2-schema.sql")) {
+            handle.createScript(new String(schema.readAllBytes(), StandardCharsets.UTF_8)).execute();
+        }
+
+        OffsetDateTime createdAt = OffsetDateTime.of(2019, 6, 1, 12, 30, 15, 123456000, ZoneOffset.UTC);
+        handle.execute("INSERT INTO organization (realm, id, name, url) VALUES (?, 'org-1', 'Example', 'https://example.org')", REALM);
+        handle.execute("INSERT INTO service_instance (realm, id, name, type, url, description, organization_id," +
+                        " contact_url, documentation_url, created_at, updated_at, environment, version, additional_properties_json)" +
+                        " VALUES (?, 'si-1', 'Complete', 'org.ga4gh:beacon:1.0.0', 'https://beacon.example.org', 'A beacon', 'org-1'," +
+                        " 'mailto:support@example.org', 'https://docs.example.org', ?, ?, 'PROD', '1.0.0'," +
+                        " '{\"beaconVersion\":\"2.0\",\"tags\":[\"a\",\"b\"],\"limits\":{\"rate\":10}}')",
+                REALM, createdAt, createdAt.plusMinutes(1));
+        handle.execute("INSERT INTO service_instance (realm, id, name, type, created_at, updated_at, version, additional_properties_json)" +
+                        " VALUES (?, 'si-2', 'Minimal', 'org.ga4gh:portal:2.1', ?, ?, '2.1', '{}')",
+                REALM, createdAt, createdAt);
+        handle.execute("INSERT INTO service_instance (realm, id, name, type, created_at, updated_at, environment, version)" +
+                        " VALUES (?, 'si-3', 'No properties', 'org.ga4gh:portal:2.1', ?, ?, 'TEST', '2.1')",
+                REALM, createdAt, createdAt);
+    }
+
+    @After
+    public void tearDown() {
+        handle.close();
+    }
+
+    @Test
+    public void mapsSameAsBeanMapper() {
+        List<ServiceInstanceModel> expected = handle.createQuery(SELECT_ALL)
+                .bind("realm", REALM)
+                .map(BeanMapper.of(ServiceInstanceModel.class))
+                .list();
+        List<ServiceInstanceModel> actual = handle.createQuery(SELECT_ALL)
+                .bind("realm", REALM)
+                .map(new ServiceInstanceRowMapper())
+                .list();
+
+        assertThat(actual, hasSize(3));
+        for (int i = 0; i < actual.size(); i++) {
+            // BeanMapper looks for an additional_properties column, so it never reads them back
+            expected.get(i).setAdditionalProperties(actual.get(i).getAdditionalProperties());
+            assertThat(actual.get(i), equalTo(expected.get(i)));
+        }
+    }
+
+    @Test
+    public void mapsAdditionalProperties() {
+        List<ServiceInstanceModel> actual = handle.createQuery(SELECT_ALL)
+                .bind("realm", REALM)
+                .map(new ServiceInstanceRowMapper())
+                .list();
+
+        assertThat(actual.get(0).getAdditionalProperties(), equalTo(Map.of(
+                "beaconVersion", "2.0",
+                "tags", List.of("a", "b"),
+                "limits", Map.of("rate", 10))));
+        assertThat(actual.get(1).getAdditionalProperties(), equalTo(Map.of()));
+        assertThat(actual.get(2).getAdditionalProperties(), equalTo(Map.of()));
+    }
+
+    @Test
+    public void mapsTypedColumns() {
+        ServiceInstanceModel actual = handle.attach(ServiceInstanceRepository.class).findById(REALM, "si-1").orElseThrow();
+
+        assertThat(actual.getType(), equalTo(new ServiceType("org.ga4gh", "beacon", "1.0.0")));
+        assertThat(actual.getEnvironment(), equalTo(Environment.PROD));
+        assertThat(actual.getCreatedAt().toInstant(), equalTo(OffsetDateTime.of(2019, 6, 1, 12, 30, 15, 123456000, ZoneOffset.UTC).toInstant()));
+        assertThat(actual.getOrganization().getName(), equalTo("Example"));
+    }
+
+    @Test
+    public void mapsHealth() {
+        OffsetDateTime checkedAt = OffsetDateTime.of(2019, 6, 2, 8, 0, 0, 0, ZoneOffset.UTC);
+        handle.execute("UPDATE service_instance SET health_status = 'UP', health_latency_millis = 42, health_checked_at = ? WHERE id = 'si-1'", checkedAt);
+        handle.execute("UPDATE service_instance SET health_status = 'DOWN', health_checked_at = ? WHERE id = 'si-2'", checkedAt);
+        ServiceInstanceRepository repository = handle.attach(ServiceInstanceRepository.class);
+
+        ServiceInstanceHealth up = repository.findById(REALM, "si-1").orElseThrow().getHealth();
+        ServiceInstanceHealth down = repository.findById(REALM, "si-2").orElseThrow().getHealth();
+
+        assertThat(up.getStatus(), equalTo(HealthStatus.UP));
+        assertThat(up.getLatencyMillis(), equalTo(42));
+        assertThat(up.getCheckedAt().toInstant(), equalTo(checkedAt.toInstant()));
+        assertThat(down.getStatus(), equalTo(HealthStatus.DOWN));
+        assertThat(down.getLatencyMillis(), nullValue());
+        assertThat(repository.findById(REALM, "si-3").orElseThrow().getHealth(), nullValue());
+    }
+
+    @Test
+    public void leavesUnselectedColumnsUnset() {
+        List<ServiceInstanceModel> actual = handle.attach(ServiceInstanceRepository.class)
+                .findAllByName(REALM, List.of("Complete"));
+
+        assertThat(actual, hasSize(1));
+        assertThat(actual.get(0).getId(), equalTo("si-1"));
+        assertThat(actual.get(0).getType(), equalTo(new ServiceType("org.ga4gh", "beacon", "1.0.0")));
+        assertThat(actual.get(0).getUrl(), nullValue());
+        assertThat(actual.get(0).getCreatedAt(), nullValue());
+        assertThat(actual.get(0).getOrganization(), nullValue());
+        assertThat(actual.get(0).getAdditionalProperties(), equalTo(Map.of()));
+    }
+}
@@ -0,0 +1,241 @@
+package com.dnastack.discovery.registry.repository.memory;
+
+import com.dnastack.discovery.registry.model.Environment;
+import com.dnastack.discovery.registry.model.HealthCheckResult;
+import com.dnastack.discovery.registry.model.HealthStatus;
+import com.dnastack.discovery.registry.model.OrganizationModel;
+import com.dnastack.discovery.registry.model.ServiceInstanceFilter;
+import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import com.dnastack.discovery.registry.model.ServiceType;
+import com.dnastack.discovery.registry.repository.ServiceInstanceStore;
+import com.dnastack.discovery.registry.repository.Storage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class InMemoryStoreTest {
+
+    private static final String REALM = "test";
+    private static final ZonedDateTime CREATED_AT = ZonedDateTime.of(2019, 6, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InMemoryStore store;
+    private Storage storage;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryStore();
+        storage = new InMemoryStorage(store);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void saveIfAbsent_should_rejectSameNameAndType() {
+        String organizationId = storage.withSession(session -> session.organizations().upsert(REALM, organization("Example")));
+
+        assertThat(save(organizationId, instance("si-1", "Beacon", "org.ga4gh:beacon:1.0.0", 0)), is(true));
+        assertThat(save(organizationId, instance("si-2", "Beacon", "org.ga4gh:beacon:1.0.0", 1)), is(false));
+        assertThat(save(organizationId, instance("si-3", "Beacon", "org.ga4gh:beacon:2.0.0", 2)), is(true));
+
+        Optional<ServiceInstanceModel> found = storage.withSession(session ->
+                session.serviceInstances().findByNameAndType(REALM, "Beacon", "org.ga4gh:beacon:1.0.0"));
+        assertThat(found.map(ServiceInstanceModel::getId), equalTo(Optional.of("si-1")));
+        assertThat(found.get().getOrganization().getName(), equalTo("Example"));
+        assertThat(storage.withSession(session -> session.organizations().upsert(REALM, organization("Example"))), equalTo(organizationId));
+    }
+
+    @Test
+    public void findPage_should_continueAfterCursorAndApplyFilter() {
+        String organizationId = storage.withSession(session -> session.organizations().upsert(REALM, organization("Example")));
+        for (int i = 0; i < 5; i++) {
+            ServiceInstanceModel si = instance("si-" + i, "Service " + i, i % 2 == 0 ? "org.ga4gh:beacon:1.0.0" : "org.ga4gh:drs:1.0.0", i);
+            si.setEnvironment(i < 4 ? Environment.PROD : Environment.TEST);
+            save(organizationId, si);
+        }
+
+        ServiceInstanceFilter beacons = ServiceInstanceFilter.builder().typeArtifact("beacon").environment(Environment.PROD).build();
+        List<ServiceInstanceModel> first = storage.withSession(session ->
+                session.serviceInstances().findPage(REALM, beacons, null, null, 1));
+        assertThat(ids(first), contains("si-0"));
+
+        ServiceInstanceModel last = first.get(0);
+        List<ServiceInstanceModel> rest = storage.withSession(session ->
+                session.serviceInstances().findPage(REALM, beacons, last.getCreatedAt(), last.getId(), 10));
+        assertThat(ids(rest), contains("si-2"));
+
+        List<ServiceInstanceModel> all = storage.withSession(session ->
+                session.serviceInstances().findPage(REALM, new ServiceInstanceFilter(), null, null, 10));
+        assertThat(ids(all), contains("si-0", "si-1", "si-2", "si-3", "si-4"));
+    }
+
+    @Test
+    public void search_should_rankNameMatchesFirst() {
+        String organizationId = storage.withSession(session -> session.organizations().upsert(REALM, organization("Rare Things")));
+        ServiceInstanceModel described = instance("si-1", "Portal", "org.ga4gh:portal:1.0.0", 0);
+        described.setDescription("Finds rare variants");
+        save(organizationId, described);
+        save(organizationId, instance("si-2", "Rare disease beacon", "org.ga4gh:beacon:1.0.0", 1));
+        save(organizationId, instance("si-3", "Other", "org.ga4gh:drs:1.0.0", 2));
+
+        List<ServiceInstanceModel> found = storage.withSession(session ->
+                session.serviceInstances().search(REALM, "rar:*", 0, 10));
+        assertThat(ids(found), contains("si-2", "si-1", "si-3"));
+        found = storage.withSession(session -> session.serviceInstances().search(REALM, "rar:* & bea:*", 0, 10));
+        assertThat(ids(found), contains("si-2"));
+    }
+
+    @Test
+    public void readOnlyTransaction_should_notSeeLaterCommits() {
+        save(null, instance("si-1", "First", "org.ga4gh:beacon:1.0.0", 0));
+
+        InMemoryTransaction reader = store.begin(true);
+        save(null, instance("si-2", "Second", "org.ga4gh:beacon:1.0.0", 1));
+
+        assertThat(ids(new InMemoryServiceInstanceStore(reader).findAll(REALM)), contains("si-1"));
+        assertThat(ids(storage.withSession(session -> session.serviceInstances().findAll(REALM))), containsInAnyOrder("si-1", "si-2"));
+        reader.commit();
+    }
+
+    @Test
+    public void saveHealthCheckResults_shouldNot_changeUpdatedAt() {
+        save(null, instance("si-1", "Beacon", "org.ga4gh:beacon:1.0.0", 0));
+        ZonedDateTime checkedAt = CREATED_AT.plusMinutes(5);
+
+        saveHealthCheckResult(new HealthCheckResult(REALM, "si-1", HealthStatus.DOWN, null, checkedAt, true));
+
+        ServiceInstanceModel checked = findById("si-1");
+        assertThat(checked.getUpdatedAt(), equalTo(CREATED_AT));
+        assertThat(checked.getHealth().getStatus(), equalTo(HealthStatus.DOWN));
+        assertThat(checked.getHealth().getCheckedAt(), equalTo(checkedAt));
+    }
+
+    @Test
+    public void rollback_should_discardWrites() {
+        InMemoryTransaction transaction = store.begin(false);
+        ServiceInstanceStore instances = new InMemoryServiceInstanceStore(transaction);
+        instances.saveIfAbsent(REALM, null, instance("si-1", "First", "org.ga4gh:beacon:1.0.0", 0));
+        assertThat(instances.findById(REALM, "si-1").isPresent(), is(true));
+        transaction.rollback();
+
+        assertThat(storage.withSession(session -> session.serviceInstances().findById(REALM, "si-1")), equalTo(Optional.empty()));
+
+        // the write lock was released, so others can write
+        assertThat(save(null, instance("si-1", "First", "org.ga4gh:beacon:1.0.0", 0)), is(true));
+    }
+
+    @Test
+    public void reopen_should_replayLogAndDropTornLastLine() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        store = new InMemoryStore(directory, false, 0);
+        storage = new InMemoryStorage(store);
+        String organizationId = storage.withSession(session -> session.organizations().upsert(REALM, organization("Example")));
+        save(organizationId, instance("si-1", "First", "org.ga4gh:beacon:1.0.0", 0));
+        save(organizationId, instance("si-2", "Second", "org.ga4gh:beacon:1.0.0", 1));
+        storage.useSession(session -> {
+            session.serviceInstances().delete(REALM, "si-1");
+            session.tombstones().save(REALM, "si-1", CREATED_AT.plusDays(1));
+        });
+        long xmin = storage.withSession(session -> session.serviceInstances().findSnapshotXmin());
+        store.close();
+
+        // a crash in the middle of an append leaves part of a line behind
+        Files.write(directory.resolve("wal.log"), "{\"txid\":99,\"rec".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        store = new InMemoryStore(directory, false, 0);
+        storage = new InMemoryStorage(store);
+        assertReopened(organizationId, xmin);
+
+        // what was appended after the torn line survives too
+        save(organizationId, instance("si-3", "Third", "org.ga4gh:beacon:1.0.0", 2));
+        store.close();
+        store = new InMemoryStore(directory, false, 0);
+        storage = new InMemoryStorage(store);
+        assertThat(ids(storage.withSession(session -> session.serviceInstances().findAll(REALM))), containsInAnyOrder("si-2", "si-3"));
+    }
+
+    @Test
+    public void compact_should_keepStateAndChangeIds() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        store = new InMemoryStore(directory, false, 0);
+        storage = new InMemoryStorage(store);
+        String organizationId = storage.withSession(session -> session.organizations().upsert(REALM, organization("Example")));
+        save(organizationId, instance("si-1", "First", "org.ga4gh:beacon:1.0.0", 0));
+        save(organizationId, instance("si-2", "Second", "org.ga4gh:beacon:1.0.0", 1));
+        storage.useSession(session -> {
+            session.serviceInstances().delete(REALM, "si-1");
+            session.tombstones().save(REALM, "si-1", CREATED_AT.plusDays(1));
+        });
+        long xmin = storage.withSession(session -> session.serviceInstances().findSnapshotXmin());
+        long before = Files.size(directory.resolve("wal.log"));
+
+        store.compact();
+        store.close();
+
+        assertThat(Files.size(directory.resolve("wal.log")), lessThan(before));
+        store = new InMemoryStore(directory, false, 0);
+        storage = new InMemoryStorage(store);
+        assertReopened(organizationId, xmin);
+    }
+
+    private void assertReopened(String organizationId, long xmin) {
+        assertThat(ids(storage.withSession(session -> session.serviceInstances().findAll(REALM))), contains("si-2"));
+        assertThat(storage.withSession(session -> session.serviceInstances().findSnapshotXmin()), equalTo(xmin));
+        assertThat(storage.withSession(session -> session.organizations().upsert(REALM, organization("Example"))), equalTo(organizationId));
+        assertThat(storage.withSession(session -> session.tombstones().findAllSince(REALM, 0)), hasSize(1));
+    }
+
+    private void saveHealthCheckResult(HealthCheckResult result) {
+        storage.useSession(session -> session.serviceInstances().saveHealthCheckResults(List.of(result)));
+    }
+
+    private ServiceInstanceModel findById(String id) {
+        return storage.withSession(session -> session.serviceInstances().findById(REALM, id)).get();
+    }
+
+    private boolean save(String organizationId, ServiceInstanceModel si) {
+        return storage.withSession(session -> session.serviceInstances().saveIfAbsent(REALM, organizationId, si));
+    }
+
+    private static OrganizationModel organization(String name) {
+        return OrganizationModel.builder().name(name).url("https://example.org").build();
+    }
+
+    private static ServiceInstanceModel instance(String id, String name, String type, int minutes) {
+        return ServiceInstanceModel.builder()
+                .id(id)
+                .name(name)
+                .type(ServiceType.fromString(type))
+                .createdAt(CREATED_AT.plusMinutes(minutes))
+                .updatedAt(CREATED_AT.plusMinutes(minutes))
+                .version("1.0.0")
+                .additionalProperties(Map.of())
+                .build();
+    }
+
+    private static List<String> ids(List<ServiceInstanceModel> instances) {
+        return instances.stream().map(ServiceInstanceModel::getId).collect(Collectors.toList());
+    }
+}
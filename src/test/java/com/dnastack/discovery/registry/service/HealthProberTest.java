@@ -0,0 +1,116 @@
+package com.dnastack.discovery.registry.service;
+
+import com.dnastack.discovery.registry.model.HealthStatus;
+import com.dnastack.discovery.registry.model.ServiceInstanceHealth;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class HealthProberTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private HealthProber prober;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/up/service-info", exchange -> {
+            byte[] body = "{\"name\":\"up\"}".getBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.createContext("/broken/service-info", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        prober = new HealthProber(500, 8, 2);
+    }
+
+    @After
+    public void tearDown() {
+        prober.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void probe_should_reportUpWithLatency_when_serviceInfoAnswers() throws Exception {
+        ServiceInstanceHealth health = prober.probe(baseUrl + "/up/").get(5, TimeUnit.SECONDS);
+
+        assertThat(health.getStatus(), equalTo(HealthStatus.UP));
+        assertThat(health.getLatencyMillis(), allOf(notNullValue(), greaterThanOrEqualTo(0)));
+        assertThat(health.getCheckedAt(), notNullValue());
+    }
+
+    @Test
+    public void probe_should_reportDown_when_serviceInfoFails() throws Exception {
+        assertThat(prober.probe(baseUrl + "/broken").get(5, TimeUnit.SECONDS).getStatus(), equalTo(HealthStatus.DOWN));
+        assertThat(prober.probe(baseUrl + "/missing").get(5, TimeUnit.SECONDS).getStatus(), equalTo(HealthStatus.DOWN));
+        assertThat(prober.probe("not a url").get(5, TimeUnit.SECONDS).getStatus(), equalTo(HealthStatus.DOWN));
+    }
+
+    @Test
+    public void probe_should_reportDownWithoutLatency_when_serviceInfoTimesOut() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        server.createContext("/hanging/service-info", exchange -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+
+        ServiceInstanceHealth health = prober.probe(baseUrl + "/hanging").get(5, TimeUnit.SECONDS);
+        release.countDown();
+
+        assertThat(health.getStatus(), equalTo(HealthStatus.DOWN));
+        assertThat(health.getLatencyMillis(), nullValue());
+    }
+
+    @Test
+    public void probe_should_limitConcurrentProbesPerHost() throws Exception {
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        server.createContext("/slow/service-info", exchange -> {
+            peak.accumulateAndGet(current.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            current.decrementAndGet();
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+
+        List<CompletableFuture<ServiceInstanceHealth>> probes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            probes.add(prober.probe(baseUrl + "/slow"));
+        }
+        for (CompletableFuture<ServiceInstanceHealth> probe : probes) {
+            assertThat(probe.get(5, TimeUnit.SECONDS).getStatus(), equalTo(HealthStatus.UP));
+        }
+
+        assertThat(peak.get(), allOf(greaterThan(0), lessThanOrEqualTo(2)));
+    }
+}
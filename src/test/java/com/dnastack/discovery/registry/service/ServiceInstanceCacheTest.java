@@ -0,0 +1,166 @@
+package com.dnastack.discovery.registry.service;
+
+import com.dnastack.discovery.registry.model.ServiceInstanceModel;
+import com.dnastack.discovery.registry.model.ServiceType;
+import com.dnastack.discovery.registry.service.ServiceInstanceCache.Listing;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ServiceInstanceCacheTest {
+
+    private static final String REALM = "test";
+    private static final ZonedDateTime CREATED_AT = ZonedDateTime.of(2019, 6, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    // what the database holds, by ID
+    private final Map<String, ServiceInstanceModel> stored = new LinkedHashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final List<Collection<String>> reloads = new ArrayList<>();
+    private ServiceInstanceCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ServiceInstanceCache(10, true, objectMapper, new SimpleMeterRegistry());
+        for (int i = 0; i < 3; i++) {
+            store(instance("si-" + i, "org.ga4gh:beacon:1.0.0"));
+        }
+    }
+
+    @Test
+    public void getInstances_should_renderWhatJacksonWould() throws IOException {
+        Listing listing = getInstances();
+
+        assertThat(json(listing.getBody()), equalTo(objectMapper.writeValueAsString(new ArrayList<>(stored.values()))));
+        assertThat(json(listing.getInstance("si-1").getJson()), equalTo(objectMapper.writeValueAsString(stored.get("si-1"))));
+        assertThat(json(listing.getTypesBody()), equalTo("[{\"group\":\"org.ga4gh\",\"artifact\":\"beacon\",\"version\":\"1.0.0\"}]"));
+        assertThat(getInstances(), sameInstance(listing));
+        assertThat(loads.get(), equalTo(1));
+    }
+
+    @Test
+    public void getInstances_should_reloadOnlyChangedInstances() throws IOException {
+        Listing before = getInstances();
+
+        ServiceInstanceModel updated = instance("si-1", "org.ga4gh:drs:1.0.0");
+        updated.setUpdatedAt(CREATED_AT.plusHours(1));
+        store(updated);
+        cache.onServiceInstanceChange(new ServiceInstanceChangeEvent(REALM, "si-1", ServiceInstanceChangeEvent.Operation.UPDATED, null));
+        stored.remove("si-0");
+        cache.onServiceInstanceChange(new ServiceInstanceChangeEvent(REALM, "si-0", ServiceInstanceChangeEvent.Operation.DELETED, null));
+        store(instance("si-3", "org.ga4gh:beacon:1.0.0"));
+        cache.onServiceInstanceChange(new ServiceInstanceChangeEvent(REALM, "si-3", ServiceInstanceChangeEvent.Operation.CREATED, null));
+
+        Listing after = getInstances();
+
+        assertThat(loads.get(), equalTo(1));
+        assertThat(reloads, contains(containsInAnyOrder("si-0", "si-1", "si-3")));
+        assertThat(after.getVersion().getSequence(), equalTo(before.getVersion().getSequence() + 3));
+        assertThat(after.getVersion(), equalTo(cache.getVersion(REALM)));
+        assertThat(json(after.getBody()), equalTo(objectMapper.writeValueAsString(new ArrayList<>(stored.values()))));
+        assertThat(after.getInstance("si-0"), nullValue());
+        assertThat(json(after.getTypesBody()), containsString("drs"));
+
+        // nothing is pending any more
+        assertThat(getInstances(), sameInstance(after));
+        assertThat(reloads, hasSize(1));
+    }
+
+    @Test
+    public void getCachedListing_shouldNot_loadListing() {
+        assertThat(cache.getCachedListing(REALM, this::reload), nullValue());
+        assertThat(loads.get(), equalTo(0));
+
+        Listing listing = getInstances();
+
+        assertThat(cache.getCachedListing(REALM, this::reload), sameInstance(listing));
+        assertThat(loads.get(), equalTo(1));
+    }
+
+    @Test
+    public void getInstances_should_notCache_when_realmChangesWhileLoading() {
+        cache.getInstances(REALM, () -> {
+            List<ServiceInstanceModel> loaded = load();
+            cache.invalidate(REALM, "si-0");
+            return loaded;
+        }, this::reload);
+
+        getInstances();
+
+        assertThat(loads.get(), equalTo(2));
+    }
+
+    @Test
+    public void getGzippedBody_should_decompressToBody() throws IOException {
+        for (int i = 3; i < 20; i++) {
+            store(instance("si-" + i, "org.ga4gh:beacon:1.0.0"));
+        }
+        Listing listing = getInstances();
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(listing.getGzippedBody()))) {
+            assertThat(in.readAllBytes(), equalTo(listing.getBody()));
+        }
+    }
+
+    @Test
+    public void getGzippedBody_should_returnNull_when_bodyIsShort() {
+        stored.clear();
+        store(instance("si-0", "org.ga4gh:beacon:1.0.0"));
+
+        assertThat(getInstances().getGzippedBody(), nullValue());
+    }
+
+    private Listing getInstances() {
+        return cache.getInstances(REALM, this::load, this::reload);
+    }
+
+    private List<ServiceInstanceModel> load() {
+        loads.incrementAndGet();
+        return new ArrayList<>(stored.values());
+    }
+
+    private List<ServiceInstanceModel> reload(Collection<String> ids) {
+        reloads.add(ids);
+        return stored.values().stream().filter(si -> ids.contains(si.getId())).collect(Collectors.toList());
+    }
+
+    private void store(ServiceInstanceModel si) {
+        stored.put(si.getId(), si);
+    }
+
+    private static ServiceInstanceModel instance(String id, String type) {
+        return ServiceInstanceModel.builder()
+                .id(id)
+                .name("Service " + id)
+                .type(ServiceType.fromString(type))
+                .url("https://example.org/" + id)
+                .createdAt(CREATED_AT)
+                .updatedAt(CREATED_AT)
+                .version("1.0.0")
+                .build();
+    }
+
+    private static String json(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,209 @@
+package com.dnastack.discovery.registry.service;
+
+import com.dnastack.discovery.registry.model.ServiceInstanceChange;
+import com.dnastack.discovery.registry.service.ServiceInstanceChangeEvent.Operation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ServiceInstanceChangeFeedTest {
+
+    private static final String REALM = "test";
+
+    private ServiceInstanceChangeFeed feed;
+
+    @Before
+    public void setUp() {
+        feed = new ServiceInstanceChangeFeed(3, 3600, 2, new SimpleMeterRegistry());
+    }
+
+    @After
+    public void tearDown() {
+        feed.shutdown();
+    }
+
+    @Test
+    public void subscribe_should_resetThenSendLiveChanges_when_noLastEventIdIsGiven() throws Exception {
+        publish("a", Operation.CREATED);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        feed.subscribe(REALM, null, subscriber);
+        publish("b", Operation.UPDATED);
+
+        assertThat(subscriber.next(), equalTo("reset 1"));
+        assertThat(subscriber.next(), equalTo("updated b 2"));
+    }
+
+    @Test
+    public void subscribe_should_replayMissedChanges_when_lastEventIdIsBuffered() throws Exception {
+        RecordingSubscriber first = new RecordingSubscriber();
+        feed.subscribe(REALM, null, first);
+        first.next();
+        publish("a", Operation.CREATED);
+        publish("b", Operation.CREATED);
+        publish("a", Operation.DELETED);
+        first.next();
+        String lastEventId = first.lastEventId;
+
+        RecordingSubscriber resumed = new RecordingSubscriber();
+        feed.subscribe(REALM, lastEventId, resumed);
+
+        assertThat(resumed.next(), equalTo("created b 2"));
+        assertThat(resumed.next(), equalTo("deleted a 3"));
+        assertThat(resumed.events.poll(100, TimeUnit.MILLISECONDS), nullValue());
+    }
+
+    @Test
+    public void subscribe_should_reset_when_lastEventIdIsNoLongerBuffered() throws Exception {
+        RecordingSubscriber first = new RecordingSubscriber();
+        feed.subscribe(REALM, null, first);
+        first.next();
+        publish("a", Operation.CREATED);
+        first.next();
+        for (String id : List.of("b", "c", "d", "e")) {
+            publish(id, Operation.CREATED);
+        }
+
+        RecordingSubscriber resumed = new RecordingSubscriber();
+        feed.subscribe(REALM, first.lastEventId, resumed);
+
+        assertThat(resumed.next(), equalTo("reset 5"));
+    }
+
+    @Test
+    public void subscribe_should_reset_when_lastEventIdIsFromAnotherProcess() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        feed.subscribe(REALM, "elsewhere-1", subscriber);
+
+        assertThat(subscriber.next(), equalTo("reset 0"));
+    }
+
+    @Test
+    public void resync_should_resetSubscribersAndForgetBufferedChanges() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        feed.subscribe(REALM, null, subscriber);
+        subscriber.next();
+        publish("a", Operation.CREATED);
+        subscriber.next();
+        String beforeResync = subscriber.lastEventId;
+
+        feed.onResync(new ServiceInstanceResyncEvent());
+        publish("b", Operation.CREATED);
+
+        assertThat(subscriber.next(), equalTo("reset 2"));
+        assertThat(subscriber.next(), equalTo("created b 3"));
+
+        RecordingSubscriber resumed = new RecordingSubscriber();
+        feed.subscribe(REALM, beforeResync, resumed);
+        assertThat(resumed.next(), equalTo("reset 3"));
+    }
+
+    @Test
+    public void publish_should_disconnectSubscriber_when_itFallsBehindTheReplayBuffer() throws Exception {
+        CountDownLatch unblock = new CountDownLatch(1);
+        RecordingSubscriber slow = new RecordingSubscriber() {
+            @Override
+            public void onReset(String eventId, long sequence) throws Exception {
+                unblock.await();
+            }
+        };
+        feed.subscribe(REALM, null, slow);
+        for (String id : List.of("a", "b", "c", "d", "e")) {
+            publish(id, Operation.CREATED);
+        }
+        unblock.countDown();
+
+        assertThat(slow.closed.await(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void cancel_should_stopDeliveryAndCloseSubscriber() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        ServiceInstanceChangeFeed.Subscription subscription = feed.subscribe(REALM, null, subscriber);
+        subscriber.next();
+
+        subscription.cancel();
+        publish("a", Operation.CREATED);
+
+        assertThat(subscriber.closed.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(subscriber.events.poll(100, TimeUnit.MILLISECONDS), nullValue());
+    }
+
+    @Test
+    public void cancel_should_dropRealm_when_itHasNoSubscribersOrBufferedChanges() throws Exception {
+        publish("a", Operation.CREATED);
+        for (int i = 0; i < 10; i++) {
+            feed.subscribe("unknown-" + i, null, new RecordingSubscriber()).cancel();
+        }
+
+        assertThat(feed.realmCount(), equalTo(1));
+    }
+
+    @Test
+    public void subscribe_should_reset_when_lastEventIdIsFromDroppedRealm() throws Exception {
+        RecordingSubscriber first = new RecordingSubscriber();
+        ServiceInstanceChangeFeed.Subscription subscription = feed.subscribe(REALM, null, first);
+        first.next();
+        publish("a", Operation.CREATED);
+        first.next();
+        feed.onResync(new ServiceInstanceResyncEvent());
+        subscription.cancel();
+        assertThat(feed.realmCount(), equalTo(0));
+
+        publish("b", Operation.CREATED);
+        RecordingSubscriber resumed = new RecordingSubscriber();
+        feed.subscribe(REALM, first.lastEventId, resumed);
+
+        assertThat(resumed.next(), equalTo("reset 3"));
+    }
+
+    private void publish(String id, Operation operation) {
+        feed.onServiceInstanceChange(new ServiceInstanceChangeEvent(REALM, id, operation, null));
+    }
+
+    private static class RecordingSubscriber implements ServiceInstanceChangeFeed.Subscriber {
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> eventIds = new LinkedBlockingQueue<>();
+        final CountDownLatch closed = new CountDownLatch(1);
+        // the ID of the event last returned by next()
+        String lastEventId;
+
+        String next() throws InterruptedException {
+            String event = events.poll(5, TimeUnit.SECONDS);
+            assertThat("expected another event", event, notNullValue());
+            lastEventId = eventIds.poll();
+            return event;
+        }
+
+        @Override
+        public void onChange(String eventId, ServiceInstanceChange change) {
+            eventIds.add(eventId);
+            events.add(change.getType() + " " + change.getServiceInstanceId() + " " + change.getSequence());
+        }
+
+        @Override
+        public void onReset(String eventId, long sequence) throws Exception {
+            eventIds.add(eventId);
+            events.add("reset " + sequence);
+        }
+
+        @Override
+        public void onHeartbeat() {
+        }
+
+        @Override
+        public void onClose() {
+            closed.countDown();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.dnastack.discovery.registry.service;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ServiceInstanceServiceTest {
+
+    @Test
+    public void toPrefixQuery_should_requirePrefixMatchForEveryWord() {
+        assertThat(ServiceInstanceService.toPrefixQuery("beac"), equalTo("beac:*"));
+        assertThat(ServiceInstanceService.toPrefixQuery("  Rare Disease-Beacon "), equalTo("rare:* & disease:* & beacon:*"));
+        assertThat(ServiceInstanceService.toPrefixQuery("Génome 2"), equalTo("génome:* & 2:*"));
+    }
+
+    @Test
+    public void toPrefixQuery_should_dropTsqueryOperators() {
+        assertThat(ServiceInstanceService.toPrefixQuery("a & !b | (c:*) 'd'"), equalTo("a:* & b:* & c:* & d:*"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void toPrefixQuery_should_reject_when_noWordIsGiven() {
+        ServiceInstanceService.toPrefixQuery(" - ");
+    }
+}
@@ -0,0 +1,47 @@
+-- H2 equivalent of the tables created by ci/predeploy/db.changelog.yml, for tests and benchmarks
+CREATE DOMAIN JSONB AS VARCHAR;
+
+CREATE TABLE organization (
+    realm VARCHAR NOT NULL,
+    id VARCHAR(255) NOT NULL,
+    name VARCHAR NOT NULL,
+    url VARCHAR(255),
+    PRIMARY KEY (realm, id),
+    UNIQUE (realm, name)
+);
+
+CREATE TABLE service_instance (
+    realm VARCHAR NOT NULL,
+    id VARCHAR(255) NOT NULL,
+    additional_properties_json JSONB,
+    contact_url VARCHAR,
+    created_at TIMESTAMP WITH TIME ZONE,
+    description VARCHAR,
+    documentation_url VARCHAR,
+    environment VARCHAR(20),
+    name VARCHAR,
+    type VARCHAR(255),
+    updated_at TIMESTAMP WITH TIME ZONE,
+    url VARCHAR,
+    version VARCHAR(255),
+    organization_id VARCHAR(255),
+    -- txid_current() in Postgres
+    change_txid BIGINT DEFAULT 0 NOT NULL,
+    lease_ttl_seconds INTEGER,
+    lease_expires_at TIMESTAMP WITH TIME ZONE,
+    health_status VARCHAR(20),
+    health_latency_millis INTEGER,
+    health_checked_at TIMESTAMP WITH TIME ZONE,
+    health_next_check_at TIMESTAMP WITH TIME ZONE,
+    PRIMARY KEY (realm, id),
+    UNIQUE (realm, name, type),
+    FOREIGN KEY (realm, organization_id) REFERENCES organization (realm, id) ON DELETE CASCADE
+);
+
+CREATE TABLE service_instance_tombstone (
+    realm VARCHAR NOT NULL,
+    id VARCHAR(255) NOT NULL,
+    deleted_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    change_txid BIGINT DEFAULT 0 NOT NULL,
+    PRIMARY KEY (realm, id)
+);